@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.ml;
+
+import static org.junit.Assert.assertFalse;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Times {@link QaClient#predict} end to end over the bundled {@code qa.json}: the first question
+ * about a passage, which tokenizes it, and the later ones, which find it in the cache. The median
+ * latencies are logged under {@code QaClientBenchmark}:
+ *
+ * <pre>
+ * ./gradlew :app:connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ *     org.tensorflow.lite.examples.bertqa.ml.QaClientBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class QaClientBenchmark {
+  private static final String TAG = "QaClientBenchmark";
+
+  private QaClient client;
+  private LoadDatasetClient dataset;
+
+  @Before
+  public void setUp() {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    client = new QaClient(context);
+    client.loadModel();
+    dataset = new LoadDatasetClient(context);
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+  }
+
+  @Test
+  public void benchmarkRepeatedQuestions() {
+    // Loads the interpreter delegates and kernels, with a content that is not asked about below.
+    client.predict("warm up", "The interpreter runs once before timing.");
+
+    List<Long> firstNs = new ArrayList<>();
+    List<Long> laterNs = new ArrayList<>();
+    for (int i = 0; i < dataset.getTitles().length; i++) {
+      String content = dataset.getContent(i);
+      String[] questions = dataset.getQuestions(i);
+      for (int q = 0; q < questions.length; q++) {
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        List<QaAnswer> answers = client.predict(questions[q], content);
+        long elapsedNs = SystemClock.elapsedRealtimeNanos() - startTime;
+        assertFalse(answers.isEmpty());
+        if (q == 0) {
+          firstNs.add(elapsedNs);
+        } else {
+          laterNs.add(elapsedNs);
+        }
+      }
+    }
+
+    long firstMedianNs = median(firstNs);
+    long laterMedianNs = median(laterNs);
+    Log.i(
+        TAG,
+        String.format(
+            "predict over %d passages: first question %.1fms, later questions %.1fms (%.1fms less)",
+            firstNs.size(),
+            firstMedianNs / 1e6,
+            laterMedianNs / 1e6,
+            (firstMedianNs - laterMedianNs) / 1e6));
+  }
+
+  private static long median(List<Long> times) {
+    Collections.sort(times);
+    return times.get(times.size() / 2);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.tokenization;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.bertqa.ml.LoadDatasetClient;
+import org.tensorflow.lite.examples.bertqa.ml.QaClient;
+import org.tensorflow.lite.support.metadata.MetadataExtractor;
+
+/**
+ * Times the wordpiece ids of every word of the bundled {@code qa.json} passages, with {@link
+ * WordpieceTokenizer} and with the substring lookups it replaced. The results are logged under
+ * {@code WordpieceTokenizerBenchmark}:
+ *
+ * <pre>
+ * ./gradlew :app:connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ *     org.tensorflow.lite.examples.bertqa.tokenization.WordpieceTokenizerBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class WordpieceTokenizerBenchmark {
+  private static final String TAG = "WordpieceTokenizerBenchmark";
+  private static final String DIC_PATH = "vocab.txt";
+  private static final int MAX_INPUTCHARS_PER_WORD = 200;
+  private static final int NUM_WARMUP_RUNS = 3;
+  private static final int NUM_TIMED_RUNS = 10;
+
+  @Test
+  public void benchmarkQaContents() throws IOException {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    Map<String, Integer> vocab = loadVocab(context);
+    LoadDatasetClient dataset = new LoadDatasetClient(context);
+    BasicTokenizer basicTokenizer = new BasicTokenizer(true);
+    List<String> words = new ArrayList<>();
+    for (int i = 0; i < dataset.getTitles().length; i++) {
+      words.addAll(basicTokenizer.tokenize(dataset.getContent(i)));
+    }
+
+    long buildStart = SystemClock.elapsedRealtimeNanos();
+    WordpieceTokenizer tokenizer = new WordpieceTokenizer(vocab);
+    double buildMs = (SystemClock.elapsedRealtimeNanos() - buildStart) / 1e6;
+
+    int[] ids = new int[MAX_INPUTCHARS_PER_WORD + 1];
+    for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+      for (String word : words) {
+        substringIds(vocab, word, ids);
+        tokenizer.tokenizeToIds(word, ids, 0);
+      }
+    }
+
+    long start = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < NUM_TIMED_RUNS; i++) {
+      for (String word : words) {
+        substringIds(vocab, word, ids);
+      }
+    }
+    double substringMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6 / NUM_TIMED_RUNS;
+
+    start = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < NUM_TIMED_RUNS; i++) {
+      for (String word : words) {
+        tokenizer.tokenizeToIds(word, ids, 0);
+      }
+    }
+    double trieMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6 / NUM_TIMED_RUNS;
+
+    Log.i(
+        TAG,
+        String.format(
+            "%d words: substrings %.2fms, trie %.2fms (x%.1f), trie built in %.1fms",
+            words.size(), substringMs, trieMs, substringMs / trieMs, buildMs));
+  }
+
+  /**
+   * The greedy longest-match-first ids of a single word, one substring per candidate, as the
+   * tokenizer used to find them.
+   */
+  private static int substringIds(Map<String, Integer> dic, String word, int[] ids) {
+    if (word.length() > MAX_INPUTCHARS_PER_WORD) {
+      return 0;
+    }
+    int count = 0;
+    int start = 0;
+    while (start < word.length()) {
+      int end = word.length();
+      Integer id = null;
+      while (start < end) {
+        String subStr =
+            (start == 0) ? word.substring(start, end) : "##" + word.substring(start, end);
+        id = dic.get(subStr);
+        if (id != null) {
+          break;
+        }
+        end--;
+      }
+      if (id == null) {
+        return 0;
+      }
+      ids[count++] = id;
+      start = end;
+    }
+    return count;
+  }
+
+  private static Map<String, Integer> loadVocab(Context context) throws IOException {
+    QaClient client = new QaClient(context);
+    MetadataExtractor metadata =
+        new MetadataExtractor(client.loadModelFile(context.getAssets()));
+    Map<String, Integer> vocab = new HashMap<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(metadata.getAssociatedFile(DIC_PATH)))) {
+      int index = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        vocab.put(line, index++);
+      }
+    }
+    return vocab;
+  }
+}
@@ -14,28 +14,34 @@ limitations under the License.
 ==============================================================================*/
 package org.tensorflow.lite.examples.bertqa.ml;
 
-import com.google.common.primitives.Ints;
 import java.util.List;
-import java.util.Map;
 
 /** Feature to be fed into the Bert model. */
 public final class Feature {
+  /** In {@link #tokenToOrigMap} at the positions of the query, the marks and the padding. */
+  public static final int NO_ORIG_TOKEN = -1;
+
   public final int[] inputIds;
   public final int[] inputMask;
   public final int[] segmentIds;
   public final List<String> origTokens;
-  public final Map<Integer, Integer> tokenToOrigMap;
+  // Index in origTokens of the token at each position, or NO_ORIG_TOKEN.
+  public final int[] tokenToOrigMap;
+  // Whether an answer may start at a position, when the context is split in windows.
+  public final boolean[] tokenIsMaxContext;
 
   public Feature(
-      List<Integer> inputIds,
-      List<Integer> inputMask,
-      List<Integer> segmentIds,
+      int[] inputIds,
+      int[] inputMask,
+      int[] segmentIds,
       List<String> origTokens,
-      Map<Integer, Integer> tokenToOrigMap) {
-    this.inputIds = Ints.toArray(inputIds);
-    this.inputMask = Ints.toArray(inputMask);
-    this.segmentIds = Ints.toArray(segmentIds);
+      int[] tokenToOrigMap,
+      boolean[] tokenIsMaxContext) {
+    this.inputIds = inputIds;
+    this.inputMask = inputMask;
+    this.segmentIds = segmentIds;
     this.origTokens = origTokens;
     this.tokenToOrigMap = tokenToOrigMap;
+    this.tokenIsMaxContext = tokenIsMaxContext;
   }
 }
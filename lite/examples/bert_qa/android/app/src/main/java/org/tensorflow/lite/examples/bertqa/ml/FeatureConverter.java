@@ -16,90 +16,179 @@ package org.tensorflow.lite.examples.bertqa.ml;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.tensorflow.lite.examples.bertqa.tokenization.FullTokenizer;
 
-/** Convert String to features that can be fed into BERT model. */
+/**
+ * Convert String to features that can be fed into BERT model.
+ *
+ * <p>A context too long to fit next to the query is split into overlapping windows, one feature
+ * each, the way BERT handles long documents with its doc stride.
+ *
+ * <p>The context is tokenized apart from the query, into a {@link TokenizedContext} that can be
+ * kept for the next question about it. Not thread safe.
+ */
 public final class FeatureConverter {
   private final FullTokenizer tokenizer;
   private final int maxQueryLen;
   private final int maxSeqLen;
+  private final int docStride;
+  private final int clsId;
+  private final int sepId;
+  // Reused by convert(), at least as long as the query.
+  private int[] queryIds = new int[0];
+
+  /** Wordpieces of a context, independent of any query. Immutable. */
+  public static final class TokenizedContext {
+    public final List<String> origTokens;
+    // Wordpiece ids, and the index in origTokens of the token each one comes from.
+    private final int[] docIds;
+    private final int[] tokenToOrigIndex;
+
+    private TokenizedContext(List<String> origTokens, int[] docIds, int[] tokenToOrigIndex) {
+      this.origTokens = origTokens;
+      this.docIds = docIds;
+      this.tokenToOrigIndex = tokenToOrigIndex;
+    }
+
+    /** Number of wordpieces. */
+    public int size() {
+      return docIds.length;
+    }
+  }
 
   public FeatureConverter(
-      Map<String, Integer> inputDic, boolean doLowerCase, int maxQueryLen, int maxSeqLen) {
+      Map<String, Integer> inputDic,
+      boolean doLowerCase,
+      int maxQueryLen,
+      int maxSeqLen,
+      int docStride) {
     this.tokenizer = new FullTokenizer(inputDic, doLowerCase);
     this.maxQueryLen = maxQueryLen;
     this.maxSeqLen = maxSeqLen;
+    this.docStride = docStride;
+    this.clsId = inputDic.get("[CLS]");
+    this.sepId = inputDic.get("[SEP]");
   }
 
-  public Feature convert(String query, String context) {
-    List<String> queryTokens = tokenizer.tokenize(query);
-    if (queryTokens.size() > maxQueryLen) {
-      queryTokens = queryTokens.subList(0, maxQueryLen);
-    }
+  /** Converts the query and the context into at least one feature, tokenizing the context. */
+  public List<Feature> convert(String query, String context) {
+    return convert(query, tokenizeContext(context));
+  }
 
+  /** Splits the context into tokens on whitespace, then into wordpieces. */
+  public TokenizedContext tokenizeContext(String context) {
     List<String> origTokens = Arrays.asList(context.trim().split("\\s+"));
-    List<Integer> tokenToOrigIndex = new ArrayList<>();
-    List<String> allDocTokens = new ArrayList<>();
+    // The tokenizer writes ids straight away, at most one per character.
+    int[] docIds = new int[context.length()];
+    int[] tokenToOrigIndex = new int[context.length()];
+    int docLen = 0;
     for (int i = 0; i < origTokens.size(); i++) {
-      String token = origTokens.get(i);
-      List<String> subTokens = tokenizer.tokenize(token);
-      for (String subToken : subTokens) {
-        tokenToOrigIndex.add(i);
-        allDocTokens.add(subToken);
-      }
+      int count = tokenizer.tokenizeToIds(origTokens.get(i), docIds, docLen);
+      Arrays.fill(tokenToOrigIndex, docLen, docLen + count, i);
+      docLen += count;
     }
+    return new TokenizedContext(
+        origTokens, Arrays.copyOf(docIds, docLen), Arrays.copyOf(tokenToOrigIndex, docLen));
+  }
 
-    // -3 accounts for [CLS], [SEP] and [SEP].
-    int maxContextLen = maxSeqLen - queryTokens.size() - 3;
-    if (allDocTokens.size() > maxContextLen) {
-      allDocTokens = allDocTokens.subList(0, maxContextLen);
+  /**
+   * Converts the query and the tokenized context into at least one feature. Windows start {@code
+   * docStride} wordpieces apart until one reaches the end of the context.
+   */
+  public List<Feature> convert(String query, TokenizedContext context) {
+    if (queryIds.length < query.length()) {
+      queryIds = new int[query.length()];
     }
+    int queryLen = Math.min(tokenizer.tokenizeToIds(query, queryIds, 0), maxQueryLen);
+    List<String> origTokens = context.origTokens;
+    int[] docIds = context.docIds;
+    int[] tokenToOrigIndex = context.tokenToOrigIndex;
+    int docLen = docIds.length;
 
-    List<String> tokens = new ArrayList<>();
-    List<Integer> segmentIds = new ArrayList<>();
-
-    // Map token index to original index (in feature.origTokens).
-    Map<Integer, Integer> tokenToOrigMap = new HashMap<>();
-
-    // Start of generating the features.
-    tokens.add("[CLS]");
-    segmentIds.add(0);
-
-    // For query input.
-    for (String queryToken : queryTokens) {
-      tokens.add(queryToken);
-      segmentIds.add(0);
+    // -3 accounts for [CLS], [SEP] and [SEP].
+    int maxContextLen = maxSeqLen - queryLen - 3;
+    // Windows never skip a wordpiece, even with a stride longer than them.
+    int stride = Math.min(docStride, maxContextLen);
+    int windowCount = 1;
+    for (int start = 0; start + maxContextLen < docLen; start += stride) {
+      windowCount++;
     }
-
-    // For Separation.
-    tokens.add("[SEP]");
-    segmentIds.add(0);
-
-    // For Text Input.
-    for (int i = 0; i < allDocTokens.size(); i++) {
-      String docToken = allDocTokens.get(i);
-      tokens.add(docToken);
-      segmentIds.add(1);
-      tokenToOrigMap.put(tokens.size(), tokenToOrigIndex.get(i));
+    int[] windowStarts = new int[windowCount];
+    int[] windowLens = new int[windowCount];
+    for (int window = 0; window < windowCount; window++) {
+      windowStarts[window] = window * stride;
+      windowLens[window] = Math.min(docLen - windowStarts[window], maxContextLen);
     }
 
-    // For ending mark.
-    tokens.add("[SEP]");
-    segmentIds.add(1);
+    List<Feature> features = new ArrayList<>(windowCount);
+    for (int window = 0; window < windowCount; window++) {
+      int[] inputIds = new int[maxSeqLen];
+      int[] inputMask = new int[maxSeqLen];
+      // Segment 0 for the query, 1 for the text.
+      int[] segmentIds = new int[maxSeqLen];
+      int[] tokenToOrigMap = new int[maxSeqLen];
+      Arrays.fill(tokenToOrigMap, Feature.NO_ORIG_TOKEN);
+      boolean[] tokenIsMaxContext = new boolean[maxSeqLen];
+
+      // Start of generating the features.
+      int length = 0;
+      inputIds[length++] = clsId;
+
+      // For query input.
+      System.arraycopy(queryIds, 0, inputIds, length, queryLen);
+      length += queryLen;
+
+      // For Separation.
+      inputIds[length++] = sepId;
+
+      // For Text Input.
+      int start = windowStarts[window];
+      for (int i = start; i < start + windowLens[window]; i++) {
+        inputIds[length] = docIds[i];
+        segmentIds[length] = 1;
+        tokenToOrigMap[length] = tokenToOrigIndex[i];
+        tokenIsMaxContext[length] = isMaxContext(windowStarts, windowLens, window, i);
+        length++;
+      }
+
+      // For ending mark.
+      inputIds[length] = sepId;
+      segmentIds[length] = 1;
+      length++;
 
-    List<Integer> inputIds = tokenizer.convertTokensToIds(tokens);
-    List<Integer> inputMask = new ArrayList<>(Collections.nCopies(inputIds.size(), 1));
+      // The rest is padding, all zeros.
+      Arrays.fill(inputMask, 0, length, 1);
 
-    while (inputIds.size() < maxSeqLen) {
-      inputIds.add(0);
-      inputMask.add(0);
-      segmentIds.add(0);
+      features.add(
+          new Feature(
+              inputIds, inputMask, segmentIds, origTokens, tokenToOrigMap, tokenIsMaxContext));
     }
+    return features;
+  }
 
-    return new Feature(inputIds, inputMask, segmentIds, origTokens, tokenToOrigMap);
+  /**
+   * Whether {@code window} gives the wordpiece at {@code index} the most context of all the windows
+   * it is in, that is the most wordpieces on its shorter side, preferring longer windows on ties.
+   */
+  private static boolean isMaxContext(
+      int[] windowStarts, int[] windowLens, int window, int index) {
+    float bestScore = -1;
+    int bestWindow = window;
+    for (int other = 0; other < windowStarts.length; other++) {
+      int start = windowStarts[other];
+      int end = start + windowLens[other] - 1;
+      if (index < start || index > end) {
+        continue;
+      }
+      int context = Math.min(index - start, end - index);
+      float score = context + 0.01f * windowLens[other];
+      if (score > bestScore) {
+        bestScore = score;
+        bestWindow = other;
+      }
+    }
+    return bestWindow == window;
   }
 }
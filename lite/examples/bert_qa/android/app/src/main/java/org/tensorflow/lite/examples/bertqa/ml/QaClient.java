@@ -26,11 +26,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import org.tensorflow.lite.Interpreter;
@@ -45,23 +48,34 @@ public class QaClient implements AutoCloseable {
   private static final int MAX_ANS_LEN = 32;
   private static final int MAX_QUERY_LEN = 64;
   private static final int MAX_SEQ_LEN = 384;
+  // Wordpieces between the starts of two windows of a long content.
+  private static final int DOC_STRIDE = 128;
   private static final boolean DO_LOWER_CASE = true;
   private static final int PREDICT_ANS_NUM = 5;
   private static final int NUM_LITE_THREADS = 4;
-
-  // Need to shift 1 for outputs ([CLS]).
-  private static final int OUTPUT_OFFSET = 1;
+  // Contents whose tokenization is kept for the next questions.
+  static final int CONTEXT_CACHE_SIZE = 4;
 
   private final Context context;
   private final Map<String, Integer> dic = new HashMap<>();
-  private final FeatureConverter featureConverter;
+  // Built with the dictionary, it indexes the vocabulary.
+  private FeatureConverter featureConverter;
+  // Tokenized contents, made with the feature converter.
+  private TokenizedContextCache contextCache;
   private Interpreter tflite;
+  // Windows the interpreter inputs are sized for, and whether the model only takes one.
+  private int batchSize = 1;
+  private boolean batchingUnsupported;
+  // Inputs of the interpreter, one window after the other, reused while the number of windows is
+  // the same.
+  private IntBuffer inputIds;
+  private IntBuffer inputMask;
+  private IntBuffer segmentIds;
 
   private static final Joiner SPACE_JOINER = Joiner.on(" ");
 
   public QaClient(Context context) {
     this.context = context;
-    this.featureConverter = new FeatureConverter(dic, DO_LOWER_CASE, MAX_QUERY_LEN, MAX_SEQ_LEN);
   }
 
   @WorkerThread
@@ -72,6 +86,8 @@ public class QaClient implements AutoCloseable {
       opt.setNumThreads(NUM_LITE_THREADS);
       loadDictionary(buffer);
       tflite = new Interpreter(buffer, opt);
+      batchSize = 1;
+      batchingUnsupported = false;
       Log.v(TAG, "TFLite model loaded.");
     } catch (IOException ex) {
       Log.e(TAG, ex.getMessage());
@@ -101,6 +117,8 @@ public class QaClient implements AutoCloseable {
       tflite = null;
     }
     dic.clear();
+    featureConverter = null;
+    contextCache = null;
   }
 
   /** Load tflite model from assets. */
@@ -123,69 +141,139 @@ public class QaClient implements AutoCloseable {
         dic.put(key, index++);
       }
     }
+    featureConverter =
+        new FeatureConverter(dic, DO_LOWER_CASE, MAX_QUERY_LEN, MAX_SEQ_LEN, DOC_STRIDE);
+    // The contents tokenized with the previous dictionary are dropped.
+    contextCache = new TokenizedContextCache(featureConverter, CONTEXT_CACHE_SIZE);
   }
 
   /**
-   * Input: Original content and query for the QA task. Later converted to Feature by
-   * FeatureConverter. Output: A String[] array of answers and a float[] array of corresponding
-   * logits.
+   * Input: Original content and query for the QA task. Later converted to Features by
+   * FeatureConverter, one per window of a long content. Output: A String[] array of answers and a
+   * float[] array of corresponding logits, the best across all the windows.
+   *
+   * <p>The tokenization of the last few contents is cached, so that the next questions about one
+   * only tokenize the query.
    */
   @WorkerThread
   public synchronized List<QaAnswer> predict(String query, String content) {
     Log.v(TAG, "TFLite model: " + MODEL_PATH + " running...");
     Log.v(TAG, "Convert Feature...");
-    Feature feature = featureConverter.convert(query, content);
-
-    Log.v(TAG, "Set inputs...");
-    int[][] inputIds = new int[1][MAX_SEQ_LEN];
-    int[][] inputMask = new int[1][MAX_SEQ_LEN];
-    int[][] segmentIds = new int[1][MAX_SEQ_LEN];
-    float[][] startLogits = new float[1][MAX_SEQ_LEN];
-    float[][] endLogits = new float[1][MAX_SEQ_LEN];
-
-    for (int j = 0; j < MAX_SEQ_LEN; j++) {
-      inputIds[0][j] = feature.inputIds[j];
-      inputMask[0][j] = feature.inputMask[j];
-      segmentIds[0][j] = feature.segmentIds[j];
+    List<Feature> features = featureConverter.convert(query, contextCache.get(content));
+    int size = features.size();
+    float[][] startLogits = new float[size][MAX_SEQ_LEN];
+    float[][] endLogits = new float[size][MAX_SEQ_LEN];
+
+    Log.v(TAG, "Run inference on " + size + " windows...");
+    if (size == 1 || batchingUnsupported || !runBatch(features, startLogits, endLogits)) {
+      for (int i = 0; i < size; i++) {
+        runInference(
+            features.subList(i, i + 1),
+            new float[][] {startLogits[i]},
+            new float[][] {endLogits[i]});
+      }
+    }
+
+    Log.v(TAG, "Convert answers...");
+    List<QaAnswer> answers = getBestAnswers(startLogits, endLogits, features);
+    Log.v(TAG, "Finish.");
+    return answers;
+  }
+
+  /**
+   * Runs all the windows in a single interpreter call.
+   *
+   * @return false if the model cannot take a batch, in which case it is left at one window
+   */
+  private boolean runBatch(List<Feature> features, float[][] startLogits, float[][] endLogits) {
+    try {
+      runInference(features, startLogits, endLogits);
+      return true;
+    } catch (IllegalArgumentException | IllegalStateException ex) {
+      Log.w(TAG, "Cannot run windows as a batch, running them one at a time.", ex);
+      batchingUnsupported = true;
+      return false;
+    }
+  }
+
+  /** Runs the model on {@code features}, writing the logits of each into the matching rows. */
+  private void runInference(List<Feature> features, float[][] startLogits, float[][] endLogits) {
+    int size = features.size();
+    if (size != batchSize) {
+      // Reallocates the tensors on the next run, only when the number of windows changes. Set
+      // first, so that a failed resize is redone for the next size.
+      batchSize = size;
+      for (int i = 0; i < 3; i++) {
+        tflite.resizeInput(i, new int[] {size, MAX_SEQ_LEN});
+      }
+    }
+
+    if (inputIds == null || inputIds.capacity() != size * MAX_SEQ_LEN) {
+      inputIds = allocateInput(size);
+      inputMask = allocateInput(size);
+      segmentIds = allocateInput(size);
+    }
+    inputIds.clear();
+    inputMask.clear();
+    segmentIds.clear();
+    for (Feature feature : features) {
+      inputIds.put(feature.inputIds);
+      inputMask.put(feature.inputMask);
+      segmentIds.put(feature.segmentIds);
     }
+    inputIds.flip();
+    inputMask.flip();
+    segmentIds.flip();
     Object[] inputs = {inputIds, inputMask, segmentIds};
     Map<Integer, Object> output = new HashMap<>();
     output.put(0, endLogits);
     output.put(1, startLogits);
-
-    Log.v(TAG, "Run inference...");
     tflite.runForMultipleInputsOutputs(inputs, output);
+  }
 
-    Log.v(TAG, "Convert answers...");
-    List<QaAnswer> answers = getBestAnswers(startLogits[0], endLogits[0], feature);
-    Log.v(TAG, "Finish.");
-    return answers;
+  /** Direct buffer of {@code size} windows of ints, which the interpreter copies in one block. */
+  private static IntBuffer allocateInput(int size) {
+    return ByteBuffer.allocateDirect(size * MAX_SEQ_LEN * 4)
+        .order(ByteOrder.nativeOrder())
+        .asIntBuffer();
   }
 
-  /** Find the Best N answers & logits from the logits array and input feature. */
+  /** Find the Best N answers & logits from the logits arrays and input features. */
   private synchronized List<QaAnswer> getBestAnswers(
-      float[] startLogits, float[] endLogits, Feature feature) {
-    // Model uses the closed interval [start, end] for indices.
-    int[] startIndexes = getBestIndex(startLogits);
-    int[] endIndexes = getBestIndex(endLogits);
-
+      float[][] startLogits, float[][] endLogits, List<Feature> features) {
     List<QaAnswer.Pos> origResults = new ArrayList<>();
-    for (int start : startIndexes) {
-      for (int end : endIndexes) {
-        if (!feature.tokenToOrigMap.containsKey(start + OUTPUT_OFFSET)) {
-          continue;
-        }
-        if (!feature.tokenToOrigMap.containsKey(end + OUTPUT_OFFSET)) {
-          continue;
-        }
-        if (end < start) {
-          continue;
-        }
-        int length = end - start + 1;
-        if (length > MAX_ANS_LEN) {
-          continue;
+    // Feature of each result, to convert it back.
+    Map<QaAnswer.Pos, Feature> resultFeatures = new IdentityHashMap<>();
+    for (int i = 0; i < features.size(); i++) {
+      Feature feature = features.get(i);
+      // Model uses the closed interval [start, end] for indices.
+      int[] startIndexes = getBestIndex(startLogits[i]);
+      int[] endIndexes = getBestIndex(endLogits[i]);
+
+      for (int start : startIndexes) {
+        for (int end : endIndexes) {
+          if (feature.tokenToOrigMap[start] == Feature.NO_ORIG_TOKEN) {
+            continue;
+          }
+          if (feature.tokenToOrigMap[end] == Feature.NO_ORIG_TOKEN) {
+            continue;
+          }
+          // Another window has more context around the start, the answer is taken from there.
+          if (!feature.tokenIsMaxContext[start]) {
+            continue;
+          }
+          if (end < start) {
+            continue;
+          }
+          int length = end - start + 1;
+          if (length > MAX_ANS_LEN) {
+            continue;
+          }
+          QaAnswer.Pos pos =
+              new QaAnswer.Pos(start, end, startLogits[i][start] + endLogits[i][end]);
+          origResults.add(pos);
+          resultFeatures.put(pos, feature);
         }
-        origResults.add(new QaAnswer.Pos(start, end, startLogits[start] + endLogits[end]));
       }
     }
 
@@ -197,43 +285,49 @@ public class QaClient implements AutoCloseable {
         break;
       }
 
+      QaAnswer.Pos pos = origResults.get(i);
       String convertedText;
-      if (origResults.get(i).start > 0) {
-        convertedText = convertBack(feature, origResults.get(i).start, origResults.get(i).end);
+      if (pos.start > 0) {
+        convertedText = convertBack(resultFeatures.get(pos), pos.start, pos.end);
       } else {
         convertedText = "";
       }
-      QaAnswer ans = new QaAnswer(convertedText, origResults.get(i));
+      QaAnswer ans = new QaAnswer(convertedText, pos);
       answers.add(ans);
     }
     return answers;
   }
 
-  /** Get the n-best logits from a list of all the logits. */
+  /**
+   * Get the n-best logits from a list of all the logits, best first. Keeps them in a sorted array
+   * of n, as a sort of all the logits would, equal logits by increasing index.
+   */
   @WorkerThread
-  private synchronized int[] getBestIndex(float[] logits) {
-    List<QaAnswer.Pos> tmpList = new ArrayList<>();
-    for (int i = 0; i < MAX_SEQ_LEN; i++) {
-      tmpList.add(new QaAnswer.Pos(i, i, logits[i]));
-    }
-    Collections.sort(tmpList);
-
+  private static int[] getBestIndex(float[] logits) {
     int[] indexes = new int[PREDICT_ANS_NUM];
-    for (int i = 0; i < PREDICT_ANS_NUM; i++) {
-      indexes[i] = tmpList.get(i).start;
+    int count = 0;
+    for (int i = 0; i < MAX_SEQ_LEN; i++) {
+      float logit = logits[i];
+      if (count == PREDICT_ANS_NUM && Float.compare(logit, logits[indexes[count - 1]]) <= 0) {
+        continue;
+      }
+      // Drops the last one when full, then moves the lower ones down.
+      int slot = count < PREDICT_ANS_NUM ? count++ : count - 1;
+      while (slot > 0 && Float.compare(logit, logits[indexes[slot - 1]]) > 0) {
+        indexes[slot] = indexes[slot - 1];
+        slot--;
+      }
+      indexes[slot] = i;
     }
-
     return indexes;
   }
 
   /** Convert the answer back to original text form. */
   @WorkerThread
   private static String convertBack(Feature feature, int start, int end) {
-     // Shifted index is: index of logits + offset.
-    int shiftedStart = start + OUTPUT_OFFSET;
-    int shiftedEnd = end + OUTPUT_OFFSET;
-    int startIndex = feature.tokenToOrigMap.get(shiftedStart);
-    int endIndex = feature.tokenToOrigMap.get(shiftedEnd);
+    // Logits are by position in the feature, [CLS] included, like the token map.
+    int startIndex = feature.tokenToOrigMap[start];
+    int endIndex = feature.tokenToOrigMap[end];
     // end + 1 for the closed interval.
     String ans = SPACE_JOINER.join(feature.origTokens.subList(startIndex, endIndex + 1));
     return ans;
@@ -0,0 +1,57 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.bertqa.ml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The tokenization of the last few contents, so that the next questions about one only tokenize
+ * the query. The least recently asked about content is evicted first. Not thread safe.
+ */
+final class TokenizedContextCache {
+  private final FeatureConverter featureConverter;
+  // Keyed by the content itself, so that a lookup costs its hash and one comparison, which also
+  // rules out hash collisions.
+  private final Map<String, FeatureConverter.TokenizedContext> contexts;
+
+  TokenizedContextCache(FeatureConverter featureConverter, int capacity) {
+    this.featureConverter = featureConverter;
+    this.contexts =
+        new LinkedHashMap<String, FeatureConverter.TokenizedContext>(
+            capacity + 1, 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<String, FeatureConverter.TokenizedContext> eldest) {
+            return size() > capacity;
+          }
+        };
+  }
+
+  /** Returns the tokenization of {@code content}, tokenizing it unless it is cached. */
+  FeatureConverter.TokenizedContext get(String content) {
+    FeatureConverter.TokenizedContext context = contexts.get(content);
+    if (context == null) {
+      context = featureConverter.tokenizeContext(content);
+      contexts.put(content, context);
+    }
+    return context;
+  }
+
+  /** Number of contents cached. */
+  int size() {
+    return contexts.size();
+  }
+}
@@ -15,90 +15,154 @@ limitations under the License.
 package org.tensorflow.lite.examples.bertqa.tokenization;
 
 import com.google.common.base.Ascii;
-import com.google.common.collect.Iterables;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-/** Basic tokenization (punctuation splitting, lower casing, etc.) */
+/**
+ * Basic tokenization (punctuation splitting, lower casing, etc.)
+ *
+ * <p>Cleaning, whitespace and punctuation splitting and lower casing happen in a single pass over
+ * the text, writing the tokens into a reusable {@link Tokens}.
+ */
 public final class BasicTokenizer {
+  // Classes of characters, see classify().
+  private static final byte SKIP = 0;
+  private static final byte WHITESPACE = 1;
+  private static final byte PUNCTUATION = 2;
+  private static final byte WORD = 3;
+  // Classes of the ASCII characters, the common case.
+  private static final byte[] ASCII_CLASSES = new byte[128];
+
+  static {
+    for (char ch = 0; ch < ASCII_CLASSES.length; ch++) {
+      ASCII_CLASSES[ch] = classifySlowly(ch);
+    }
+  }
+
   private final boolean doLowerCase;
 
+  /**
+   * Tokens of a text, as spans of a cleaned, and possibly lower cased, copy of its characters.
+   * Meant to be reused from text to text, its arrays only grow.
+   */
+  public static final class Tokens {
+    private char[] chars = new char[0];
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+    private int size;
+
+    /** Number of tokens. */
+    public int size() {
+      return size;
+    }
+
+    /** Characters the tokens are spans of, only valid until the next tokenization. */
+    public char[] getChars() {
+      return chars;
+    }
+
+    /** Offset of token {@code index} in {@link #getChars}. */
+    public int getOffset(int index) {
+      return offsets[index];
+    }
+
+    /** Length of token {@code index}, never 0. */
+    public int getLength(int index) {
+      return lengths[index];
+    }
+
+    public String getToken(int index) {
+      return new String(chars, offsets[index], lengths[index]);
+    }
+
+    /** Empties the tokens, with room for the tokens of a text of {@code length} characters. */
+    private void reset(int length) {
+      if (chars.length < length) {
+        chars = new char[length];
+        offsets = new int[length];
+        lengths = new int[length];
+      }
+      size = 0;
+    }
+
+    private void add(int offset, int length) {
+      offsets[size] = offset;
+      lengths[size] = length;
+      size++;
+    }
+  }
+
   public BasicTokenizer(boolean doLowerCase) {
     this.doLowerCase = doLowerCase;
   }
 
   public List<String> tokenize(String text) {
-    String cleanedText = cleanText(text);
-
-    List<String> origTokens = whitespaceTokenize(cleanedText);
-
-    StringBuilder stringBuilder = new StringBuilder();
-    for (String token : origTokens) {
-      if (doLowerCase) {
-        token = Ascii.toLowerCase(token);
-      }
-      List<String> list = runSplitOnPunc(token);
-      for (String subToken : list) {
-        stringBuilder.append(subToken).append(" ");
-      }
+    Tokens tokens = new Tokens();
+    tokenize(text, tokens);
+    if (tokens.size() == 0) {
+      // Splitting an empty string gives a single empty token.
+      return Collections.singletonList("");
     }
-    return whitespaceTokenize(stringBuilder.toString());
+    List<String> list = new ArrayList<>(tokens.size());
+    for (int i = 0; i < tokens.size(); i++) {
+      list.add(tokens.getToken(i));
+    }
+    return list;
   }
 
-  /* Performs invalid character removal and whitespace cleanup on text. */
-  static String cleanText(String text) {
+  /**
+   * Tokenizes {@code text} into {@code tokens}. Invalid and control characters are dropped,
+   * whitespace separates tokens, and every punctuation character is a token of its own.
+   */
+  public void tokenize(String text, Tokens tokens) {
     if (text == null) {
       throw new NullPointerException("The input String is null.");
     }
 
-    StringBuilder stringBuilder = new StringBuilder("");
+    tokens.reset(text.length());
+    char[] chars = tokens.chars;
+    int length = 0;
+    // Start of the word being read in chars, or -1.
+    int wordStart = -1;
     for (int index = 0; index < text.length(); index++) {
       char ch = text.charAt(index);
-
-      // Skip the characters that cannot be used.
-      if (CharChecker.isInvalid(ch) || CharChecker.isControl(ch)) {
+      byte charClass = ch < ASCII_CLASSES.length ? ASCII_CLASSES[ch] : classifySlowly(ch);
+      if (charClass == SKIP) {
+        // Dropped, the characters around it stay in the same word.
         continue;
       }
-      if (CharChecker.isWhitespace(ch)) {
-        stringBuilder.append(" ");
-      } else {
-        stringBuilder.append(ch);
+      if (charClass == WORD) {
+        if (wordStart < 0) {
+          wordStart = length;
+        }
+        chars[length++] = doLowerCase ? Ascii.toLowerCase(ch) : ch;
+        continue;
+      }
+      if (wordStart >= 0) {
+        tokens.add(wordStart, length - wordStart);
+        wordStart = -1;
+      }
+      if (charClass == PUNCTUATION) {
+        chars[length] = ch;
+        tokens.add(length++, 1);
       }
     }
-    return stringBuilder.toString();
-  }
-
-  /* Runs basic whitespace cleaning and splitting on a piece of text. */
-  static List<String> whitespaceTokenize(String text) {
-    if (text == null) {
-      throw new NullPointerException("The input String is null.");
+    if (wordStart >= 0) {
+      tokens.add(wordStart, length - wordStart);
     }
-    return Arrays.asList(text.split(" "));
   }
 
-  /* Splits punctuation on a piece of text. */
-  static List<String> runSplitOnPunc(String text) {
-    if (text == null) {
-      throw new NullPointerException("The input String is null.");
+  private static byte classifySlowly(char ch) {
+    if (CharChecker.isInvalid(ch) || CharChecker.isControl(ch)) {
+      return SKIP;
     }
-
-    List<String> tokens = new ArrayList<>();
-    boolean startNewWord = true;
-    for (int i = 0; i < text.length(); i++) {
-      char ch = text.charAt(i);
-      if (CharChecker.isPunctuation(ch)) {
-        tokens.add(String.valueOf(ch));
-        startNewWord = true;
-      } else {
-        if (startNewWord) {
-          tokens.add("");
-          startNewWord = false;
-        }
-        tokens.set(tokens.size() - 1, Iterables.getLast(tokens) + ch);
-      }
+    if (CharChecker.isWhitespace(ch)) {
+      return WHITESPACE;
     }
-
-    return tokens;
+    if (CharChecker.isPunctuation(ch)) {
+      return PUNCTUATION;
+    }
+    return WORD;
   }
 }
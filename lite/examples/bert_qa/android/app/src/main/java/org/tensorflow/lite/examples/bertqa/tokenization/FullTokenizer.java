@@ -26,6 +26,8 @@ import java.util.Map;
 public final class FullTokenizer {
   private final BasicTokenizer basicTokenizer;
   private final WordpieceTokenizer wordpieceTokenizer;
+  // Reused by tokenizeToIds(), which is why this is not thread safe.
+  private final BasicTokenizer.Tokens basicTokens = new BasicTokenizer.Tokens();
   private final Map<String, Integer> dic;
 
   public FullTokenizer(Map<String, Integer> inputDic, boolean doLowerCase) {
@@ -42,6 +44,25 @@ public final class FullTokenizer {
     return splitTokens;
   }
 
+  /**
+   * Tokenizes {@code text} like {@link #tokenize} and writes the ids of the tokens into {@code ids}
+   * from {@code offset} on, without going through their strings. There are at most {@code
+   * text.length()} of them.
+   *
+   * @return The number of ids written.
+   */
+  public int tokenizeToIds(String text, int[] ids, int offset) {
+    basicTokenizer.tokenize(text, basicTokens);
+    char[] chars = basicTokens.getChars();
+    int count = 0;
+    for (int i = 0; i < basicTokens.size(); i++) {
+      int start = basicTokens.getOffset(i);
+      int end = start + basicTokens.getLength(i);
+      count += wordpieceTokenizer.tokenizeWordToIds(chars, start, end, ids, offset + count);
+    }
+    return count;
+  }
+
   public List<Integer> convertTokensToIds(List<String> tokens) {
     List<Integer> outputIds = new ArrayList<>();
     for (String token : tokens) {
@@ -0,0 +1,186 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.bertqa.tokenization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Character trie of a wordpiece vocabulary, so that the longest piece starting at some position of
+ * a word is found by walking the word in place.
+ *
+ * <p>There are two roots: {@link #WORD_ROOT} holds every entry as is, for pieces starting a word,
+ * and {@link #SUFFIX_ROOT} holds the "##" entries without their prefix, for pieces continuing one.
+ * The children of a node are stored sorted in flat arrays and found by binary search. Immutable
+ * once built.
+ */
+final class VocabularyTrie {
+  static final int WORD_ROOT = 0;
+  static final int SUFFIX_ROOT = 1;
+  /** Returned by {@link #child} when there is no such child, and {@link #tokenId} for no entry. */
+  static final int NONE = -1;
+
+  private static final String SUFFIX_PREFIX = "##";
+
+  // Children of node n are edges firstEdge[n] to firstEdge[n + 1] - 1, sorted by character.
+  private final int[] firstEdge;
+  private final char[] edgeChars;
+  private final int[] edgeTargets;
+  private final int[] tokenIds;
+  // Entries by id, null for unused ids.
+  private final String[] tokens;
+
+  VocabularyTrie(final Map<String, Integer> vocab) {
+    int maxId = -1;
+    for (final int id : vocab.values()) {
+      maxId = Math.max(maxId, id);
+    }
+    tokens = new String[maxId + 1];
+    final List<String> words = new ArrayList<>(vocab.size());
+    final List<String> suffixes = new ArrayList<>();
+    for (final Map.Entry<String, Integer> entry : vocab.entrySet()) {
+      final String token = entry.getKey();
+      tokens[entry.getValue()] = token;
+      words.add(token);
+      if (token.startsWith(SUFFIX_PREFIX)) {
+        suffixes.add(token);
+      }
+    }
+
+    final Builder builder = new Builder(vocab.size());
+    builder.addSorted(WORD_ROOT, words, 0, vocab);
+    builder.addSorted(SUFFIX_ROOT, suffixes, SUFFIX_PREFIX.length(), vocab);
+
+    // Groups the edges by parent, keeping them sorted by character within a parent.
+    final int nodeCount = builder.nodeCount;
+    final int edgeCount = builder.edgeCount;
+    tokenIds = Arrays.copyOf(builder.tokenIds, nodeCount);
+    firstEdge = new int[nodeCount + 1];
+    edgeChars = new char[edgeCount];
+    edgeTargets = new int[edgeCount];
+    for (int e = 0; e < edgeCount; ++e) {
+      ++firstEdge[builder.edgeParents[e] + 1];
+    }
+    for (int node = 0; node < nodeCount; ++node) {
+      firstEdge[node + 1] += firstEdge[node];
+    }
+    final int[] nextEdge = Arrays.copyOf(firstEdge, nodeCount);
+    for (int e = 0; e < edgeCount; ++e) {
+      final int slot = nextEdge[builder.edgeParents[e]]++;
+      edgeChars[slot] = builder.edgeChars[e];
+      edgeTargets[slot] = e + 2;
+    }
+  }
+
+  /** Child of {@code node} along {@code ch}, or {@link #NONE}. */
+  int child(final int node, final char ch) {
+    int low = firstEdge[node];
+    int high = firstEdge[node + 1] - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final char midChar = edgeChars[mid];
+      if (midChar < ch) {
+        low = mid + 1;
+      } else if (midChar > ch) {
+        high = mid - 1;
+      } else {
+        return edgeTargets[mid];
+      }
+    }
+    return NONE;
+  }
+
+  /** Id of the entry ending at {@code node}, or {@link #NONE}. */
+  int tokenId(final int node) {
+    return tokenIds[node];
+  }
+
+  /** Entry of id {@code id}. */
+  String token(final int id) {
+    return tokens[id];
+  }
+
+  /**
+   * Nodes and edges of the trie being built. Every node but the roots is the target of exactly one
+   * edge, node {@code e + 2} of edge {@code e}.
+   */
+  private static final class Builder {
+    int nodeCount = 2;
+    int edgeCount;
+    int[] tokenIds;
+    int[] edgeParents;
+    char[] edgeChars;
+    // Path of the entry added last, by depth.
+    int[] path = new int[16];
+
+    Builder(final int expectedEntries) {
+      final int capacity = Math.max(16, expectedEntries * 4);
+      tokenIds = new int[capacity];
+      Arrays.fill(tokenIds, NONE);
+      edgeParents = new int[capacity];
+      edgeChars = new char[capacity];
+    }
+
+    /**
+     * Adds the entries below {@code root}, without their first {@code skip} characters. Sorted, an
+     * entry shares its path with the previous one up to their common prefix, and the edges of a
+     * node are added by increasing character.
+     */
+    void addSorted(
+        final int root,
+        final List<String> entries,
+        final int skip,
+        final Map<String, Integer> ids) {
+      Collections.sort(entries);
+      String previous = null;
+      for (final String entry : entries) {
+        final int length = entry.length() - skip;
+        int common = 0;
+        if (previous != null) {
+          final int limit = Math.min(length, previous.length() - skip);
+          while (common < limit && entry.charAt(skip + common) == previous.charAt(skip + common)) {
+            ++common;
+          }
+        }
+        if (path.length <= length) {
+          path = Arrays.copyOf(path, Math.max(path.length * 2, length + 1));
+        }
+        path[0] = root;
+        for (int depth = common; depth < length; ++depth) {
+          path[depth + 1] = addEdge(path[depth], entry.charAt(skip + depth));
+        }
+        tokenIds[path[length]] = ids.get(entry);
+        previous = entry;
+      }
+    }
+
+    private int addEdge(final int parent, final char ch) {
+      if (nodeCount == tokenIds.length) {
+        final int capacity = nodeCount * 2;
+        tokenIds = Arrays.copyOf(tokenIds, capacity);
+        Arrays.fill(tokenIds, nodeCount, capacity, NONE);
+        edgeParents = Arrays.copyOf(edgeParents, capacity);
+        edgeChars = Arrays.copyOf(edgeChars, capacity);
+      }
+      edgeParents[edgeCount] = parent;
+      edgeChars[edgeCount] = ch;
+      ++edgeCount;
+      return nodeCount++;
+    }
+  }
+}
@@ -18,15 +18,26 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-/** Word piece tokenization to split a piece of text into its word pieces. */
+/**
+ * Word piece tokenization to split a piece of text into its word pieces.
+ *
+ * <p>The vocabulary is built into a {@link VocabularyTrie} once, and the longest piece is found by
+ * walking the word in place instead of looking every candidate substring up.
+ */
 public final class WordpieceTokenizer {
-  private final Map<String, Integer> dic;
+  private final VocabularyTrie trie;
+  private final int unknownId;
 
   private static final String UNKNOWN_TOKEN = "[UNK]"; // For unknown words.
   private static final int MAX_INPUTCHARS_PER_WORD = 200;
 
   public WordpieceTokenizer(Map<String, Integer> vocab) {
-    dic = vocab;
+    Integer unknown = vocab.get(UNKNOWN_TOKEN);
+    if (unknown == null) {
+      throw new IllegalArgumentException("The vocabulary has no " + UNKNOWN_TOKEN + " token.");
+    }
+    unknownId = unknown;
+    trie = new VocabularyTrie(vocab);
   }
 
   /**
@@ -43,52 +54,81 @@ public final class WordpieceTokenizer {
       throw new NullPointerException("The input String is null.");
     }
 
-    List<String> outputTokens = new ArrayList<>();
-    for (String token : BasicTokenizer.whitespaceTokenize(text)) {
-
-      if (token.length() > MAX_INPUTCHARS_PER_WORD) {
-        outputTokens.add(UNKNOWN_TOKEN);
-        continue;
-      }
+    int[] ids = new int[text.length()];
+    int count = tokenizeToIds(text, ids, 0);
+    List<String> outputTokens = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      outputTokens.add(trie.token(ids[i]));
+    }
+    return outputTokens;
+  }
 
-      boolean isBad = false; // Mark if a word cannot be tokenized into known subwords.
-      int start = 0;
-      List<String> subTokens = new ArrayList<>();
+  /**
+   * Tokenizes a piece of text like {@link #tokenize}, writing the ids of the word pieces into
+   * {@code ids} from {@code offset} on. There are at most {@code text.length()} of them.
+   *
+   * @return The number of ids written.
+   */
+  public int tokenizeToIds(String text, int[] ids, int offset) {
+    if (text == null) {
+      throw new NullPointerException("The input String is null.");
+    }
 
-      while (start < token.length()) {
-        String curSubStr = "";
+    char[] chars = text.toCharArray();
+    int count = 0;
+    int wordStart = 0;
+    while (wordStart <= chars.length) {
+      int wordEnd = text.indexOf(' ', wordStart);
+      if (wordEnd < 0) {
+        wordEnd = chars.length;
+      }
+      count += tokenizeWordToIds(chars, wordStart, wordEnd, ids, offset + count);
+      wordStart = wordEnd + 1;
+    }
+    return count;
+  }
 
-        int end = token.length(); // Longer substring matches first.
-        while (start < end) {
-          String subStr =
-              (start == 0) ? token.substring(start, end) : "##" + token.substring(start, end);
-          if (dic.containsKey(subStr)) {
-            curSubStr = subStr;
-            break;
-          }
-          end--;
-        }
+  /**
+   * Writes the ids of the pieces of the single word {@code chars[wordStart, wordEnd)} into {@code
+   * ids} from {@code offset} on. There are at most {@code wordEnd - wordStart} of them.
+   *
+   * @return The number of ids written.
+   */
+  public int tokenizeWordToIds(char[] chars, int wordStart, int wordEnd, int[] ids, int offset) {
+    if (wordEnd - wordStart > MAX_INPUTCHARS_PER_WORD) {
+      ids[offset] = unknownId;
+      return 1;
+    }
 
-        // The word doesn't contain any known subwords.
-        if ("".equals(curSubStr)) {
-          isBad = true;
+    int count = 0;
+    int start = wordStart;
+    while (start < wordEnd) {
+      // Longest piece starting at start, continuing the word unless it starts it.
+      int node = (start == wordStart) ? VocabularyTrie.WORD_ROOT : VocabularyTrie.SUFFIX_ROOT;
+      int matchEnd = start;
+      int matchId = VocabularyTrie.NONE;
+      for (int i = start; i < wordEnd; i++) {
+        node = trie.child(node, chars[i]);
+        if (node == VocabularyTrie.NONE) {
           break;
         }
-
-        // curSubStr is the longeset subword that can be found.
-        subTokens.add(curSubStr);
-
-        // Proceed to tokenize the resident string.
-        start = end;
+        int id = trie.tokenId(node);
+        if (id != VocabularyTrie.NONE) {
+          matchEnd = i + 1;
+          matchId = id;
+        }
       }
 
-      if (isBad) {
-        outputTokens.add(UNKNOWN_TOKEN);
-      } else {
-        outputTokens.addAll(subTokens);
+      // The word doesn't contain any known subwords.
+      if (matchId == VocabularyTrie.NONE) {
+        ids[offset] = unknownId;
+        return 1;
       }
-    }
 
-    return outputTokens;
+      ids[offset + count++] = matchId;
+      // Proceed to tokenize the resident string.
+      start = matchEnd;
+    }
+    return count;
   }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Checks how {@link FeatureConverter} splits a long context into windows. */
+public final class FeatureConverterTest {
+  private static final int MAX_QUERY_LEN = 4;
+  private static final int MAX_SEQ_LEN = 16;
+  private static final int DOC_STRIDE = 4;
+  private static final int WORDS = 30;
+  private static final int PAD_ID = 0;
+  private static final int CLS_ID = 2;
+  private static final int SEP_ID = 3;
+  // Id of word "w0", the vocabulary holds "w0" to "w<WORDS - 1>".
+  private static final int FIRST_WORD_ID = 4;
+
+  @Test
+  public void keepsAShortContextInOneFeature() {
+    List<Feature> features = newConverter().convert("w1 w2", "w5  w6\tw7");
+
+    assertEquals(1, features.size());
+    Feature feature = features.get(0);
+    int[] expectedIds = {CLS_ID, wordId(1), wordId(2), SEP_ID, wordId(5), wordId(6), wordId(7)};
+    for (int i = 0; i < expectedIds.length; i++) {
+      assertEquals(expectedIds[i], feature.inputIds[i]);
+      assertEquals(1, feature.inputMask[i]);
+      assertEquals(i < 4 ? 0 : 1, feature.segmentIds[i]);
+    }
+    assertEquals(SEP_ID, feature.inputIds[expectedIds.length]);
+    assertEquals(PAD_ID, feature.inputIds[expectedIds.length + 1]);
+    assertEquals(0, feature.inputMask[expectedIds.length + 1]);
+    assertEquals(Feature.NO_ORIG_TOKEN, feature.tokenToOrigMap[3]);
+    assertEquals(0, feature.tokenToOrigMap[4]);
+    assertEquals(2, feature.tokenToOrigMap[6]);
+    assertEquals(Feature.NO_ORIG_TOKEN, feature.tokenToOrigMap[7]);
+    assertTrue(feature.tokenIsMaxContext[6]);
+  }
+
+  @Test
+  public void splitsALongContextInOverlappingWindows() {
+    StringBuilder context = new StringBuilder();
+    for (int i = 0; i < WORDS; i++) {
+      context.append("w").append(i).append(' ');
+    }
+    List<Feature> features = newConverter().convert("w1 w2", context.toString());
+
+    // 16 - 2 query wordpieces - 3 marks leave 11 per window, starting every 4.
+    int[] expectedStarts = {0, 4, 8, 12, 16, 20};
+    assertEquals(expectedStarts.length, features.size());
+    int[] maxContextWindows = new int[WORDS];
+    for (int window = 0; window < features.size(); window++) {
+      Feature feature = features.get(window);
+      assertEquals(wordId(1), feature.inputIds[1]);
+      assertEquals(wordId(expectedStarts[window]), feature.inputIds[4]);
+      int words = 0;
+      for (int position = 0; position < MAX_SEQ_LEN; position++) {
+        int word = feature.tokenToOrigMap[position];
+        if (word == Feature.NO_ORIG_TOKEN) {
+          continue;
+        }
+        words++;
+        assertEquals(wordId(word), feature.inputIds[position]);
+        assertEquals(expectedStarts[window] + position - 4, word);
+        if (feature.tokenIsMaxContext[position]) {
+          maxContextWindows[word]++;
+        }
+      }
+      assertEquals(Math.min(WORDS - expectedStarts[window], 11), words);
+    }
+    for (int word = 0; word < WORDS; word++) {
+      assertEquals("w" + word, 1, maxContextWindows[word]);
+    }
+    // Word 9 is in the middle of the second window, and near the ends of the first and third.
+    assertTrue(features.get(1).tokenIsMaxContext[4 + 9 - 4]);
+  }
+
+  @Test
+  public void keepsAnEmptyContextInOneFeature() {
+    List<Feature> features = newConverter().convert("w1", " ");
+
+    assertEquals(1, features.size());
+    assertEquals(Feature.NO_ORIG_TOKEN, features.get(0).tokenToOrigMap[4]);
+    assertEquals(SEP_ID, features.get(0).inputIds[3]);
+  }
+
+  @Test
+  public void reusesATokenizedContext() {
+    FeatureConverter converter = newConverter();
+    String context = "w3 w4 w5 w6 w7 w8 w9 w10 w11 w12 w13 w14 w15 w16";
+    FeatureConverter.TokenizedContext tokenizedContext = converter.tokenizeContext(context);
+    assertEquals(14, tokenizedContext.size());
+
+    // Queries of other lengths give windows of other lengths.
+    for (String query : new String[] {"w1 w2 w3 w4", "w1", "w20 w21"}) {
+      List<Feature> expected = newConverter().convert(query, context);
+      List<Feature> features = converter.convert(query, tokenizedContext);
+      assertEquals(expected.size(), features.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(Arrays.equals(expected.get(i).inputIds, features.get(i).inputIds));
+        assertTrue(Arrays.equals(expected.get(i).inputMask, features.get(i).inputMask));
+        assertTrue(Arrays.equals(expected.get(i).segmentIds, features.get(i).segmentIds));
+        assertTrue(Arrays.equals(expected.get(i).tokenToOrigMap, features.get(i).tokenToOrigMap));
+        assertTrue(
+            Arrays.equals(expected.get(i).tokenIsMaxContext, features.get(i).tokenIsMaxContext));
+      }
+    }
+  }
+
+  private static FeatureConverter newConverter() {
+    Map<String, Integer> vocab = new HashMap<>();
+    vocab.put("[PAD]", PAD_ID);
+    vocab.put("[UNK]", 1);
+    vocab.put("[CLS]", CLS_ID);
+    vocab.put("[SEP]", SEP_ID);
+    for (int i = 0; i < WORDS; i++) {
+      vocab.put("w" + i, wordId(i));
+    }
+    return new FeatureConverter(vocab, true, MAX_QUERY_LEN, MAX_SEQ_LEN, DOC_STRIDE);
+  }
+
+  private static int wordId(int word) {
+    return FIRST_WORD_ID + word;
+  }
+}
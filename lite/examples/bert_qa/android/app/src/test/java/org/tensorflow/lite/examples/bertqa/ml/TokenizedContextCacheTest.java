@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/** Checks which contents {@link TokenizedContextCache} tokenizes again, at the size of QaClient. */
+public final class TokenizedContextCacheTest {
+  private static final int CAPACITY = QaClient.CONTEXT_CACHE_SIZE;
+  private static final int WORDS = 10;
+
+  @Test
+  public void reusesTheTokenizationOfACachedContent() {
+    TokenizedContextCache cache = newCache();
+
+    FeatureConverter.TokenizedContext first = cache.get(content(0));
+    assertEquals(3, first.size());
+    assertSame(first, cache.get(content(0)));
+    // Equal contents share the tokenization, whatever the string instance.
+    assertSame(first, cache.get(new String(content(0))));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyAskedAboutContent() {
+    TokenizedContextCache cache = newCache();
+    FeatureConverter.TokenizedContext[] contexts = new FeatureConverter.TokenizedContext[CAPACITY];
+    for (int i = 0; i < CAPACITY; i++) {
+      contexts[i] = cache.get(content(i));
+    }
+    // Asking about the oldest content again makes the second one the least recently asked about.
+    assertSame(contexts[0], cache.get(content(0)));
+
+    cache.get(content(CAPACITY));
+
+    assertEquals(CAPACITY, cache.size());
+    assertSame(contexts[0], cache.get(content(0)));
+    for (int i = 2; i < CAPACITY; i++) {
+      assertSame(contexts[i], cache.get(content(i)));
+    }
+    assertNotSame(contexts[1], cache.get(content(1)));
+    assertEquals(CAPACITY, cache.size());
+  }
+
+  /** A content of three words, different for every {@code index} under {@code WORDS}. */
+  private static String content(int index) {
+    return "w" + index + " w" + index + " w" + index;
+  }
+
+  private static TokenizedContextCache newCache() {
+    Map<String, Integer> vocab = new HashMap<>();
+    vocab.put("[PAD]", 0);
+    vocab.put("[UNK]", 1);
+    vocab.put("[CLS]", 2);
+    vocab.put("[SEP]", 3);
+    for (int i = 0; i < WORDS; i++) {
+      vocab.put("w" + i, 4 + i);
+    }
+    return new TokenizedContextCache(new FeatureConverter(vocab, true, 4, 16, 4), CAPACITY);
+  }
+}
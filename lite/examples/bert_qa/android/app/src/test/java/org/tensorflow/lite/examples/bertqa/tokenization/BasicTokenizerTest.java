@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.tokenization;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Ascii;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks the single pass {@link BasicTokenizer} against the clean, split and join implementation it
+ * replaced, on a golden corpus of the character classes it tells apart.
+ */
+public final class BasicTokenizerTest {
+  private static final String[] CORPUS = {
+    "",
+    " ",
+    "   \t\n ",
+    "Hello, World!",
+    "  leading and trailing spaces  ",
+    "multiple   spaces\tand\ttabs\r\nand lines",
+    "The 2019-2020 season (\"so far\") was ok... right?!",
+    "e-mail: someone@example.com, $100 & 50% off #tags",
+    "under_score and dash-separated-words",
+    "non\u00a0breaking\u2003em space\u2028line separator",
+    "zero\u200bwidth\u200djoiner and soft\u00adhyphen",
+    "nul\u0000char and replacement\ufffdchar",
+    "control\u0001\u0007\u001bchars",
+    "“Curly quotes” ‘single’ — em dash … ellipsis",
+    "«Guillemets» ¿Qué? ¡Sí!",
+    "CafÉ ÅNGSTRÖM naïve İstanbul",
+    "中文。日本語、テスト！",
+    "emoji 😀 and 👍🏽 surrogates",
+    "lone \ud83d surrogate",
+    "ALL CAPS SENTENCE WITH NUMBERS 123 AND SYMBOLS +=<>|~^`",
+  };
+  // Random texts mix characters of every class, including both halves of a surrogate pair.
+  private static final String PALETTE =
+      "aZ9 \t\n\u00a0\u2003.,!?-_()\"'“—Éé中。\u0000\u0001\u200b\ufffd😀";
+
+  @Test
+  public void matchesGoldenCorpus() {
+    for (boolean doLowerCase : new boolean[] {true, false}) {
+      for (String text : CORPUS) {
+        assertTokenized(doLowerCase, text);
+      }
+    }
+  }
+
+  @Test
+  public void matchesRandomTexts() {
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(40);
+      for (int j = 0; j < length; j++) {
+        text.append(PALETTE.charAt(random.nextInt(PALETTE.length())));
+      }
+      assertTokenized(random.nextBoolean(), text.toString());
+    }
+  }
+
+  @Test
+  public void reusesTokens() {
+    BasicTokenizer tokenizer = new BasicTokenizer(true);
+    BasicTokenizer.Tokens tokens = new BasicTokenizer.Tokens();
+    tokenizer.tokenize("A much longer first text, with punctuation.", tokens);
+    tokenizer.tokenize("Short: one", tokens);
+
+    assertEquals(3, tokens.size());
+    assertEquals("short", tokens.getToken(0));
+    assertEquals(":", tokens.getToken(1));
+    assertEquals("one", tokens.getToken(2));
+    assertEquals(
+        "one",
+        new String(tokens.getChars(), tokens.getOffset(2), tokens.getLength(2)));
+  }
+
+  private static void assertTokenized(boolean doLowerCase, String text) {
+    List<String> expected = referenceTokenize(doLowerCase, text);
+    BasicTokenizer tokenizer = new BasicTokenizer(doLowerCase);
+    assertEquals(text, expected, tokenizer.tokenize(text));
+
+    BasicTokenizer.Tokens tokens = new BasicTokenizer.Tokens();
+    tokenizer.tokenize(text, tokens);
+    List<String> spans = new ArrayList<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      spans.add(tokens.getToken(i));
+    }
+    if (spans.isEmpty()) {
+      spans.add("");
+    }
+    assertEquals(text, expected, spans);
+  }
+
+  /** The tokenization before the single pass, cleaning, then splitting and joining the tokens. */
+  private static List<String> referenceTokenize(boolean doLowerCase, String text) {
+    StringBuilder cleaned = new StringBuilder();
+    for (int index = 0; index < text.length(); index++) {
+      char ch = text.charAt(index);
+      if (CharChecker.isInvalid(ch) || CharChecker.isControl(ch)) {
+        continue;
+      }
+      cleaned.append(CharChecker.isWhitespace(ch) ? ' ' : ch);
+    }
+
+    StringBuilder joined = new StringBuilder();
+    for (String token : cleaned.toString().split(" ")) {
+      if (doLowerCase) {
+        token = Ascii.toLowerCase(token);
+      }
+      List<String> tokens = new ArrayList<>();
+      boolean startNewWord = true;
+      for (int i = 0; i < token.length(); i++) {
+        char ch = token.charAt(i);
+        if (CharChecker.isPunctuation(ch)) {
+          tokens.add(String.valueOf(ch));
+          startNewWord = true;
+        } else {
+          if (startNewWord) {
+            tokens.add("");
+            startNewWord = false;
+          }
+          tokens.set(tokens.size() - 1, Iterables.getLast(tokens) + ch);
+        }
+      }
+      for (String subToken : tokens) {
+        joined.append(subToken).append(" ");
+      }
+    }
+    return Arrays.asList(joined.toString().split(" "));
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.bertqa.tokenization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.tensorflow.lite.support.metadata.MetadataExtractor;
+
+/**
+ * Checks {@link WordpieceTokenizer} against the substring lookups it replaced, on edge cases and on
+ * the passages of the bundled {@code qa.json} once the assets are downloaded.
+ */
+public final class WordpieceTokenizerTest {
+  private static final File ASSET_DIR = new File("src/main/assets");
+  private static final String UNKNOWN_TOKEN = "[UNK]";
+  private static final int MAX_INPUTCHARS_PER_WORD = 200;
+
+  @Test
+  public void matchesSubstringLookups() {
+    Map<String, Integer> vocab =
+        vocab("[PAD]", "[UNK]", "un", "##aff", "##able", "a", "##a", "##b", "b", "##", "##ab");
+    WordpieceTokenizer tokenizer = new WordpieceTokenizer(vocab);
+    StringBuilder longWord = new StringBuilder();
+    for (int i = 0; i <= MAX_INPUTCHARS_PER_WORD; i++) {
+      longWord.append('a');
+    }
+    String[] texts = {
+      "unaffable", "unaffablex", "aab ab", "b  un ", "", " ", "##ab", "bab", longWord.toString()
+    };
+
+    for (String text : texts) {
+      List<String> expected = referenceTokenize(vocab, text);
+      assertEquals(text, expected, tokenizer.tokenize(text));
+      assertEquals(text, referenceIds(vocab, expected), ids(tokenizer, text));
+    }
+  }
+
+  @Test
+  public void matchesSubstringLookupsOverQaContents() throws IOException {
+    File model = new File(ASSET_DIR, "model.tflite");
+    File dataset = new File(ASSET_DIR, "qa.json");
+    assumeTrue("Assets not downloaded", model.exists() && dataset.exists());
+
+    Map<String, Integer> vocab = loadVocab(model);
+    WordpieceTokenizer tokenizer = new WordpieceTokenizer(vocab);
+    BasicTokenizer basicTokenizer = new BasicTokenizer(true);
+    for (String content : loadContents(dataset)) {
+      for (String word : basicTokenizer.tokenize(content)) {
+        List<String> expected = referenceTokenize(vocab, word);
+        assertEquals(word, expected, tokenizer.tokenize(word));
+        assertEquals(word, referenceIds(vocab, expected), ids(tokenizer, word));
+      }
+    }
+  }
+
+  /** The greedy longest-match-first tokenization of a single word, one substring per candidate. */
+  private static List<String> referenceTokenize(Map<String, Integer> dic, String text) {
+    List<String> outputTokens = new ArrayList<>();
+    for (String token : Arrays.asList(text.split(" "))) {
+      if (token.length() > MAX_INPUTCHARS_PER_WORD) {
+        outputTokens.add(UNKNOWN_TOKEN);
+        continue;
+      }
+
+      boolean isBad = false;
+      int start = 0;
+      List<String> subTokens = new ArrayList<>();
+      while (start < token.length()) {
+        String curSubStr = "";
+        int end = token.length();
+        while (start < end) {
+          String subStr =
+              (start == 0) ? token.substring(start, end) : "##" + token.substring(start, end);
+          if (dic.containsKey(subStr)) {
+            curSubStr = subStr;
+            break;
+          }
+          end--;
+        }
+        if ("".equals(curSubStr)) {
+          isBad = true;
+          break;
+        }
+        subTokens.add(curSubStr);
+        start = end;
+      }
+
+      if (isBad) {
+        outputTokens.add(UNKNOWN_TOKEN);
+      } else {
+        outputTokens.addAll(subTokens);
+      }
+    }
+    return outputTokens;
+  }
+
+  private static List<Integer> referenceIds(Map<String, Integer> dic, List<String> tokens) {
+    List<Integer> ids = new ArrayList<>();
+    for (String token : tokens) {
+      ids.add(dic.get(token));
+    }
+    return ids;
+  }
+
+  private static List<Integer> ids(WordpieceTokenizer tokenizer, String text) {
+    int[] ids = new int[text.length()];
+    int count = tokenizer.tokenizeToIds(text, ids, 0);
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      list.add(ids[i]);
+    }
+    return list;
+  }
+
+  private static Map<String, Integer> vocab(String... tokens) {
+    Map<String, Integer> vocab = new HashMap<>();
+    for (String token : tokens) {
+      vocab.put(token, vocab.size());
+    }
+    return vocab;
+  }
+
+  private static Map<String, Integer> loadVocab(File model) throws IOException {
+    MetadataExtractor metadata =
+        new MetadataExtractor(ByteBuffer.wrap(Files.readAllBytes(model.toPath())));
+    Map<String, Integer> vocab = new HashMap<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(metadata.getAssociatedFile("vocab.txt")))) {
+      int index = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        vocab.put(line, index++);
+      }
+    }
+    return vocab;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> loadContents(File dataset) throws IOException {
+    try (FileReader reader = new FileReader(dataset)) {
+      Map<String, List<List<String>>> json = new Gson().fromJson(reader, HashMap.class);
+      List<String> contents = new ArrayList<>();
+      for (List<String> item : json.get("contents")) {
+        contents.addAll(item);
+      }
+      return contents;
+    }
+  }
+}
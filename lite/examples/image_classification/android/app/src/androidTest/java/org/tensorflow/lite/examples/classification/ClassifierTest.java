@@ -51,6 +51,7 @@ public class ClassifierTest {
   private static final String[] INPUTS = {"fox.jpg"};
   private static final String[] GOLDEN_OUTPUTS_SUPPORT = {"fox-mobilenet_v1_1.0_224_support.txt"};
   private static final String[] GOLDEN_OUTPUTS_TASK = {"fox-mobilenet_v1_1.0_224_task_api.txt"};
+  private static final int BATCH_SIZE = 3;
 
   @Test
   public void classificationResultsShouldNotChange() throws IOException {
@@ -83,6 +84,38 @@ public class ClassifierTest {
     }
   }
 
+  @Test
+  public void batchedClassificationResultsShouldNotChange() throws IOException {
+    ClassifierActivity activity = rule.getActivity();
+    Classifier classifier = Classifier.create(activity, Model.FLOAT_MOBILENET, Device.CPU, 1);
+    String goldenOutputFileName =
+        Classifier.TAG.equals("ClassifierWithSupport")
+            ? GOLDEN_OUTPUTS_SUPPORT[0]
+            : GOLDEN_OUTPUTS_TASK[0];
+    List<Recognition> goldenOutput = loadRecognitions(goldenOutputFileName);
+    Bitmap input = loadImage(INPUTS[0]);
+    List<Bitmap> batch = new ArrayList<>();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(input);
+    }
+
+    List<List<Recognition>> results = classifier.recognizeImages(batch, 0);
+    assertThat(results).hasSize(BATCH_SIZE);
+    for (List<Recognition> result : results) {
+      Iterator<Recognition> goldenOutputIterator = goldenOutput.iterator();
+      for (Recognition actual : result) {
+        Assert.assertTrue(goldenOutputIterator.hasNext());
+        Recognition expected = goldenOutputIterator.next();
+        assertThat(actual.getTitle()).isEqualTo(expected.getTitle());
+        assertThat(actual.getConfidence()).isWithin(0.01f).of(expected.getConfidence());
+      }
+    }
+    // Single images still work after the interpreter was resized to a batch.
+    assertThat(classifier.recognizeImage(input, 0).get(0).getTitle())
+        .isEqualTo(goldenOutput.get(0).getTitle());
+    classifier.close();
+  }
+
   private static Bitmap loadImage(String fileName) {
     AssetManager assetManager =
         InstrumentationRegistry.getInstrumentation().getContext().getAssets();
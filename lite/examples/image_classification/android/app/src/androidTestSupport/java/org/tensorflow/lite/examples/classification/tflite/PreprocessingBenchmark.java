@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.rule.ActivityTestRule;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.classification.ClassifierActivity;
+import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
+import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
+
+/**
+ * Times the preprocessing of a camera frame by {@link Classifier#loadImage}, with the {@link
+ * FusedPreprocessor} and with the {@link org.tensorflow.lite.support.image.ImageProcessor} ops, for
+ * the float and quantized MobileNet and EfficientNet. The median times are logged under {@code
+ * PreprocessingBenchmark}:
+ *
+ * <pre>
+ * ./gradlew :app:connectedSupportDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ *     org.tensorflow.lite.examples.classification.tflite.PreprocessingBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreprocessingBenchmark {
+  private static final String TAG = "PreprocessingBenchmark";
+
+  private static final Model[] MODELS = {
+    Model.FLOAT_MOBILENET,
+    Model.QUANTIZED_MOBILENET,
+    Model.FLOAT_EFFICIENTNET,
+    Model.QUANTIZED_EFFICIENTNET
+  };
+  // The preview size of ClassifierActivity, rotated as on most phones.
+  private static final int FRAME_WIDTH = 640;
+  private static final int FRAME_HEIGHT = 480;
+  private static final int SENSOR_ORIENTATION = 90;
+  private static final int NUM_WARMUP_RUNS = 10;
+  private static final int NUM_TIMED_RUNS = 100;
+
+  @Rule
+  public ActivityTestRule<ClassifierActivity> rule =
+      new ActivityTestRule<>(ClassifierActivity.class);
+
+  @Test
+  public void benchmarkLoadImage() throws IOException {
+    Bitmap frame = createFrame();
+    for (Model model : MODELS) {
+      Classifier classifier = Classifier.create(rule.getActivity(), model, Device.CPU, 1);
+      try {
+        assertThat(classifier.setFusedPreprocessing(false)).isFalse();
+        int inputBytes = classifier.loadImage(frame, SENSOR_ORIENTATION).capacity();
+        long opsNs = timeLoadImage(classifier, frame);
+
+        // Every bundled model has a FLOAT32 or a UINT8 input that the fused pass supports.
+        assertThat(classifier.setFusedPreprocessing(true)).isTrue();
+        assertThat(classifier.loadImage(frame, SENSOR_ORIENTATION).capacity())
+            .isEqualTo(inputBytes);
+        long fusedNs = timeLoadImage(classifier, frame);
+
+        Log.i(
+            TAG,
+            String.format(
+                "%s: image processor %.3fms, fused %.3fms (x%.1f)",
+                model, opsNs / 1e6, fusedNs / 1e6, opsNs / (double) fusedNs));
+      } finally {
+        classifier.close();
+      }
+    }
+  }
+
+  /** Returns the median time, in ns, of {@code NUM_TIMED_RUNS} calls after warming up. */
+  private static long timeLoadImage(Classifier classifier, Bitmap frame) {
+    for (int i = 0; i < NUM_WARMUP_RUNS; ++i) {
+      classifier.loadImage(frame, SENSOR_ORIENTATION);
+    }
+    long[] times = new long[NUM_TIMED_RUNS];
+    for (int i = 0; i < NUM_TIMED_RUNS; ++i) {
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      classifier.loadImage(frame, SENSOR_ORIENTATION);
+      times[i] = SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+    Arrays.sort(times);
+    return times[NUM_TIMED_RUNS / 2];
+  }
+
+  /** Creates a noise frame, so that the resize and normalization see varied pixels. */
+  private static Bitmap createFrame() {
+    int[] pixels = new int[FRAME_WIDTH * FRAME_HEIGHT];
+    Random random = new Random(0);
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    return Bitmap.createBitmap(pixels, FRAME_WIDTH, FRAME_HEIGHT, Bitmap.Config.ARGB_8888);
+  }
+}
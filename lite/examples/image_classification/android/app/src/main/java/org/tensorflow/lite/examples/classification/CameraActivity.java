@@ -51,8 +51,8 @@ import android.widget.Toast;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import java.nio.ByteBuffer;
 import java.util.List;
-import org.tensorflow.lite.examples.classification.env.ImageUtils;
 import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.env.YuvToRgbConverter;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Recognition;
@@ -75,6 +75,7 @@ public abstract class CameraActivity extends AppCompatActivity
   private boolean isProcessingFrame = false;
   private byte[][] yuvBytes = new byte[3][];
   private int[] rgbBytes = null;
+  private YuvToRgbConverter yuvToRgbConverter;
   private int yRowStride;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
@@ -240,7 +241,8 @@ public abstract class CameraActivity extends AppCompatActivity
         new Runnable() {
           @Override
           public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
+            yuvToRgbConverter.convertYUV420SPToARGB8888(
+                bytes, previewWidth, previewHeight, rgbBytes);
           }
         };
 
@@ -288,7 +290,7 @@ public abstract class CameraActivity extends AppCompatActivity
           new Runnable() {
             @Override
             public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
+              yuvToRgbConverter.convertYUV420ToARGB8888(
                   yuvBytes[0],
                   yuvBytes[1],
                   yuvBytes[2],
@@ -333,6 +335,7 @@ public abstract class CameraActivity extends AppCompatActivity
     handlerThread = new HandlerThread("inference");
     handlerThread.start();
     handler = new Handler(handlerThread.getLooper());
+    yuvToRgbConverter = new YuvToRgbConverter(YuvToRgbConverter.defaultNumThreads());
   }
 
   @Override
@@ -347,6 +350,7 @@ public abstract class CameraActivity extends AppCompatActivity
     } catch (final InterruptedException e) {
       LOGGER.e(e, "Exception!");
     }
+    yuvToRgbConverter.close();
 
     super.onPause();
   }
@@ -363,10 +367,12 @@ public abstract class CameraActivity extends AppCompatActivity
     super.onDestroy();
   }
 
-  protected synchronized void runInBackground(final Runnable r) {
-    if (handler != null) {
-      handler.post(r);
-    }
+  /**
+   * Posts {@code r} to the inference thread. Returns false, and drops {@code r}, if the thread is
+   * not running, that is when the activity is paused.
+   */
+  protected synchronized boolean runInBackground(final Runnable r) {
+    return handler != null && handler.post(r);
   }
 
   @Override
@@ -589,7 +595,9 @@ public abstract class CameraActivity extends AppCompatActivity
     if (this.device != device) {
       LOGGER.d("Updating  device: " + device);
       this.device = device;
-      final boolean threadsEnabled = device == Device.CPU;
+      // With AUTO, the thread count is the most threads to try.
+      final boolean threadsEnabled =
+          device == Device.CPU || device == Device.XNNPACK || device == Device.AUTO;
       plusImageView.setEnabled(threadsEnabled);
       minusImageView.setEnabled(threadsEnabled);
       threadsTextView.setText(threadsEnabled ? String.valueOf(numThreads) : "N/A");
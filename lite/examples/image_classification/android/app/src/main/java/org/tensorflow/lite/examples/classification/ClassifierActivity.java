@@ -26,20 +26,36 @@ import android.util.TypedValue;
 import android.widget.Toast;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.tensorflow.lite.examples.classification.env.BorderedText;
 import org.tensorflow.lite.examples.classification.env.Logger;
 import org.tensorflow.lite.examples.classification.tflite.Classifier;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
+import org.tensorflow.lite.examples.classification.tflite.DelegateSelector;
 
 public class ClassifierActivity extends CameraActivity implements OnImageAvailableListener {
   private static final Logger LOGGER = new Logger();
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final float TEXT_SIZE_DIP = 10;
+  /** Inferences run by a new classifier before it replaces the current one. */
+  private static final int NUM_WARMUP_RUNS = 2;
   private Bitmap rgbFrameBitmap = null;
   private long lastProcessingTimeMs;
   private Integer sensorOrientation;
-  private Classifier classifier;
+  private volatile Classifier classifier;
+  /** Builds and warms up new classifiers while the current one keeps classifying frames. */
+  private final ExecutorService classifierLoader = Executors.newSingleThreadExecutor();
+  /** Incremented on every configuration change, only the latest classifier is swapped in. */
+  private final AtomicInteger classifierGeneration = new AtomicInteger();
+  /** Time of the pending configuration change, or -1. Used to log the stall of a swap. */
+  private volatile long swapRequestTimeMs = -1;
+  /** Accessed on the inference thread only. */
+  private long lastFrameTimeMs = -1;
+  private long longestSwapFrameGapMs;
+  private boolean swapped = false;
   private BorderedText borderedText;
   /** Input image size of the model along x axis. */
   private int imageSizeX;
@@ -64,12 +80,6 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
     borderedText = new BorderedText(textSizePx);
     borderedText.setTypeface(Typeface.MONOSPACE);
 
-    recreateClassifier(getModel(), getDevice(), getNumThreads());
-    if (classifier == null) {
-      LOGGER.e("No classifier on preview!");
-      return;
-    }
-
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
 
@@ -78,6 +88,10 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
 
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
     rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+
+    // Loads the classifier like a configuration change, off the UI thread. Frames are skipped
+    // until it is swapped in.
+    onInferenceConfigurationChanged();
   }
 
   @Override
@@ -94,7 +108,11 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
               final List<Classifier.Recognition> results =
                   classifier.recognizeImage(rgbFrameBitmap, sensorOrientation);
               lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-              LOGGER.v("Detect: %s", results);
+              // Per-frame results, only compiled in with Logger.VERBOSE_LOGGING.
+              if (Logger.VERBOSE_LOGGING) {
+                LOGGER.v("Detect: %s", results);
+              }
+              logSwapStall();
 
               runOnUiThread(
                   new Runnable() {
@@ -123,7 +141,103 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
     final Device device = getDevice();
     final Model model = getModel();
     final int numThreads = getNumThreads();
-    runInBackground(() -> recreateClassifier(model, device, numThreads));
+    final int generation = classifierGeneration.incrementAndGet();
+    swapRequestTimeMs = SystemClock.uptimeMillis();
+    if (device == Device.GPU) {
+      recreateInBackground(model, numThreads, generation);
+      return;
+    }
+    classifierLoader.execute(() -> loadClassifier(model, device, numThreads, generation));
+  }
+
+  /**
+   * Builds and warms up a classifier on the loader thread, then swaps it in on the inference
+   * thread. {@link Device#AUTO} is resolved here first, as probing the backends takes a while.
+   */
+  private void loadClassifier(Model model, Device device, int numThreads, int generation) {
+    if (generation != classifierGeneration.get()) {
+      // Superseded by a newer configuration before it was even started.
+      return;
+    }
+    if (device == Device.AUTO) {
+      final DelegateSelector.Selection selection =
+          DelegateSelector.select(this, model, numThreads);
+      device = selection.device;
+      numThreads = selection.numThreads;
+      if (device == Device.GPU) {
+        recreateInBackground(model, numThreads, generation);
+        return;
+      }
+    }
+    final Classifier newClassifier = createClassifier(model, device, numThreads);
+    if (newClassifier == null) {
+      return;
+    }
+    warmUp(newClassifier);
+    if (!runInBackground(() -> swapClassifier(newClassifier, generation))) {
+      // Paused or destroyed while loading, nothing will ever swap it in.
+      newClassifier.close();
+    }
+  }
+
+  /** Recreates a GPU classifier on the inference thread, the GPU delegate has to run there. */
+  private void recreateInBackground(Model model, int numThreads, int generation) {
+    runInBackground(
+        () -> {
+          if (generation == classifierGeneration.get()) {
+            recreateClassifier(model, Device.GPU, numThreads);
+            swapped = classifier != null;
+          }
+        });
+  }
+
+  /** Runs a few inferences on a blank frame, so that the first camera frame is not slowed down. */
+  private void warmUp(Classifier newClassifier) {
+    final long startTime = SystemClock.uptimeMillis();
+    final Bitmap blank = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+    for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+      newClassifier.recognizeImage(blank, sensorOrientation);
+    }
+    LOGGER.d("Warmed up classifier in %dms", SystemClock.uptimeMillis() - startTime);
+  }
+
+  /** Replaces the classifier, on the inference thread so that the old one is no longer in use. */
+  private void swapClassifier(Classifier newClassifier, int generation) {
+    if (generation != classifierGeneration.get()) {
+      // A newer configuration is on its way.
+      newClassifier.close();
+      return;
+    }
+    final Classifier oldClassifier = classifier;
+    classifier = newClassifier;
+    imageSizeX = newClassifier.getImageSizeX();
+    imageSizeY = newClassifier.getImageSizeY();
+    swapped = true;
+    if (oldClassifier != null) {
+      LOGGER.d("Closing classifier.");
+      oldClassifier.close();
+    }
+  }
+
+  /**
+   * Tracks the longest gap between classified frames while a configuration change is pending, and
+   * logs it with the first frame of the new classifier.
+   */
+  private void logSwapStall() {
+    final long now = SystemClock.uptimeMillis();
+    final long requestTime = swapRequestTimeMs;
+    if (requestTime >= 0 && lastFrameTimeMs >= 0) {
+      longestSwapFrameGapMs = Math.max(longestSwapFrameGapMs, now - lastFrameTimeMs);
+    }
+    lastFrameTimeMs = now;
+    if (swapped) {
+      LOGGER.i(
+          "Classifier swapped in %dms, longest frame gap %dms",
+          now - requestTime, longestSwapFrameGapMs);
+      swapped = false;
+      swapRequestTimeMs = -1;
+      longestSwapFrameGapMs = 0;
+    }
   }
 
   private void recreateClassifier(Model model, Device device, int numThreads) {
@@ -132,6 +246,18 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
       classifier.close();
       classifier = null;
     }
+    classifier = createClassifier(model, device, numThreads);
+    if (classifier == null) {
+      return;
+    }
+
+    // Updates the input image size.
+    imageSizeX = classifier.getImageSizeX();
+    imageSizeY = classifier.getImageSizeY();
+  }
+
+  /** Creates a classifier, or returns null and tells the user if it is not supported. */
+  private Classifier createClassifier(Model model, Device device, int numThreads) {
     if (device == Device.GPU
         && (model == Model.QUANTIZED_MOBILENET || model == Model.QUANTIZED_EFFICIENTNET)) {
       LOGGER.d("Not creating classifier: GPU doesn't support quantized models.");
@@ -139,23 +265,31 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
           () -> {
             Toast.makeText(this, R.string.tfe_ic_gpu_quant_error, Toast.LENGTH_LONG).show();
           });
-      return;
+      return null;
     }
     try {
       LOGGER.d(
           "Creating classifier (model=%s, device=%s, numThreads=%d)", model, device, numThreads);
-      classifier = Classifier.create(this, model, device, numThreads);
+      return Classifier.create(this, model, device, numThreads);
     } catch (IOException | IllegalArgumentException e) {
       LOGGER.e(e, "Failed to create classifier.");
       runOnUiThread(
           () -> {
             Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
           });
-      return;
+      return null;
     }
+  }
 
-    // Updates the input image size.
-    imageSizeX = classifier.getImageSizeX();
-    imageSizeY = classifier.getImageSizeY();
+  @Override
+  public synchronized void onDestroy() {
+    classifierLoader.shutdownNow();
+    // The inference thread stopped in onPause(), so the classifier is no longer in use.
+    if (classifier != null) {
+      LOGGER.d("Closing classifier.");
+      classifier.close();
+      classifier = null;
+    }
+    super.onDestroy();
   }
 }
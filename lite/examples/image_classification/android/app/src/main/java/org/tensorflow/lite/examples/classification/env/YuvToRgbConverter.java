@@ -0,0 +1,308 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import java.io.Closeable;
+import java.nio.IntBuffer;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Table driven, multi-threaded YUV to ARGB8888 converter.
+ *
+ * <p>Produces bit-identical output to {@link ImageUtils#convertYUV420SPToARGB8888} and {@link
+ * ImageUtils#convertYUV420ToARGB8888}. The per-channel products of the fixed point conversion are
+ * looked up instead of multiplied, and the frame is split into bands of rows that are converted in
+ * parallel by a small set of worker threads owned by the converter. The calling thread converts the
+ * first band itself, so a converter created with a single thread never hands work off.
+ *
+ * <p>Instances are not thread safe: a converter serves one frame at a time. Once warmed up a
+ * conversion does not allocate, as long as the same output buffer is passed in every frame.
+ */
+public final class YuvToRgbConverter implements Closeable {
+  // Same fixed point coefficients as ImageUtils.YUV2RGB, pre-multiplied for every byte value.
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GV_TABLE = new int[256];
+  private static final int[] GU_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+
+  // Channel sums are shifted down by 10 bits and then clamped to [0, 255] through this table. The
+  // sums stay well within [-2^19, 2^20) so the shifted value always lands inside the table.
+  private static final int CLAMP_OFFSET = 512;
+  private static final int[] CLAMP_TABLE = new int[CLAMP_OFFSET + 1024];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      final int y = Math.max(i - 16, 0);
+      final int c = i - 128;
+      Y_TABLE[i] = 1192 * y;
+      RV_TABLE[i] = 1634 * c;
+      GV_TABLE[i] = -833 * c;
+      GU_TABLE[i] = -400 * c;
+      BU_TABLE[i] = 2066 * c;
+    }
+    for (int i = 0; i < CLAMP_TABLE.length; ++i) {
+      CLAMP_TABLE[i] = Math.min(Math.max(i - CLAMP_OFFSET, 0), 255);
+    }
+  }
+
+  private final Band[] bands;
+  // Synchronizes the calling thread with the workers at the start and the end of every frame. The
+  // barriers also publish the frame parameters below to the workers.
+  private final CyclicBarrier startBarrier;
+  private final CyclicBarrier endBarrier;
+  private final Thread[] workers;
+  private volatile boolean closed = false;
+
+  // Parameters of the frame being converted.
+  private byte[] yData;
+  private byte[] uData;
+  private byte[] vData;
+  private int uOffset;
+  private int vOffset;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private int[] outArray;
+  private int outOffset;
+  private IntBuffer outBuffer;
+
+  /**
+   * Creates a converter.
+   *
+   * @param numThreads total number of threads taking part in a conversion, including the caller.
+   */
+  public YuvToRgbConverter(final int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("numThreads must be positive: " + numThreads);
+    }
+    bands = new Band[numThreads];
+    for (int i = 0; i < numThreads; ++i) {
+      bands[i] = new Band(i);
+    }
+    startBarrier = new CyclicBarrier(numThreads);
+    endBarrier = new CyclicBarrier(numThreads);
+    workers = new Thread[numThreads - 1];
+    for (int i = 0; i < workers.length; ++i) {
+      final Band band = bands[i + 1];
+      workers[i] = new Thread(band::loop, "yuv-to-rgb-" + (i + 1));
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /** Returns a thread count suited to the current device, leaving cores for inference. */
+  public static int defaultNumThreads() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  /** Converts an NV21 (YUV420SP) frame, as delivered by the legacy camera API. */
+  public void convertYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final int[] output) {
+    final int frameSize = width * height;
+    setSource(input, input, input, frameSize + 1, frameSize, width, height, width, width, 2);
+    setOutput(output, 0, null);
+    run();
+  }
+
+  /** Converts an NV21 (YUV420SP) frame into {@code output}, starting at its position. */
+  public void convertYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final IntBuffer output) {
+    final int frameSize = width * height;
+    setSource(input, input, input, frameSize + 1, frameSize, width, height, width, width, 2);
+    setOutput(output);
+    run();
+  }
+
+  /** Converts a YUV_420_888 frame given as three planes, as delivered by the camera2 API. */
+  public void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    setSource(yData, uData, vData, 0, 0, width, height, yRowStride, uvRowStride, uvPixelStride);
+    setOutput(out, 0, null);
+    run();
+  }
+
+  /** Converts a YUV_420_888 frame into {@code out}, starting at its position. */
+  public void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final IntBuffer out) {
+    setSource(yData, uData, vData, 0, 0, width, height, yRowStride, uvRowStride, uvPixelStride);
+    setOutput(out);
+    run();
+  }
+
+  /** Stops the worker threads. Later conversions still work, on the calling thread only. */
+  @Override
+  public void close() {
+    closed = true;
+    for (final Thread worker : workers) {
+      worker.interrupt();
+    }
+  }
+
+  private void setSource(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int uOffset,
+      final int vOffset,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    this.yData = yData;
+    this.uData = uData;
+    this.vData = vData;
+    this.uOffset = uOffset;
+    this.vOffset = vOffset;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+  }
+
+  private void setOutput(final IntBuffer out) {
+    if (out.hasArray()) {
+      setOutput(out.array(), out.arrayOffset() + out.position(), null);
+    } else {
+      setOutput(null, out.position(), out);
+    }
+  }
+
+  private void setOutput(final int[] outArray, final int outOffset, final IntBuffer outBuffer) {
+    this.outArray = outArray;
+    this.outOffset = outOffset;
+    this.outBuffer = outBuffer;
+  }
+
+  private void run() {
+    if (closed || workers.length == 0) {
+      bands[0].convertRows(0, height);
+      return;
+    }
+    try {
+      startBarrier.await();
+      bands[0].convert();
+      endBarrier.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while converting a frame", e);
+    } catch (final BrokenBarrierException e) {
+      throw new IllegalStateException("Converter was closed while converting a frame", e);
+    }
+  }
+
+  /** One horizontal band of the frame, and the scratch state needed to convert it. */
+  private final class Band {
+    private final int index;
+    // Only used when writing into a direct IntBuffer.
+    private int[] row = new int[0];
+    private IntBuffer target;
+    private IntBuffer targetView;
+
+    Band(final int index) {
+      this.index = index;
+    }
+
+    void loop() {
+      try {
+        while (!closed) {
+          startBarrier.await();
+          convert();
+          endBarrier.await();
+        }
+      } catch (final InterruptedException | BrokenBarrierException e) {
+        // Closed.
+      } finally {
+        startBarrier.reset();
+        endBarrier.reset();
+      }
+    }
+
+    void convert() {
+      // Bands start on even rows so that no two bands share a row of chroma samples.
+      final int rowsPerBand = ((height + bands.length - 1) / bands.length + 1) & ~1;
+      final int start = Math.min(index * rowsPerBand, height);
+      final int end = Math.min(start + rowsPerBand, height);
+      convertRows(start, end);
+    }
+
+    void convertRows(final int start, final int end) {
+      final byte[] yData = YuvToRgbConverter.this.yData;
+      final byte[] uData = YuvToRgbConverter.this.uData;
+      final byte[] vData = YuvToRgbConverter.this.vData;
+      final int width = YuvToRgbConverter.this.width;
+      final int uvPixelStride = YuvToRgbConverter.this.uvPixelStride;
+
+      int[] dst = outArray;
+      if (outBuffer != null) {
+        if (row.length < width) {
+          row = new int[width];
+        }
+        if (target != outBuffer) {
+          target = outBuffer;
+          targetView = outBuffer.duplicate();
+        }
+        dst = row;
+      }
+
+      for (int j = start; j < end; ++j) {
+        final int pY = yRowStride * j;
+        final int pUV = uvRowStride * (j >> 1);
+        final int pU = uOffset + pUV;
+        final int pV = vOffset + pUV;
+        int out = outBuffer != null ? 0 : outOffset + j * width;
+
+        for (int i = 0; i < width; ++i) {
+          final int uvOffset = (i >> 1) * uvPixelStride;
+          final int y = Y_TABLE[0xff & yData[pY + i]];
+          final int u = 0xff & uData[pU + uvOffset];
+          final int v = 0xff & vData[pV + uvOffset];
+
+          final int r = CLAMP_TABLE[((y + RV_TABLE[v]) >> 10) + CLAMP_OFFSET];
+          final int g = CLAMP_TABLE[((y + GV_TABLE[v] + GU_TABLE[u]) >> 10) + CLAMP_OFFSET];
+          final int b = CLAMP_TABLE[((y + BU_TABLE[u]) >> 10) + CLAMP_OFFSET];
+          dst[out++] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+
+        if (outBuffer != null) {
+          targetView.position(outOffset + j * width);
+          targetView.put(row, 0, width);
+        }
+      }
+    }
+  }
+}
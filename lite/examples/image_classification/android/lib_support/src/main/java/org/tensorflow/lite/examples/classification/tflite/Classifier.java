@@ -24,9 +24,11 @@ import android.os.SystemClock;
 import android.os.Trace;
 import android.util.Log;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -35,9 +37,8 @@ import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
 import org.tensorflow.lite.gpu.GpuDelegate;
 import org.tensorflow.lite.nnapi.NnApiDelegate;
-import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.TensorOperator;
 import org.tensorflow.lite.support.common.TensorProcessor;
+import org.tensorflow.lite.support.common.ops.NormalizeOp;
 import org.tensorflow.lite.support.image.ImageProcessor;
 import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.image.ops.ResizeOp;
@@ -63,12 +64,22 @@ public abstract class Classifier {
   public enum Device {
     CPU,
     NNAPI,
-    GPU
+    GPU,
+    /** CPU through the XNNPACK delegate. */
+    XNNPACK,
+    /** The fastest of the above for the model on this device, see {@link DelegateSelector}. */
+    AUTO
   }
 
   /** Number of results to show in the UI. */
   private static final int MAX_RESULTS = 3;
 
+  /**
+   * Whether to preprocess images with a {@link FusedPreprocessor}, in a single pass over the
+   * pixels, instead of an {@link ImageProcessor} copying the image once per op.
+   */
+  private static final boolean FUSED_PREPROCESSING = true;
+
   /** The loaded TensorFlow Lite model. */
 
   /** Image size along the x axis. */
@@ -89,29 +100,70 @@ public abstract class Classifier {
   /** Options for configuring the Interpreter. */
   private final Interpreter.Options tfliteOptions = new Interpreter.Options();
 
+  /** The shared model and labels, released on {@link #close()}. */
+  private ModelRegistry.Entry modelEntry;
+
   /** Labels corresponding to the output of the vision model. */
   private final List<String> labels;
 
   /** Input image TensorBuffer. */
   private TensorImage inputImageBuffer;
 
+  /** Single pass preprocessing, null if disabled or unsupported by the model. */
+  private FusedPreprocessor fusedPreprocessor;
+
+  /** Image processors by source image size and rotation, see {@link #getImageProcessor}. */
+  private final Map<Long, ImageProcessor> imageProcessors = new HashMap<>();
+
+  /** The last used image processor and its key, to skip the map lookup in the common case. */
+  private ImageProcessor lastImageProcessor;
+
+  private long lastImageProcessorKey = -1;
+
   /** Output probability TensorBuffer. */
   private final TensorBuffer outputProbabilityBuffer;
 
   /** Processer to apply post processing of the output probability. */
   private final TensorProcessor probabilityProcessor;
 
+  /** Shape and type of the output probability of a single image. */
+  private final int[] probabilityShape;
+
+  private final DataType probabilityDataType;
+
+  /** Number of images the interpreter tensors are currently sized for, or 0 if unknown. */
+  private int batchSize = 1;
+
+  /** Input of {@link #recognizeImages}, holding every image of the batch back to back. */
+  private ByteBuffer batchInputBuffer;
+
+  /** Output probabilities of {@link #recognizeImages}, one row per image. */
+  private TensorBuffer batchOutputBuffer;
+
+  /** Label indices and raw scores of the best results of the last image. */
+  private final TopKSelector topK = new TopKSelector(MAX_RESULTS);
+
+  /** Set once resizing the input failed, e.g. with a delegate that does not support it. */
+  private boolean batchingUnsupported = false;
+
   /**
    * Creates a classifier with the provided configuration.
    *
    * @param activity The current Activity.
    * @param model The model to use for classification.
-   * @param device The device to use for classification.
-   * @param numThreads The number of threads to use for classification.
+   * @param device The device to use for classification. {@link Device#AUTO} benchmarks the
+   *     devices the first time a model is used, which takes a few seconds.
+   * @param numThreads The number of threads to use for classification. With {@link Device#AUTO},
+   *     the most threads to try, or -1 for the number of cores.
    * @return A classifier with the desired configuration.
    */
   public static Classifier create(Activity activity, Model model, Device device, int numThreads)
       throws IOException {
+    if (device == Device.AUTO) {
+      DelegateSelector.Selection selection = DelegateSelector.select(activity, model, numThreads);
+      device = selection.device;
+      numThreads = selection.numThreads;
+    }
     if (model == Model.QUANTIZED_MOBILENET) {
       return new ClassifierQuantizedMobileNet(activity, device, numThreads);
     } else if (model == Model.FLOAT_MOBILENET) {
@@ -197,7 +249,6 @@ public abstract class Classifier {
 
   /** Initializes a {@code Classifier}. */
   protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
-    MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(activity, getModelPath());
     switch (device) {
       case NNAPI:
         nnApiDelegate = new NnApiDelegate();
@@ -207,34 +258,50 @@ public abstract class Classifier {
         gpuDelegate = new GpuDelegate();
         tfliteOptions.addDelegate(gpuDelegate);
         break;
+      case XNNPACK:
+        tfliteOptions.setUseXNNPACK(true);
+        break;
       case CPU:
         break;
+      case AUTO:
+        throw new IllegalArgumentException("Device.AUTO is only supported by Classifier.create()");
     }
     tfliteOptions.setNumThreads(numThreads);
-    tflite = new Interpreter(tfliteModel, tfliteOptions);
-
-    // Loads labels out from the label file.
-    labels = FileUtil.loadLabels(activity, getLabelPath());
-
-    // Reads type and shape of input and output tensors, respectively.
-    int imageTensorIndex = 0;
-    int[] imageShape = tflite.getInputTensor(imageTensorIndex).shape(); // {1, height, width, 3}
-    imageSizeY = imageShape[1];
-    imageSizeX = imageShape[2];
-    DataType imageDataType = tflite.getInputTensor(imageTensorIndex).dataType();
-    int probabilityTensorIndex = 0;
-    int[] probabilityShape =
-        tflite.getOutputTensor(probabilityTensorIndex).shape(); // {1, NUM_CLASSES}
-    DataType probabilityDataType = tflite.getOutputTensor(probabilityTensorIndex).dataType();
-
-    // Creates the input tensor.
-    inputImageBuffer = new TensorImage(imageDataType);
-
-    // Creates the output tensor and its processor.
-    outputProbabilityBuffer = TensorBuffer.createFixedSize(probabilityShape, probabilityDataType);
-
-    // Creates the post processor for the output probability.
-    probabilityProcessor = new TensorProcessor.Builder().add(getPostprocessNormalizeOp()).build();
+    try {
+      modelEntry = ModelRegistry.acquire(activity, getModelPath(), getLabelPath());
+      tflite = new Interpreter(modelEntry.getModel(), tfliteOptions);
+
+      // The labels are parsed once per process, by the registry.
+      labels = modelEntry.getLabels();
+
+      // Reads type and shape of input and output tensors, respectively.
+      int imageTensorIndex = 0;
+      int[] imageShape = tflite.getInputTensor(imageTensorIndex).shape(); // {1, height, width, 3}
+      imageSizeY = imageShape[1];
+      imageSizeX = imageShape[2];
+      DataType imageDataType = tflite.getInputTensor(imageTensorIndex).dataType();
+      int probabilityTensorIndex = 0;
+      probabilityShape = tflite.getOutputTensor(probabilityTensorIndex).shape(); // {1, NUM_CLASSES}
+      probabilityDataType = tflite.getOutputTensor(probabilityTensorIndex).dataType();
+
+      // Creates the input tensor.
+      inputImageBuffer = new TensorImage(imageDataType);
+      setFusedPreprocessing(FUSED_PREPROCESSING);
+
+      // Creates the output tensor and its processor.
+      outputProbabilityBuffer =
+          TensorBuffer.createFixedSize(probabilityShape, probabilityDataType);
+
+      // Creates the post processor for the output probability.
+      probabilityProcessor =
+          new TensorProcessor.Builder()
+              .add(new NormalizeOp(getPostprocessMean(), getPostprocessStd()))
+              .build();
+    } catch (IOException | RuntimeException e) {
+      // Releases the delegates, the interpreter and the model.
+      close();
+      throw e;
+    }
 
     Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
   }
@@ -244,9 +311,11 @@ public abstract class Classifier {
     // Logs this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
+    resizeBatch(1);
+
     Trace.beginSection("loadImage");
     long startTimeForLoadImage = SystemClock.uptimeMillis();
-    inputImageBuffer = loadImage(bitmap, sensorOrientation);
+    ByteBuffer input = loadImage(bitmap, sensorOrientation);
     long endTimeForLoadImage = SystemClock.uptimeMillis();
     Trace.endSection();
     Log.v(TAG, "Timecost to load the image: " + (endTimeForLoadImage - startTimeForLoadImage));
@@ -254,19 +323,111 @@ public abstract class Classifier {
     // Runs the inference call.
     Trace.beginSection("runInference");
     long startTimeForReference = SystemClock.uptimeMillis();
-    tflite.run(inputImageBuffer.getBuffer(), outputProbabilityBuffer.getBuffer().rewind());
+    tflite.run(input, outputProbabilityBuffer.getBuffer().rewind());
     long endTimeForReference = SystemClock.uptimeMillis();
     Trace.endSection();
     Log.v(TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
 
-    // Gets the map of label and probability.
-    Map<String, Float> labeledProbability =
-        new TensorLabel(labels, probabilityProcessor.process(outputProbabilityBuffer))
-            .getMapWithFloatValue();
+    // Gets top-k results.
+    List<Recognition> recognitions = getTopKResults(outputProbabilityBuffer);
     Trace.endSection();
+    return recognitions;
+  }
 
-    // Gets top-k results.
-    return getTopKProbability(labeledProbability);
+  /**
+   * Runs inference on several images with a single interpreter invocation and returns the
+   * classification results of each, in order.
+   *
+   * <p>The input tensor is resized to the number of images, which costs a tensor reallocation
+   * whenever the batch size changes, so callers should keep it constant. If the interpreter cannot
+   * be resized, e.g. with some delegates, the images are classified one at a time.
+   */
+  public List<List<Recognition>> recognizeImages(
+      final List<Bitmap> bitmaps, int sensorOrientation) {
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    if (bitmaps.size() <= 1 || batchingUnsupported) {
+      for (Bitmap bitmap : bitmaps) {
+        results.add(recognizeImage(bitmap, sensorOrientation));
+      }
+      return results;
+    }
+    try {
+      resizeBatch(bitmaps.size());
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      Log.w(TAG, "Cannot resize the input to a batch, classifying images one at a time.", e);
+      batchingUnsupported = true;
+      resizeBatch(1);
+      return recognizeImages(bitmaps, sensorOrientation);
+    }
+
+    // Logs this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImages");
+
+    Trace.beginSection("loadImages");
+    long startTimeForLoadImage = SystemClock.uptimeMillis();
+    batchInputBuffer.rewind();
+    for (Bitmap bitmap : bitmaps) {
+      ByteBuffer image = loadImage(bitmap, sensorOrientation);
+      image.rewind();
+      batchInputBuffer.put(image);
+    }
+    batchInputBuffer.rewind();
+    long endTimeForLoadImage = SystemClock.uptimeMillis();
+    Trace.endSection();
+    Log.v(TAG, "Timecost to load the images: " + (endTimeForLoadImage - startTimeForLoadImage));
+
+    // Runs the inference call once for the whole batch.
+    Trace.beginSection("runInference");
+    long startTimeForReference = SystemClock.uptimeMillis();
+    tflite.run(batchInputBuffer, batchOutputBuffer.getBuffer().rewind());
+    long endTimeForReference = SystemClock.uptimeMillis();
+    Trace.endSection();
+    Log.v(TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
+
+    // Splits the output into one probability buffer per image.
+    ByteBuffer batchOutput = batchOutputBuffer.getBuffer();
+    int imageOutputBytes = batchOutput.capacity() / bitmaps.size();
+    TensorBuffer imageOutput = TensorBuffer.createFixedSize(probabilityShape, probabilityDataType);
+    for (int i = 0; i < bitmaps.size(); ++i) {
+      ByteBuffer slice = batchOutput.duplicate();
+      slice.position(i * imageOutputBytes);
+      slice.limit((i + 1) * imageOutputBytes);
+      imageOutput.loadBuffer(slice.slice().order(batchOutput.order()));
+      results.add(getTopKResults(imageOutput));
+    }
+    Trace.endSection();
+    return results;
+  }
+
+  /** Resizes the interpreter tensors and the batch buffers to {@code size} images. */
+  private void resizeBatch(int size) {
+    if (size == batchSize) {
+      return;
+    }
+    Trace.beginSection("resizeBatch");
+    try {
+      // The tensor shape is unknown until allocateTensors() succeeds, so that resizing back to one
+      // image after a failure is never skipped as a no-op.
+      batchSize = 0;
+      int imageTensorIndex = 0;
+      tflite.resizeInput(imageTensorIndex, new int[] {size, imageSizeY, imageSizeX, 3});
+      tflite.allocateTensors();
+      batchSize = size;
+      if (size > 1) {
+        int imageBytes = tflite.getInputTensor(imageTensorIndex).numBytes() / size;
+        batchInputBuffer = ByteBuffer.allocateDirect(size * imageBytes);
+        batchInputBuffer.order(ByteOrder.nativeOrder());
+        int probabilityTensorIndex = 0;
+        batchOutputBuffer =
+            TensorBuffer.createFixedSize(
+                tflite.getOutputTensor(probabilityTensorIndex).shape(), probabilityDataType);
+      } else {
+        batchInputBuffer = null;
+        batchOutputBuffer = null;
+      }
+    } finally {
+      Trace.endSection();
+    }
   }
 
   /** Closes the interpreter and model to release resources. */
@@ -283,6 +444,10 @@ public abstract class Classifier {
       nnApiDelegate.close();
       nnApiDelegate = null;
     }
+    if (modelEntry != null) {
+      ModelRegistry.release(modelEntry);
+      modelEntry = null;
+    }
   }
 
   /** Get the image size along the x axis. */
@@ -295,26 +460,96 @@ public abstract class Classifier {
     return imageSizeY;
   }
 
-  /** Loads input image, and applies preprocessing. */
-  private TensorImage loadImage(final Bitmap bitmap, int sensorOrientation) {
+  /**
+   * Preprocesses images with a {@link FusedPreprocessor} if {@code enabled} and the model supports
+   * it, or with an {@link ImageProcessor} otherwise. Defaults to {@link #FUSED_PREPROCESSING}, the
+   * benchmarks switch it to compare both.
+   *
+   * @return whether the fused preprocessing is used
+   */
+  boolean setFusedPreprocessing(boolean enabled) {
+    DataType imageDataType = tflite.getInputTensor(0).dataType();
+    if (enabled
+        && FusedPreprocessor.isSupported(imageDataType, getPreprocessMean(), getPreprocessStd())) {
+      fusedPreprocessor =
+          new FusedPreprocessor(
+              imageSizeX, imageSizeY, imageDataType, getPreprocessMean(), getPreprocessStd());
+    } else {
+      fusedPreprocessor = null;
+    }
+    return fusedPreprocessor != null;
+  }
+
+  /** Loads input image, applies preprocessing, and returns the model input. */
+  ByteBuffer loadImage(final Bitmap bitmap, int sensorOrientation) {
+    int numRotation = sensorOrientation / 90;
+    if (fusedPreprocessor != null) {
+      return fusedPreprocessor.process(bitmap, numRotation);
+    }
+
     // Loads bitmap into a TensorImage.
     inputImageBuffer.load(bitmap);
+    inputImageBuffer =
+        getImageProcessor(bitmap.getWidth(), bitmap.getHeight(), numRotation)
+            .process(inputImageBuffer);
+    return inputImageBuffer.getBuffer();
+  }
 
-    // Creates processor for the TensorImage.
-    int cropSize = min(bitmap.getWidth(), bitmap.getHeight());
-    int numRotation = sensorOrientation / 90;
-    // TODO(b/143564309): Fuse ops inside ImageProcessor.
-    ImageProcessor imageProcessor =
-        new ImageProcessor.Builder()
-            .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
-            // TODO(b/169379396): investigate the impact of the resize algorithm on accuracy.
-            // To get the same inference results as lib_task_api, which is built on top of the Task
-            // Library, use ResizeMethod.BILINEAR.
-            .add(new ResizeOp(imageSizeX, imageSizeY, ResizeMethod.NEAREST_NEIGHBOR))
-            .add(new Rot90Op(numRotation))
-            .add(getPreprocessNormalizeOp())
-            .build();
-    return imageProcessor.process(inputImageBuffer);
+  /**
+   * Gets the processor for images of the given size and rotation, creating it on first use. The
+   * processor only depends on these, so frames of a camera stream all share the same one.
+   */
+  private ImageProcessor getImageProcessor(int width, int height, int numRotation) {
+    long key = ((long) width << 32) | ((long) height << 2) | (numRotation & 3);
+    if (key == lastImageProcessorKey) {
+      return lastImageProcessor;
+    }
+    ImageProcessor imageProcessor = imageProcessors.get(key);
+    if (imageProcessor == null) {
+      // Creates processor for the TensorImage.
+      int cropSize = min(width, height);
+      imageProcessor =
+          new ImageProcessor.Builder()
+              .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
+              // TODO(b/169379396): investigate the impact of the resize algorithm on accuracy.
+              // To get the same inference results as lib_task_api, which is built on top of the
+              // Task Library, use ResizeMethod.BILINEAR.
+              .add(new ResizeOp(imageSizeX, imageSizeY, ResizeMethod.NEAREST_NEIGHBOR))
+              .add(new Rot90Op(numRotation))
+              .add(new NormalizeOp(getPreprocessMean(), getPreprocessStd()))
+              .build();
+      imageProcessors.put(key, imageProcessor);
+    }
+    lastImageProcessorKey = key;
+    lastImageProcessor = imageProcessor;
+    return imageProcessor;
+  }
+
+  /**
+   * Gets the top-k results out of the output probabilities of one image.
+   *
+   * <p>Float and quantized outputs are scanned in place, and only the {@code MAX_RESULTS} winners
+   * are dequantized and turned into {@link Recognition}s. Other output types go through a {@link
+   * TensorLabel} map of every label.
+   */
+  private List<Recognition> getTopKResults(TensorBuffer probabilities) {
+    if (probabilityDataType != DataType.FLOAT32 && probabilityDataType != DataType.UINT8) {
+      Map<String, Float> labeledProbability =
+          new TensorLabel(labels, probabilityProcessor.process(probabilities))
+              .getMapWithFloatValue();
+      return getTopKProbability(labeledProbability);
+    }
+
+    int numClasses = probabilityShape[probabilityShape.length - 1];
+    boolean quantized = probabilityDataType == DataType.UINT8;
+    int count = topK.select(probabilities.getBuffer(), numClasses, quantized);
+    final ArrayList<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      String label = labels.get(topK.getIndex(i));
+      float confidence = (topK.getScore(i) - getPostprocessMean()) / getPostprocessStd();
+      recognitions.add(new Recognition("" + label, label, confidence, null));
+    }
+    return recognitions;
   }
 
   /** Gets the top-k results. */
@@ -349,16 +584,22 @@ public abstract class Classifier {
   /** Gets the name of the label file stored in Assets. */
   protected abstract String getLabelPath();
 
-  /** Gets the TensorOperator to nomalize the input image in preprocessing. */
-  protected abstract TensorOperator getPreprocessNormalizeOp();
+  /** Gets the mean to normalize the input image in preprocessing. */
+  protected abstract float getPreprocessMean();
+
+  /** Gets the standard deviation to normalize the input image in preprocessing. */
+  protected abstract float getPreprocessStd();
 
   /**
-   * Gets the TensorOperator to dequantize the output probability in post processing.
+   * Gets the mean to dequantize the output probability in post processing.
    *
    * <p>For quantized model, we need de-quantize the prediction with NormalizeOp (as they are all
    * essentially linear transformation). For float model, de-quantize is not required. But to
    * uniform the API, de-quantize is added to float model too. Mean and std are set to 0.0f and
    * 1.0f, respectively.
    */
-  protected abstract TensorOperator getPostprocessNormalizeOp();
+  protected abstract float getPostprocessMean();
+
+  /** Gets the standard deviation to dequantize the output probability, see above. */
+  protected abstract float getPostprocessStd();
 }
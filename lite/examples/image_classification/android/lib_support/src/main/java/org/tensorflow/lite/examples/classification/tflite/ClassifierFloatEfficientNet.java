@@ -18,8 +18,6 @@ package org.tensorflow.lite.examples.classification.tflite;
 import android.app.Activity;
 import java.io.IOException;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
-import org.tensorflow.lite.support.common.TensorOperator;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
 
 /** This TensorFlowLite classifier works with the float EfficientNet model. */
 public class ClassifierFloatEfficientNet extends Classifier {
@@ -59,12 +57,22 @@ public class ClassifierFloatEfficientNet extends Classifier {
   }
 
   @Override
-  protected TensorOperator getPreprocessNormalizeOp() {
-    return new NormalizeOp(IMAGE_MEAN, IMAGE_STD);
+  protected float getPreprocessMean() {
+    return IMAGE_MEAN;
   }
 
   @Override
-  protected TensorOperator getPostprocessNormalizeOp() {
-    return new NormalizeOp(PROBABILITY_MEAN, PROBABILITY_STD);
+  protected float getPreprocessStd() {
+    return IMAGE_STD;
+  }
+
+  @Override
+  protected float getPostprocessMean() {
+    return PROBABILITY_MEAN;
+  }
+
+  @Override
+  protected float getPostprocessStd() {
+    return PROBABILITY_STD;
   }
 }
@@ -18,8 +18,6 @@ package org.tensorflow.lite.examples.classification.tflite;
 import android.app.Activity;
 import java.io.IOException;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
-import org.tensorflow.lite.support.common.TensorOperator;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
 
 /** This TensorFlow Lite classifier works with the quantized MobileNet model. */
 public class ClassifierQuantizedMobileNet extends Classifier {
@@ -61,12 +59,22 @@ public class ClassifierQuantizedMobileNet extends Classifier {
   }
 
   @Override
-  protected TensorOperator getPreprocessNormalizeOp() {
-    return new NormalizeOp(IMAGE_MEAN, IMAGE_STD);
+  protected float getPreprocessMean() {
+    return IMAGE_MEAN;
   }
 
   @Override
-  protected TensorOperator getPostprocessNormalizeOp() {
-    return new NormalizeOp(PROBABILITY_MEAN, PROBABILITY_STD);
+  protected float getPreprocessStd() {
+    return IMAGE_STD;
+  }
+
+  @Override
+  protected float getPostprocessMean() {
+    return PROBABILITY_MEAN;
+  }
+
+  @Override
+  protected float getPostprocessStd() {
+    return PROBABILITY_STD;
   }
 }
@@ -0,0 +1,189 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
+import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
+
+/**
+ * Resolves {@link Device#AUTO} to the fastest backend for a model on this device.
+ *
+ * <p>On first use, every candidate (CPU with 1 to N threads, XNNPACK, NNAPI, and GPU for float
+ * models) classifies a few synthetic frames, and the one with the lowest median latency wins. The
+ * choice is persisted per device build and model in a small SharedPreferences file, so later
+ * launches reuse it without probing again.
+ *
+ * <p>Probing takes seconds, so call it off the UI and inference threads.
+ */
+public final class DelegateSelector {
+  private static final String TAG = "DelegateSelector";
+
+  /** SharedPreferences file holding the selections. */
+  private static final String PREFERENCES_NAME = "tfe_ic_delegate_selection";
+
+  /** Inferences run before timing, to let delegates compile and caches warm up. */
+  private static final int NUM_WARMUP_RUNS = 2;
+
+  /** Timed inferences per candidate. */
+  private static final int NUM_TIMED_RUNS = 5;
+
+  /** Upper bound of the CPU threads tried when no thread count is given. */
+  private static final int MAX_THREADS = 8;
+
+  /** A backend configuration. */
+  public static final class Selection {
+    public final Device device;
+    public final int numThreads;
+
+    Selection(Device device, int numThreads) {
+      this.device = device;
+      this.numThreads = numThreads;
+    }
+
+    @Override
+    public String toString() {
+      return device + ":" + numThreads;
+    }
+
+    /** Parses {@link #toString()}, returns null if {@code value} is not a valid selection. */
+    static Selection parse(String value) {
+      if (value == null) {
+        return null;
+      }
+      int separator = value.indexOf(':');
+      if (separator < 0) {
+        return null;
+      }
+      try {
+        Device device = Device.valueOf(value.substring(0, separator));
+        int numThreads = Integer.parseInt(value.substring(separator + 1));
+        return device == Device.AUTO ? null : new Selection(device, numThreads);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+  }
+
+  private DelegateSelector() {}
+
+  /**
+   * Returns the fastest backend for {@code model}, from the cache or by benchmarking the
+   * candidates.
+   *
+   * @param maxThreads the most CPU threads to try, or -1 for the number of cores
+   */
+  public static Selection select(Activity activity, Model model, int maxThreads) {
+    if (maxThreads <= 0) {
+      maxThreads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+    }
+    SharedPreferences preferences =
+        activity.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    // The fingerprint changes with OS updates, which may bring new drivers.
+    String key = model + "/" + maxThreads + "/" + Build.FINGERPRINT;
+    Selection selection = Selection.parse(preferences.getString(key, null));
+    if (selection != null) {
+      Log.d(TAG, "Using cached selection " + selection + " for " + model);
+      return selection;
+    }
+
+    selection = benchmark(activity, model, maxThreads);
+    preferences.edit().putString(key, selection.toString()).apply();
+    return selection;
+  }
+
+  private static Selection benchmark(Activity activity, Model model, int maxThreads) {
+    Trace.beginSection("selectDelegate");
+    List<Selection> candidates = new ArrayList<>();
+    for (int numThreads = 1; numThreads <= maxThreads; ++numThreads) {
+      candidates.add(new Selection(Device.CPU, numThreads));
+    }
+    candidates.add(new Selection(Device.XNNPACK, maxThreads));
+    candidates.add(new Selection(Device.NNAPI, 1));
+    if (model == Model.FLOAT_MOBILENET || model == Model.FLOAT_EFFICIENTNET) {
+      candidates.add(new Selection(Device.GPU, 1));
+    }
+
+    Selection best = null;
+    long bestNs = Long.MAX_VALUE;
+    Bitmap frame = null;
+    for (Selection candidate : candidates) {
+      Classifier classifier = null;
+      try {
+        classifier = Classifier.create(activity, model, candidate.device, candidate.numThreads);
+        if (frame == null) {
+          frame = createSyntheticFrame(classifier.getImageSizeX(), classifier.getImageSizeY());
+        }
+        long medianNs = timeInference(classifier, frame);
+        Log.i(TAG, String.format("Candidate %s for %s: %.1fms", candidate, model, medianNs / 1e6));
+        if (medianNs < bestNs) {
+          bestNs = medianNs;
+          best = candidate;
+        }
+      } catch (IOException | RuntimeException e) {
+        // The delegate is not available on this device, or does not support the model.
+        Log.w(TAG, "Candidate " + candidate + " failed for " + model, e);
+      } finally {
+        if (classifier != null) {
+          classifier.close();
+        }
+      }
+    }
+    if (best == null) {
+      best = new Selection(Device.CPU, maxThreads);
+    }
+    Log.i(TAG, "Selected " + best + " for " + model);
+    Trace.endSection();
+    return best;
+  }
+
+  /** Returns the median latency, in ns, of {@code NUM_TIMED_RUNS} inferences after warming up. */
+  private static long timeInference(Classifier classifier, Bitmap frame) {
+    for (int i = 0; i < NUM_WARMUP_RUNS; ++i) {
+      classifier.recognizeImage(frame, 0);
+    }
+    long[] times = new long[NUM_TIMED_RUNS];
+    for (int i = 0; i < NUM_TIMED_RUNS; ++i) {
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      classifier.recognizeImage(frame, 0);
+      times[i] = SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+    Arrays.sort(times);
+    return times[NUM_TIMED_RUNS / 2];
+  }
+
+  /** Creates a noise image, so that no delegate can take shortcuts on uniform input. */
+  private static Bitmap createSyntheticFrame(int width, int height) {
+    int[] pixels = new int[width * height];
+    Random random = new Random(0);
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+  }
+}
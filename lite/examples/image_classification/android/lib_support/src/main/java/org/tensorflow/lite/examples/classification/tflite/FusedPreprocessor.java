@@ -0,0 +1,167 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static java.lang.Math.min;
+
+import android.graphics.Bitmap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.tensorflow.lite.DataType;
+
+/**
+ * Center crop, nearest neighbor resize, counter-clockwise rotation by multiples of 90 degrees and
+ * normalization of a Bitmap in a single pass, equivalent to an {@code ImageProcessor} chaining
+ * {@code ResizeWithCropOrPadOp}, {@code ResizeOp}, {@code Rot90Op} and {@code NormalizeOp}.
+ *
+ * <p>The pixels of the crop are read out of the Bitmap once, and every model input value is looked
+ * up from them through a table mapping output pixels to source pixels, rebuilt only when the
+ * Bitmap size or the rotation changes. Normalization goes through a 256 entry table as well. No
+ * intermediate image is allocated.
+ */
+final class FusedPreprocessor {
+  private final int outputWidth;
+  private final int outputHeight;
+  private final boolean quantized;
+  private final float[] normalized = new float[256];
+  private final ByteBuffer buffer;
+  private final FloatBuffer floatBuffer;
+  private final float[] floatValues;
+  private final byte[] byteValues;
+
+  // Source pixel of every output pixel, as an index into the crop.
+  private final int[] sourceIndex;
+  private int[] pixels = new int[0];
+  private int sourceWidth = -1;
+  private int sourceHeight = -1;
+  private int rotation = -1;
+
+  /** Whether an input of this type, normalized with {@code mean} and {@code std}, is supported. */
+  static boolean isSupported(final DataType dataType, final float mean, final float std) {
+    return dataType == DataType.FLOAT32
+        || (dataType == DataType.UINT8 && mean == 0.0f && std == 1.0f);
+  }
+
+  FusedPreprocessor(
+      final int outputWidth,
+      final int outputHeight,
+      final DataType dataType,
+      final float mean,
+      final float std) {
+    if (!isSupported(dataType, mean, std)) {
+      throw new IllegalArgumentException("Unsupported input " + dataType);
+    }
+    this.outputWidth = outputWidth;
+    this.outputHeight = outputHeight;
+    quantized = dataType == DataType.UINT8;
+    for (int i = 0; i < 256; ++i) {
+      normalized[i] = (i - mean) / std;
+    }
+    final int numValues = outputWidth * outputHeight * 3;
+    buffer = ByteBuffer.allocateDirect(numValues * (quantized ? 1 : 4));
+    buffer.order(ByteOrder.nativeOrder());
+    floatBuffer = quantized ? null : buffer.asFloatBuffer();
+    floatValues = quantized ? null : new float[numValues];
+    byteValues = quantized ? new byte[numValues] : null;
+    sourceIndex = new int[outputWidth * outputHeight];
+  }
+
+  /**
+   * Preprocesses {@code bitmap} rotated by {@code numRotation} times 90 degrees counter-clockwise,
+   * and returns the model input, rewound. The buffer is reused by the next call.
+   */
+  ByteBuffer process(final Bitmap bitmap, final int numRotation) {
+    final int width = bitmap.getWidth();
+    final int height = bitmap.getHeight();
+    final int cropSize = min(width, height);
+    final int rotation = ((numRotation % 4) + 4) % 4;
+    if (width != sourceWidth || height != sourceHeight || rotation != this.rotation) {
+      buildSourceIndex(cropSize, rotation);
+      sourceWidth = width;
+      sourceHeight = height;
+      this.rotation = rotation;
+    }
+    if (pixels.length < cropSize * cropSize) {
+      pixels = new int[cropSize * cropSize];
+    }
+    bitmap.getPixels(
+        pixels, 0, cropSize, (width - cropSize) / 2, (height - cropSize) / 2, cropSize, cropSize);
+
+    final int numPixels = outputWidth * outputHeight;
+    if (quantized) {
+      for (int i = 0, j = 0; i < numPixels; ++i, j += 3) {
+        final int pixel = pixels[sourceIndex[i]];
+        byteValues[j] = (byte) (pixel >> 16);
+        byteValues[j + 1] = (byte) (pixel >> 8);
+        byteValues[j + 2] = (byte) pixel;
+      }
+      buffer.rewind();
+      buffer.put(byteValues);
+    } else {
+      for (int i = 0, j = 0; i < numPixels; ++i, j += 3) {
+        final int pixel = pixels[sourceIndex[i]];
+        floatValues[j] = normalized[(pixel >> 16) & 0xff];
+        floatValues[j + 1] = normalized[(pixel >> 8) & 0xff];
+        floatValues[j + 2] = normalized[pixel & 0xff];
+      }
+      floatBuffer.rewind();
+      floatBuffer.put(floatValues);
+    }
+    buffer.rewind();
+    return buffer;
+  }
+
+  /**
+   * Maps every output pixel back through the rotation, then the resize, to a pixel of the {@code
+   * cropSize} square crop.
+   */
+  private void buildSourceIndex(final int cropSize, final int rotation) {
+    // Size of the resized image, before the rotation.
+    final int resizedWidth = rotation % 2 == 0 ? outputWidth : outputHeight;
+    final int resizedHeight = rotation % 2 == 0 ? outputHeight : outputWidth;
+    for (int y = 0; y < outputHeight; ++y) {
+      for (int x = 0; x < outputWidth; ++x) {
+        final int resizedX;
+        final int resizedY;
+        switch (rotation) {
+          case 1:
+            resizedX = resizedWidth - 1 - y;
+            resizedY = x;
+            break;
+          case 2:
+            resizedX = resizedWidth - 1 - x;
+            resizedY = resizedHeight - 1 - y;
+            break;
+          case 3:
+            resizedX = y;
+            resizedY = resizedHeight - 1 - x;
+            break;
+          default:
+            resizedX = x;
+            resizedY = y;
+            break;
+        }
+        // Nearest neighbor, sampling at the pixel centers.
+        final int sourceX =
+            min(cropSize - 1, (int) ((resizedX + 0.5f) * cropSize / resizedWidth));
+        final int sourceY =
+            min(cropSize - 1, (int) ((resizedY + 0.5f) * cropSize / resizedHeight));
+        sourceIndex[y * outputWidth + x] = sourceY * cropSize + sourceX;
+      }
+    }
+  }
+}
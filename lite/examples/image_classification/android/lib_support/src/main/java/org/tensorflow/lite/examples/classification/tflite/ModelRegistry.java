@@ -0,0 +1,115 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.support.common.FileUtil;
+
+/**
+ * Process-wide cache of the models loaded from the assets, so that recreating a classifier, e.g.
+ * for another device or thread count, only costs the interpreter construction.
+ *
+ * <p>An entry holds the memory-mapped model and its parsed labels, and is reference counted by
+ * {@link #acquire} and {@link #release}. Interpreters only read the model, so a single mapping is
+ * shared by all of them. Unused entries stay cached, the least recently released first to go once
+ * there are more than {@link #MAX_UNUSED_ENTRIES}. Mappings cannot be unmapped explicitly, evicted
+ * ones are released by the garbage collector.
+ */
+public final class ModelRegistry {
+  private static final String TAG = "ModelRegistry";
+
+  /** Unused models kept mapped, for switching back and forth between models. */
+  private static final int MAX_UNUSED_ENTRIES = 2;
+
+  /** A loaded model. */
+  public static final class Entry {
+    private final String modelPath;
+    private final MappedByteBuffer model;
+    private final List<String> labels;
+    private int references = 0;
+
+    private Entry(String modelPath, MappedByteBuffer model, List<String> labels) {
+      this.modelPath = modelPath;
+      this.model = model;
+      this.labels = labels;
+    }
+
+    /** The memory-mapped model, shared, do not modify. */
+    public MappedByteBuffer getModel() {
+      return model;
+    }
+
+    /** The labels of the model outputs, unmodifiable. */
+    public List<String> getLabels() {
+      return labels;
+    }
+  }
+
+  private static final Map<String, Entry> entries = new HashMap<>();
+
+  /** Unused entries, least recently released first. */
+  private static final LinkedHashMap<String, Entry> unusedEntries = new LinkedHashMap<>();
+
+  private ModelRegistry() {}
+
+  /**
+   * Returns the model at {@code modelPath} in the assets with the labels at {@code labelPath},
+   * loading them if needed. Every call must be matched by a {@link #release}.
+   */
+  public static synchronized Entry acquire(Context context, String modelPath, String labelPath)
+      throws IOException {
+    Entry entry = entries.get(modelPath);
+    if (entry == null) {
+      long startTime = System.nanoTime();
+      MappedByteBuffer model = FileUtil.loadMappedFile(context, modelPath);
+      List<String> labels = Collections.unmodifiableList(FileUtil.loadLabels(context, labelPath));
+      entry = new Entry(modelPath, model, labels);
+      entries.put(modelPath, entry);
+      Log.d(TAG, "Loaded " + modelPath + " in " + (System.nanoTime() - startTime) / 1000 + "us");
+    }
+    if (entry.references++ == 0) {
+      unusedEntries.remove(modelPath);
+    }
+    return entry;
+  }
+
+  /** Releases an entry returned by {@link #acquire}. */
+  public static synchronized void release(Entry entry) {
+    if (entry.references <= 0) {
+      throw new IllegalStateException(entry.modelPath + " released more often than acquired");
+    }
+    if (--entry.references > 0) {
+      return;
+    }
+    unusedEntries.put(entry.modelPath, entry);
+    Iterator<Entry> it = unusedEntries.values().iterator();
+    while (unusedEntries.size() > MAX_UNUSED_ENTRIES) {
+      Entry evicted = it.next();
+      it.remove();
+      entries.remove(evicted.modelPath);
+      Log.d(TAG, "Evicted " + evicted.modelPath);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the k highest raw values of a float or quantized output buffer, without dequantizing or
+ * labeling the others.
+ *
+ * <p>The candidates are kept sorted in fixed size arrays, so most values are rejected by a single
+ * comparison with the lowest candidate. Quantized values are compared as is, since the
+ * dequantization is increasing. Of equal values, the one of the lowest index comes first.
+ */
+final class TopKSelector {
+  private final int[] indices;
+  private final float[] scores;
+
+  TopKSelector(final int k) {
+    indices = new int[k];
+    scores = new float[k];
+  }
+
+  /**
+   * Selects the highest of the {@code numClasses} values in {@code buffer}, read as unsigned bytes
+   * if {@code quantized} and as floats otherwise, and returns how many were selected.
+   */
+  int select(final ByteBuffer buffer, final int numClasses, final boolean quantized) {
+    final int k = indices.length;
+    int count = 0;
+    for (int i = 0; i < numClasses; ++i) {
+      final float score = quantized ? (buffer.get(i) & 0xff) : buffer.getFloat(i * 4);
+      if (count == k && !(score > scores[count - 1])) {
+        continue;
+      }
+      int j = count < k ? count++ : count - 1;
+      while (j > 0 && scores[j - 1] < score) {
+        scores[j] = scores[j - 1];
+        indices[j] = indices[j - 1];
+        --j;
+      }
+      scores[j] = score;
+      indices[j] = i;
+    }
+    return count;
+  }
+
+  /** Gets the class index of the {@code rank}-th selected value, by decreasing value. */
+  int getIndex(final int rank) {
+    return indices[rank];
+  }
+
+  /** Gets the raw {@code rank}-th selected value, still quantized for a quantized buffer. */
+  float getScore(final int rank) {
+    return scores[rank];
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+/** Checks {@link TopKSelector} against the order of a full sort of the output. */
+public final class TopKSelectorTest {
+  private static final int K = 3;
+
+  @Test
+  public void selectsTheHighestFloatsInDecreasingOrder() {
+    final TopKSelector topK = new TopKSelector(K);
+
+    assertEquals(K, topK.select(floats(0.1f, 0.5f, 0.05f, 0.9f, 0.3f, 0.7f), 6, false));
+    assertSelected(topK, new int[] {3, 5, 1}, new float[] {0.9f, 0.7f, 0.5f});
+  }
+
+  @Test
+  public void keepsTheLowestIndexOfTies() {
+    final TopKSelector topK = new TopKSelector(K);
+
+    // The tie at 0.2f is cut by k, the one at 0.5f is kept in index order.
+    assertEquals(K, topK.select(floats(0.2f, 0.5f, 0.2f, 0.5f, 0.2f, 0.1f), 6, false));
+    assertSelected(topK, new int[] {1, 3, 0}, new float[] {0.5f, 0.5f, 0.2f});
+  }
+
+  @Test
+  public void comparesQuantizedScoresAsUnsignedBytes() {
+    final TopKSelector topK = new TopKSelector(K);
+
+    // 0xff and 0x80 are negative as signed bytes, and must still beat 0x7f.
+    assertEquals(K, topK.select(bytes(0x10, 0xff, 0x7f, 0x80, 0x00), 5, true));
+    assertSelected(topK, new int[] {1, 3, 2}, new float[] {255, 128, 127});
+  }
+
+  @Test
+  public void selectsEveryLabelWhenKIsLarger() {
+    final TopKSelector topK = new TopKSelector(K);
+
+    assertEquals(2, topK.select(floats(0.25f, 0.75f), 2, false));
+    assertSelected(topK, new int[] {1, 0}, new float[] {0.75f, 0.25f});
+  }
+
+  @Test
+  public void forgetsThePreviousSelection() {
+    final TopKSelector topK = new TopKSelector(K);
+    topK.select(floats(0.9f, 0.8f, 0.7f, 0.6f), 4, false);
+
+    assertEquals(K, topK.select(floats(0.1f, 0.3f, 0.2f, 0.4f), 4, false));
+    assertSelected(topK, new int[] {3, 1, 2}, new float[] {0.4f, 0.3f, 0.2f});
+  }
+
+  private static void assertSelected(
+      final TopKSelector topK, final int[] indices, final float[] scores) {
+    for (int i = 0; i < indices.length; ++i) {
+      assertEquals(indices[i], topK.getIndex(i));
+      assertEquals(scores[i], topK.getScore(i), 0.0f);
+    }
+  }
+
+  private static ByteBuffer floats(final float... values) {
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder());
+    for (final float value : values) {
+      buffer.putFloat(value);
+    }
+    return buffer;
+  }
+
+  private static ByteBuffer bytes(final int... values) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(values.length);
+    for (final int value : values) {
+      buffer.put((byte) value);
+    }
+    return buffer;
+  }
+}
@@ -25,14 +25,12 @@ import android.os.SystemClock;
 import android.os.Trace;
 import android.util.Log;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
-import org.tensorflow.lite.support.common.FileUtil;
 import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.label.Category;
-import org.tensorflow.lite.support.metadata.MetadataExtractor;
+import org.tensorflow.lite.task.core.BaseOptions;
 import org.tensorflow.lite.task.core.vision.ImageProcessingOptions;
 import org.tensorflow.lite.task.core.vision.ImageProcessingOptions.Orientation;
 import org.tensorflow.lite.task.vision.classifier.Classifications;
@@ -55,7 +53,11 @@ public abstract class Classifier {
   public enum Device {
     CPU,
     NNAPI,
-    GPU
+    GPU,
+    /** CPU through the XNNPACK delegate. */
+    XNNPACK,
+    /** The fastest of the above for the model on this device. */
+    AUTO
   }
 
   /** Number of results to show in the UI. */
@@ -69,6 +71,9 @@ public abstract class Classifier {
   /** An instance of the driver class to run model inference with Tensorflow Lite. */
   protected final ImageClassifier imageClassifier;
 
+  /** The shared model, released on {@link #close()}. */
+  private ModelRegistry.Entry modelEntry;
+
   /**
    * Creates a classifier with the provided configuration.
    *
@@ -80,6 +85,11 @@ public abstract class Classifier {
    */
   public static Classifier create(Activity activity, Model model, Device device, int numThreads)
       throws IOException {
+    if (device == Device.AUTO) {
+      DelegateSelector.Selection selection = DelegateSelector.select(activity, model, numThreads);
+      device = selection.device;
+      numThreads = selection.numThreads;
+    }
     if (model == Model.QUANTIZED_MOBILENET) {
       return new ClassifierQuantizedMobileNet(activity, device, numThreads);
     } else if (model == Model.FLOAT_MOBILENET) {
@@ -165,23 +175,41 @@ public abstract class Classifier {
 
   /** Initializes a {@code Classifier}. */
   protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
-    if (device != Device.CPU || numThreads != 1) {
-      throw new IllegalArgumentException(
-          "Manipulating the hardware accelerators and numbers of threads is not allowed in the Task"
-              + " library currently. Only CPU + single thread is allowed.");
+    BaseOptions.Builder baseOptions = BaseOptions.builder().setNumThreads(numThreads);
+    switch (device) {
+      case NNAPI:
+        baseOptions.useNnapi();
+        break;
+      case GPU:
+        baseOptions.useGpu();
+        break;
+      case CPU:
+      case XNNPACK:
+        // The Task library runs the CPU backend through XNNPACK already.
+        break;
+      case AUTO:
+        throw new IllegalArgumentException("Device.AUTO is only supported by Classifier.create()");
     }
 
-    // Create the ImageClassifier instance.
+    // Create the ImageClassifier instance from the model mapped once per process.
+    modelEntry = ModelRegistry.acquire(activity, getModelPath());
     ImageClassifierOptions options =
-        ImageClassifierOptions.builder().setMaxResults(MAX_RESULTS).build();
-    imageClassifier = ImageClassifier.createFromFileAndOptions(activity, getModelPath(), options);
+        ImageClassifierOptions.builder()
+            .setBaseOptions(baseOptions.build())
+            .setMaxResults(MAX_RESULTS)
+            .build();
+    try {
+      imageClassifier = ImageClassifier.createFromBufferAndOptions(modelEntry.getModel(), options);
+    } catch (RuntimeException e) {
+      ModelRegistry.release(modelEntry);
+      modelEntry = null;
+      throw e;
+    }
     Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
 
-    // Get the input image size information of the underlying tflite model.
-    MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(activity, getModelPath());
-    MetadataExtractor metadataExtractor = new MetadataExtractor(tfliteModel);
-    // Image shape is in the format of {1, height, width, 3}.
-    int[] imageShape = metadataExtractor.getInputTensorShape(/*inputIndex=*/ 0);
+    // Get the input image size information of the underlying tflite model, read from its metadata
+    // by the registry. Image shape is in the format of {1, height, width, 3}.
+    int[] imageShape = modelEntry.getInputShape();
     imageSizeY = imageShape[1];
     imageSizeX = imageShape[2];
   }
@@ -224,11 +252,29 @@ public abstract class Classifier {
     return getRecognitions(results);
   }
 
+  /**
+   * Runs inference on several images and returns the classification results of each, in order.
+   *
+   * <p>The Task Library classifies a single image per call, so the images are classified in turn.
+   */
+  public List<List<Recognition>> recognizeImages(
+      final List<Bitmap> bitmaps, int sensorOrientation) {
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    for (Bitmap bitmap : bitmaps) {
+      results.add(recognizeImage(bitmap, sensorOrientation));
+    }
+    return results;
+  }
+
   /** Closes the interpreter and model to release resources. */
   public void close() {
     if (imageClassifier != null) {
       imageClassifier.close();
     }
+    if (modelEntry != null) {
+      ModelRegistry.release(modelEntry);
+      modelEntry = null;
+    }
   }
 
   /** Get the image size along the x axis. */
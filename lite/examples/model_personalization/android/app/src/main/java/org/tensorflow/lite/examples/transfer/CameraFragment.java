@@ -90,6 +90,9 @@ public class CameraFragment extends Fragment {
 
   private final LoggingBenchmark inferenceBenchmark = new LoggingBenchmark("InferenceBench");
 
+  private final YuvToRgbConverter yuvToRgbConverter =
+      new YuvToRgbConverter(YuvToRgbConverter.defaultNumThreads());
+
   /**
    * Set up a responsive preview for the view finder.
    */
@@ -350,6 +353,7 @@ public class CameraFragment extends Fragment {
     super.onDestroy();
     tlModel.close();
     tlModel = null;
+    yuvToRgbConverter.close();
   }
 
   private static Integer getDisplaySurfaceRotation(Display display) {
@@ -366,7 +370,7 @@ public class CameraFragment extends Fragment {
     }
   }
 
-  private static Bitmap yuvCameraImageToBitmap(ImageProxy imageProxy) {
+  private Bitmap yuvCameraImageToBitmap(ImageProxy imageProxy) {
     if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
       throw new IllegalArgumentException(
           "Expected a YUV420 image, but got " + imageProxy.getFormat());
@@ -386,7 +390,7 @@ public class CameraFragment extends Fragment {
       buffer.get(yuvBytes[i]);
     }
 
-    ImageUtils.convertYUV420ToARGB8888(
+    yuvToRgbConverter.convertYUV420ToARGB8888(
         yuvBytes[0],
         yuvBytes[1],
         yuvBytes[2],
@@ -36,12 +36,14 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.tflite.Detector;
 import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.PooledDetector;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
 
 /** Golden test for Object Detection Reference app. */
@@ -53,6 +55,7 @@ public class DetectorTest {
   private static final String MODEL_FILE = "detect.tflite";
   private static final String LABELS_FILE = "labelmap.txt";
   private static final Size IMAGE_SIZE = new Size(640, 480);
+  private static final int POOL_SIZE = 2;
 
   private Detector detector;
   private Bitmap croppedBitmap;
@@ -89,7 +92,37 @@ public class DetectorTest {
     canvas.drawBitmap(loadImage("table.jpg"), frameToCropTransform, null);
     final List<Recognition> results = detector.recognizeImage(croppedBitmap);
     final List<Recognition> expected = loadRecognitions("table_results.txt");
+    assertResultsMatch(results, expected);
+  }
+
+  @Test
+  public void pooledDetectionResultsShouldNotChange() throws Exception {
+    Canvas canvas = new Canvas(croppedBitmap);
+    canvas.drawBitmap(loadImage("table.jpg"), frameToCropTransform, null);
+    final List<Recognition> expected = loadRecognitions("table_results.txt");
+    final PooledDetector pool =
+        TFLiteObjectDetectionAPIModel.createPooled(
+            InstrumentationRegistry.getInstrumentation().getContext(),
+            MODEL_FILE,
+            LABELS_FILE,
+            MODEL_INPUT_SIZE,
+            IS_MODEL_QUANTIZED,
+            POOL_SIZE);
+    try {
+      // More requests than instances, so that some of them wait for a lease.
+      final List<Future<List<Recognition>>> futures = new ArrayList<>();
+      for (int i = 0; i < 2 * POOL_SIZE; ++i) {
+        futures.add(pool.recognizeImageAsync(croppedBitmap));
+      }
+      for (Future<List<Recognition>> future : futures) {
+        assertResultsMatch(future.get(), expected);
+      }
+    } finally {
+      pool.close();
+    }
+  }
 
+  private void assertResultsMatch(List<Recognition> results, List<Recognition> expected) {
     for (Recognition target : expected) {
       // Find a matching result in results
       boolean matched = false;
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Times the logging of a camera frame when its messages are filtered out: concatenated by the
+ * caller, parameterized, and behind {@link Logger#VERBOSE_LOGGING}. Nothing reaches logcat but the
+ * results, logged under {@code LoggerBenchmark}:
+ *
+ * <pre>
+ * ./gradlew :app:connectedInterpreterDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ *     org.tensorflow.lite.examples.detection.env.LoggerBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class LoggerBenchmark {
+  private static final String TAG = "LoggerBenchmark";
+
+  private static final int NUM_WARMUP_FRAMES = 20_000;
+  private static final int NUM_TIMED_FRAMES = 100_000;
+
+  @Test
+  public void benchmarkFrameLogging() {
+    final Logger logger = new Logger("Benchmark");
+    logger.setMinLogLevel(Log.INFO);
+    final Frame frame = new Frame();
+
+    for (int i = 0; i < NUM_WARMUP_FRAMES; ++i) {
+      frame.logConcatenated(logger, i);
+      frame.logParameterized(logger, i);
+      frame.logVerbose(logger, i);
+    }
+
+    long startTime = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < NUM_TIMED_FRAMES; ++i) {
+      frame.logConcatenated(logger, i);
+    }
+    final double concatenatedNs =
+        (double) (SystemClock.elapsedRealtimeNanos() - startTime) / NUM_TIMED_FRAMES;
+
+    startTime = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < NUM_TIMED_FRAMES; ++i) {
+      frame.logParameterized(logger, i);
+    }
+    final double parameterizedNs =
+        (double) (SystemClock.elapsedRealtimeNanos() - startTime) / NUM_TIMED_FRAMES;
+
+    startTime = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < NUM_TIMED_FRAMES; ++i) {
+      frame.logVerbose(logger, i);
+    }
+    final double verboseNs =
+        (double) (SystemClock.elapsedRealtimeNanos() - startTime) / NUM_TIMED_FRAMES;
+
+    Log.i(
+        TAG,
+        String.format(
+            "Logging per frame: concatenated %.1fns, parameterized %.1fns, compiled out %.1fns",
+            concatenatedNs, parameterizedNs, verboseNs));
+  }
+
+  /** The per-frame logs of the camera, tracker and detector, as they were and as they are. */
+  private static final class Frame {
+    final int previewWidth = 640;
+    final int previewHeight = 480;
+    final int[] rgbBytes = {0xff102030, 0xff405060, 0xff708090, 0xffa0b0c0};
+    final int results = 3;
+
+    /** Messages concatenated before the level is checked. */
+    void logConcatenated(final Logger logger, final long timestamp) {
+      logger.d("onFrame start");
+      logger.d("imageAvailable");
+      logger.d(
+          "rgbBytes: " + rgbBytes[0] + " " + rgbBytes[1] + " " + rgbBytes[2] + " " + rgbBytes[3]);
+      logger.d(
+          "Preparing image " + timestamp + " for detection in bg thread. prevW " + previewWidth
+              + " prevH" + previewHeight);
+      logger.d("Running detection on image " + timestamp);
+      logger.d("Processing " + results + " results from " + timestamp);
+      logger.d("onFrame end");
+    }
+
+    /** Messages only formatted if their level is emitted. */
+    void logParameterized(final Logger logger, final long timestamp) {
+      logger.d("onFrame start");
+      logger.d("imageAvailable");
+      logger.d("rgbBytes: %d %d %d %d", rgbBytes[0], rgbBytes[1], rgbBytes[2], rgbBytes[3]);
+      logger.d(
+          "Preparing image %d for detection in bg thread. prevW %d prevH %d",
+          timestamp, previewWidth, previewHeight);
+      logger.d("Running detection on image %d", timestamp);
+      logger.d("Processing %d results from %d", results, timestamp);
+      logger.d("onFrame end");
+    }
+
+    /** Verbose messages behind the compile-time switch, the way the activities log. */
+    void logVerbose(final Logger logger, final long timestamp) {
+      if (Logger.VERBOSE_LOGGING) {
+        logger.v("onFrame start");
+        logger.v("imageAvailable");
+        logger.v("rgbBytes: %d %d %d %d", rgbBytes[0], rgbBytes[1], rgbBytes[2], rgbBytes[3]);
+        logger.v(
+            "Preparing image %d for detection in bg thread. prevW %d prevH %d",
+            timestamp, previewWidth, previewHeight);
+        logger.v("Running detection on image %d", timestamp);
+        logger.v("Processing %d results from %d", results, timestamp);
+        logger.v("onFrame end");
+      }
+    }
+  }
+}
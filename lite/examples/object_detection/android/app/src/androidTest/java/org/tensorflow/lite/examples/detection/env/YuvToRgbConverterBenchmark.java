@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Times {@link YuvToRgbConverter} against the scalar loop in {@link ImageUtils} on camera sized
+ * YUV_420_888 frames. The median times are logged under {@code YuvToRgbConverterBenchmark}:
+ *
+ * <pre>
+ * ./gradlew :app:connectedInterpreterDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=\
+ *     org.tensorflow.lite.examples.detection.env.YuvToRgbConverterBenchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvToRgbConverterBenchmark {
+  private static final String TAG = "YuvToRgbConverterBenchmark";
+
+  private static final int[][] SIZES = {{640, 480}, {1280, 720}, {1920, 1080}};
+  private static final int NUM_WARMUP_RUNS = 10;
+  private static final int NUM_TIMED_RUNS = 50;
+
+  private final Random random = new Random(42);
+  private YuvToRgbConverter converter;
+
+  @Before
+  public void setUp() {
+    converter = new YuvToRgbConverter(YuvToRgbConverter.defaultNumThreads());
+  }
+
+  @After
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Test
+  public void benchmarkYuv420() {
+    for (final int[] size : SIZES) {
+      final Planes planes = new Planes(size[0], size[1]);
+      final int[] out = new int[planes.width * planes.height];
+
+      final long scalarNs = time(() -> planes.convertScalar(out));
+      final long converterNs = time(() -> planes.convert(converter, out));
+
+      Log.i(
+          TAG,
+          String.format(
+              "YUV420 %dx%d: scalar %.2fms, table+threads %.2fms (x%.1f)",
+              planes.width,
+              planes.height,
+              scalarNs / 1e6,
+              converterNs / 1e6,
+              scalarNs / (double) converterNs));
+    }
+  }
+
+  /** Returns the median time, in ns, of {@code NUM_TIMED_RUNS} runs after warming up. */
+  private static long time(final Runnable conversion) {
+    for (int i = 0; i < NUM_WARMUP_RUNS; ++i) {
+      conversion.run();
+    }
+    final long[] times = new long[NUM_TIMED_RUNS];
+    for (int i = 0; i < NUM_TIMED_RUNS; ++i) {
+      final long startTime = SystemClock.elapsedRealtimeNanos();
+      conversion.run();
+      times[i] = SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+    Arrays.sort(times);
+    return times[NUM_TIMED_RUNS / 2];
+  }
+
+  /** A YUV_420_888 frame laid out the way camera2 delivers it, with padded rows. */
+  private final class Planes {
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride = 2;
+    final byte[] y;
+    final byte[] u;
+    final byte[] v;
+
+    Planes(final int width, final int height) {
+      this.width = width;
+      this.height = height;
+      yRowStride = width + 64;
+      uvRowStride = yRowStride;
+      y = randomBytes(yRowStride * height);
+      u = randomBytes(uvRowStride * (height / 2));
+      v = randomBytes(uvRowStride * (height / 2));
+    }
+
+    void convertScalar(final int[] out) {
+      ImageUtils.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+
+    void convert(final YuvToRgbConverter converter, final int[] out) {
+      converter.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+  }
+
+  private byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.offline;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+
+/**
+ * Runs {@link VideoDetectionEngine} over a clip encoded on the device and checks the log it writes.
+ *
+ * <p>This is also how to detect a recording offline: push it where the app can read it, such as
+ * its external files directory, and pass its path as the {@code video} argument. The detections of
+ * the bundled model are logged into the same directory, and the path of the log is printed to
+ * logcat.
+ *
+ * <pre>
+ * adb shell am instrument -w -e video \
+ *     /sdcard/Android/data/org.tensorflow.lite.examples.detection/files/clip.mp4 -e class \
+ *     org.tensorflow.lite.examples.detection.offline.VideoDetectionEngineTest#detectsVideo \
+ *     org.tensorflow.lite.examples.detection.test/androidx.test.runner.AndroidJUnitRunner
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class VideoDetectionEngineTest {
+  private static final String TAG = "VideoDetectionEngineTest";
+  private static final String VIDEO_ARGUMENT = "video";
+
+  private static final int MODEL_INPUT_SIZE = 300;
+  private static final boolean IS_MODEL_QUANTIZED = true;
+  private static final String MODEL_FILE = "detect.tflite";
+  private static final String LABELS_FILE = "labelmap.txt";
+
+  private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+  private static final int CLIP_WIDTH = 320;
+  private static final int CLIP_HEIGHT = 240;
+  private static final int CLIP_FRAMES = 10;
+  private static final int FRAME_RATE = 10;
+  private static final int BIT_RATE = 500000;
+  private static final long TIMEOUT_US = 10000;
+
+  private File clip;
+  private File log;
+
+  @Before
+  public void setUp() {
+    final File cacheDir =
+        InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir();
+    clip = new File(cacheDir, "clip.mp4");
+    log = new File(cacheDir, "clip.detections");
+  }
+
+  @After
+  public void tearDown() {
+    clip.delete();
+    log.delete();
+  }
+
+  @Test
+  public void writesTheDetectionsOfEveryFrame() throws IOException {
+    encodeClip(clip);
+    final VideoDetectionEngine engine =
+        new VideoDetectionEngine(new FixedDetector(), MODEL_INPUT_SIZE);
+
+    final VideoDetectionEngine.Stats stats = engine.run(clip, log);
+
+    assertThat(stats.frames).isEqualTo(CLIP_FRAMES);
+    try (DetectionLogReader reader = new DetectionLogReader(log)) {
+      assertThat(reader.getFrameWidth()).isEqualTo(CLIP_WIDTH);
+      assertThat(reader.getFrameHeight()).isEqualTo(CLIP_HEIGHT);
+      long lastTimestampUs = -1;
+      for (int frame = 0; frame < CLIP_FRAMES; ++frame) {
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.getFrameIndex()).isEqualTo(frame);
+        assertThat(reader.getTimestampUs()).isGreaterThan(lastTimestampUs);
+        lastTimestampUs = reader.getTimestampUs();
+        assertThat(reader.size()).isEqualTo(1);
+        assertThat(reader.getLabel(0)).isEqualTo(FixedDetector.LABEL);
+        assertThat(reader.getScore(0)).isEqualTo(FixedDetector.SCORE);
+        // The 320x240 frame is padded to a 320 pixel square, 40 pixels above and below.
+        assertThat(reader.getLeft(0)).isWithin(0.01f).of(80);
+        assertThat(reader.getTop(0)).isWithin(0.01f).of(40);
+        assertThat(reader.getRight(0)).isWithin(0.01f).of(240);
+        assertThat(reader.getBottom(0)).isWithin(0.01f).of(200);
+      }
+      assertThat(reader.next()).isFalse();
+    }
+  }
+
+  @Test
+  public void detectsVideo() throws IOException {
+    final String video = InstrumentationRegistry.getArguments().getString(VIDEO_ARGUMENT);
+    assumeTrue("No " + VIDEO_ARGUMENT + " argument", video != null);
+    final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    final File output =
+        new File(context.getExternalFilesDir(null), new File(video).getName() + ".detections");
+    final Detector detector =
+        TFLiteObjectDetectionAPIModel.create(
+            context, MODEL_FILE, LABELS_FILE, MODEL_INPUT_SIZE, IS_MODEL_QUANTIZED);
+    try {
+      final VideoDetectionEngine.Stats stats =
+          new VideoDetectionEngine(detector, MODEL_INPUT_SIZE).run(new File(video), output);
+      Log.i(TAG, "Wrote " + output + ": " + stats);
+      assertThat(stats.frames).isGreaterThan(0);
+    } finally {
+      detector.close();
+    }
+  }
+
+  /** Encodes {@code CLIP_FRAMES} gray frames into an H.264 MP4 file. */
+  private static void encodeClip(final File file) throws IOException {
+    final MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, CLIP_WIDTH, CLIP_HEIGHT);
+    format.setInteger(MediaFormat.KEY_COLOR_FORMAT, CodecCapabilities.COLOR_FormatYUV420Flexible);
+    format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+    format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+    format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1);
+    final MediaCodec encoder = MediaCodec.createEncoderByType(MIME_TYPE);
+    final MediaMuxer muxer =
+        new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    try {
+      encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+      encoder.start();
+      final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+      int track = -1;
+      int framesQueued = 0;
+      boolean outputDone = false;
+      while (!outputDone) {
+        if (framesQueued <= CLIP_FRAMES) {
+          final int inputIndex = encoder.dequeueInputBuffer(TIMEOUT_US);
+          if (inputIndex >= 0) {
+            final long timestampUs = framesQueued * 1000000L / FRAME_RATE;
+            if (framesQueued == CLIP_FRAMES) {
+              encoder.queueInputBuffer(
+                  inputIndex, 0, 0, timestampUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            } else {
+              fillGray(encoder.getInputImage(inputIndex));
+              encoder.queueInputBuffer(
+                  inputIndex, 0, CLIP_WIDTH * CLIP_HEIGHT * 3 / 2, timestampUs, 0);
+            }
+            ++framesQueued;
+          }
+        }
+
+        final int outputIndex = encoder.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+          track = muxer.addTrack(encoder.getOutputFormat());
+          muxer.start();
+        } else if (outputIndex >= 0) {
+          if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+            muxer.writeSampleData(track, encoder.getOutputBuffer(outputIndex), info);
+          }
+          outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+          encoder.releaseOutputBuffer(outputIndex, false);
+        }
+      }
+      encoder.stop();
+      muxer.stop();
+    } finally {
+      encoder.release();
+      muxer.release();
+    }
+  }
+
+  private static void fillGray(final Image image) {
+    final Image.Plane[] planes = image.getPlanes();
+    for (int i = 0; i < planes.length; ++i) {
+      // The chroma planes are subsampled by 2 in both directions.
+      final int width = i == 0 ? CLIP_WIDTH : CLIP_WIDTH / 2;
+      final int height = i == 0 ? CLIP_HEIGHT : CLIP_HEIGHT / 2;
+      final ByteBuffer buffer = planes[i].getBuffer();
+      final int rowStride = planes[i].getRowStride();
+      final int pixelStride = planes[i].getPixelStride();
+      for (int y = 0; y < height; ++y) {
+        for (int x = 0; x < width; ++x) {
+          buffer.put(y * rowStride + x * pixelStride, (byte) 128);
+        }
+      }
+    }
+  }
+
+  /** Finds the same box, in the middle of the model input, whatever the input. */
+  private static final class FixedDetector implements Detector {
+    static final String LABEL = "thing";
+    static final float SCORE = 0.9f;
+
+    private final ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(MODEL_INPUT_SIZE * MODEL_INPUT_SIZE * 3)
+            .order(ByteOrder.nativeOrder());
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final Detections detections) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer() {
+      return inputBuffer;
+    }
+
+    @Override
+    public boolean isInputQuantized() {
+      return true;
+    }
+
+    @Override
+    public void recognizeInputBuffer(final Detections detections) {
+      detections.clear();
+      detections.add(75, 75, 225, 225, 1, LABEL, SCORE);
+    }
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return "";
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void setNumThreads(final int numThreads) {}
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {}
+  }
+}
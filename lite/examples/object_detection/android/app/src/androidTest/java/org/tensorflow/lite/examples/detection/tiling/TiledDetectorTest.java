@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tiling;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.abs;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor.Suppression;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.PooledDetector;
+
+/**
+ * Runs a {@link TiledDetector} over detectors that find the same box in every pass, and checks how
+ * the boxes are mapped back to the frame and merged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TiledDetectorTest {
+  private static final int INPUT_SIZE = 300;
+  private static final int POOL_SIZE = 2;
+  private static final int MAX_DETECTIONS = 10;
+
+  private TiledDetector tiledDetector;
+
+  @After
+  public void tearDown() {
+    if (tiledDetector != null) {
+      tiledDetector.close();
+    }
+  }
+
+  @Test
+  public void mergesTheWholeFrameAndTilePasses() {
+    // A frame of the input size is a single tile, which sees the box where the whole frame does.
+    tiledDetector = createTiledDetector(new RectF(100, 100, 200, 200));
+    final Detector.Detections out = detect(INPUT_SIZE, INPUT_SIZE);
+
+    assertThat(tiledDetector.getLastTileCount()).isEqualTo(1);
+    assertThat(out.size()).isEqualTo(1);
+    assertThat(containsBox(out, 100, 100, 200, 200)).isTrue();
+    assertThat(out.getScore(0)).isEqualTo(0.9f);
+  }
+
+  @Test
+  public void dropsBoxesCutByAnInnerTileEdge() {
+    // Three tiles across, at 0, 150 and 300. The box touches the right edge of every pass, which
+    // is inside the frame for the first two tiles only.
+    tiledDetector = createTiledDetector(new RectF(200, 100, 300, 200));
+    final Detector.Detections out = detect(2 * INPUT_SIZE, INPUT_SIZE);
+
+    assertThat(tiledDetector.getLastTileCount()).isEqualTo(3);
+    assertThat(out.size()).isEqualTo(2);
+    // The whole frame is padded to a 600 pixel square, twice the input size.
+    assertThat(containsBox(out, 400, 50, 600, 250)).isTrue();
+    assertThat(containsBox(out, 500, 100, 600, 200)).isTrue();
+  }
+
+  private TiledDetector createTiledDetector(final RectF box) {
+    final List<Detector> detectors = new ArrayList<>();
+    for (int i = 0; i < POOL_SIZE; ++i) {
+      detectors.add(new FixedDetector(box));
+    }
+    return new TiledDetector(
+        new PooledDetector(detectors),
+        INPUT_SIZE,
+        new TileScheduler(INPUT_SIZE, 0.25f, 3, 2),
+        MAX_DETECTIONS,
+        new DetectionPostprocessor(0.5f, Suppression.HARD, 0.5f, 0.5f, MAX_DETECTIONS));
+  }
+
+  private Detector.Detections detect(final int width, final int height) {
+    final YuvFrame frame = new YuvFrame();
+    frame.setNV21(new byte[ImageUtils.getYUVByteSize(width, height)], width, height);
+    final Detector.Detections out = new Detector.Detections(MAX_DETECTIONS);
+    tiledDetector.detect(frame, out);
+    return out;
+  }
+
+  /** Whether one of the detections is at this location, in any order as their scores are equal. */
+  private static boolean containsBox(
+      final Detector.Detections detections,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    final RectF box = new RectF();
+    for (int i = 0; i < detections.size(); ++i) {
+      detections.getLocation(i, box);
+      if (abs(box.left - left) < 0.01f
+          && abs(box.top - top) < 0.01f
+          && abs(box.right - right) < 0.01f
+          && abs(box.bottom - bottom) < 0.01f) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Finds the same box, in model input coordinates, whatever the input. */
+  private static final class FixedDetector implements Detector {
+    private final RectF box;
+    private final ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3).order(ByteOrder.nativeOrder());
+
+    FixedDetector(final RectF box) {
+      this.box = box;
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final Detections detections) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer() {
+      return inputBuffer;
+    }
+
+    @Override
+    public boolean isInputQuantized() {
+      return true;
+    }
+
+    @Override
+    public void recognizeInputBuffer(final Detections detections) {
+      detections.clear();
+      detections.add(box.left, box.top, box.right, box.bottom, 1, "thing", 0.9f);
+    }
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return "";
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void setNumThreads(final int numThreads) {}
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {}
+  }
+}
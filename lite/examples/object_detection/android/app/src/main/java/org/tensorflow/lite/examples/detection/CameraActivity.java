@@ -66,8 +66,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
+import org.tensorflow.lite.examples.detection.env.YuvToRgbConverter;
 import org.tensorflow.lite.examples.detection.VideoFrame;
 
 import com.serenegiant.usb.IFrameCallback;
@@ -95,7 +97,14 @@ public abstract class CameraActivity extends AppCompatActivity
   private boolean isProcessingFrame = false;
   private byte[][] yuvBytes = new byte[3][];
   private int[] rgbBytes = null;
+  private YuvToRgbConverter yuvToRgbConverter;
   private int yRowStride;
+  // Layout of the frame being processed, used to write it straight into a model input.
+  private FrameFormat frameFormat = FrameFormat.ARGB;
+  private int uvRowStride;
+  private int uvPixelStride;
+  // Reused copy of the last frame from the USB camera.
+  private byte[] usbFrameBytes;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
 
@@ -253,10 +262,75 @@ public abstract class CameraActivity extends AppCompatActivity
     return rgbBytes;
   }
 
+  /**
+   * Writes the current frame into a model input buffer with {@code converter}, without converting
+   * the whole frame to ARGB first.
+   *
+   * @return false if the current frame is not a YUV frame (video playback), in which case it is
+   *     only available through {@link #getRgbBytes()}.
+   */
+  protected boolean fillModelInput(final YuvToInputConverter converter, final ByteBuffer out) {
+    switch (frameFormat) {
+      case NV21:
+        converter.convertYUV420SP(yuvBytes[0], previewWidth, previewHeight, out);
+        return true;
+      case YUV_420_888:
+        converter.convertYUV420(
+            yuvBytes[0],
+            yuvBytes[1],
+            yuvBytes[2],
+            previewWidth,
+            previewHeight,
+            yRowStride,
+            uvRowStride,
+            uvPixelStride,
+            out);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Copies the current frame into {@code frame}, so that it can be processed after {@link
+   * #readyForNextImage()} has handed the camera buffer back.
+   *
+   * @return false if the current frame is not a YUV frame (video playback).
+   */
+  protected boolean copyFrame(final YuvFrame frame) {
+    switch (frameFormat) {
+      case NV21:
+        frame.setNV21(yuvBytes[0], previewWidth, previewHeight);
+        return true;
+      case YUV_420_888:
+        frame.setYUV420(
+            yuvBytes[0],
+            yuvBytes[1],
+            yuvBytes[2],
+            previewWidth,
+            previewHeight,
+            yRowStride,
+            uvRowStride,
+            uvPixelStride);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether the current frame has a luminance plane, false for video playback, whose frames
+   * are only available as ARGB.
+   */
+  protected boolean hasLuminance() {
+    return frameFormat == FrameFormat.NV21 || frameFormat == FrameFormat.YUV_420_888;
+  }
+
   protected int getLuminanceStride() {
     return yRowStride;
   }
 
+  /** The luminance plane of the current frame, only valid if {@link #hasLuminance()}. */
   protected byte[] getLuminance() {
     return yuvBytes[0];
   }
@@ -313,12 +387,14 @@ public abstract class CameraActivity extends AppCompatActivity
     isProcessingFrame = true;
     yuvBytes[0] = bytes;
     yRowStride = previewWidth;
+    frameFormat = FrameFormat.NV21;
 
     imageConverter =
         new Runnable() {
           @Override
           public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
+            yuvToRgbConverter.convertYUV420SPToARGB8888(
+                bytes, previewWidth, previewHeight, rgbBytes);
           }
         };
 
@@ -360,14 +436,15 @@ public abstract class CameraActivity extends AppCompatActivity
       final Plane[] planes = image.getPlanes();
       fillBytes(planes, yuvBytes);
       yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
+      uvRowStride = planes[1].getRowStride();
+      uvPixelStride = planes[1].getPixelStride();
+      frameFormat = FrameFormat.YUV_420_888;
 
       imageConverter =
           new Runnable() {
             @Override
             public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
+              yuvToRgbConverter.convertYUV420ToARGB8888(
                   yuvBytes[0],
                   yuvBytes[1],
                   yuvBytes[2],
@@ -400,7 +477,9 @@ public abstract class CameraActivity extends AppCompatActivity
 
   @Override
   public void onFrame(final ByteBuffer frame) {
-    LOGGER.d("onFrame start");
+    if (Logger.VERBOSE_LOGGING) {
+      LOGGER.v("onFrame start");
+    }
     if (previewWidth == 0 || previewHeight == 0) {
       LOGGER.d("We need wait until we have some size from onPreviewSizeChosen");
       return;
@@ -415,28 +494,43 @@ public abstract class CameraActivity extends AppCompatActivity
       }
 
       if (isProcessingFrame) {
-        LOGGER.d("Drop frame");
+        if (Logger.VERBOSE_LOGGING) {
+          LOGGER.v("Drop frame");
+        }
         frame.clear();
         return;
       }
       isProcessingFrame = true;
-      LOGGER.d("imageAvailable");
+      if (Logger.VERBOSE_LOGGING) {
+        LOGGER.v("imageAvailable");
+      }
       Trace.beginSection("imageAvailable");
+      if (usbFrameBytes == null || usbFrameBytes.length != frame.capacity()) {
+        usbFrameBytes = new byte[frame.capacity()];
+      }
+      frame.get(usbFrameBytes, 0, usbFrameBytes.length);
+      yuvBytes[0] = usbFrameBytes;
+      yRowStride = previewWidth;
+      frameFormat = FrameFormat.NV21;
 
       imageConverter =
               new Runnable() {
                 @Override
                 public void run() {
-                  byte [] input = new byte[frame.capacity()];
-                  frame.get(input, 0, input.length);
-                  ImageUtils.convertYUV420SPToARGB8888(
-                          input,
+                  yuvToRgbConverter.convertYUV420SPToARGB8888(
+                          usbFrameBytes,
                           previewWidth,
                           previewHeight,
                           rgbBytes);
 
-                  LOGGER.d("frame: " + frame.getInt(0) + " " + frame.getInt(1) + " " + frame.getInt(2) + " " + frame.getInt(3));
-                  LOGGER.d("rgbBytes: " + rgbBytes[0] + " " + rgbBytes[1] + " " + rgbBytes[2] + " " + rgbBytes[3]);
+                  if (Logger.VERBOSE_LOGGING) {
+                    LOGGER.v(
+                        "frame: %d %d %d %d",
+                        frame.getInt(0), frame.getInt(1), frame.getInt(2), frame.getInt(3));
+                    LOGGER.v(
+                        "rgbBytes: %d %d %d %d",
+                        rgbBytes[0], rgbBytes[1], rgbBytes[2], rgbBytes[3]);
+                  }
                 }
               };
 
@@ -450,7 +544,9 @@ public abstract class CameraActivity extends AppCompatActivity
               };
 
       processImage();
-      LOGGER.d("onFrame end");
+      if (Logger.VERBOSE_LOGGING) {
+        LOGGER.v("onFrame end");
+      }
     } catch (final Exception e) {
       LOGGER.e(e, "onFrame Exception!");
       Trace.endSection();
@@ -461,7 +557,9 @@ public abstract class CameraActivity extends AppCompatActivity
 
   @Override
   public void onVideoFrameData(Bitmap bmp) {
-    LOGGER.d("onVideoFrame start prev pW " + previewWidth +" ph " + previewHeight);
+    if (Logger.VERBOSE_LOGGING) {
+      LOGGER.v("onVideoFrame start prev pW %d ph %d", previewWidth, previewHeight);
+    }
     if (bmp == null ) {
       LOGGER.d("VidoeFrame == null");
       return;
@@ -478,18 +576,25 @@ public abstract class CameraActivity extends AppCompatActivity
     }
 
     if (isProcessingFrame) {
-      LOGGER.d("Drop frame");
+      if (Logger.VERBOSE_LOGGING) {
+        LOGGER.v("Drop frame");
+      }
       return;
     }
 
     isProcessingFrame = true;
-    LOGGER.d("VideoFrame: imageAvailable");
+    if (Logger.VERBOSE_LOGGING) {
+      LOGGER.v("VideoFrame: imageAvailable");
+    }
+    frameFormat = FrameFormat.ARGB;
 
     imageConverter =
             new Runnable() {
               @Override
               public void run() {
-                LOGGER.d("converter not needed ");
+                if (Logger.VERBOSE_LOGGING) {
+                  LOGGER.v("converter not needed ");
+                }
                 int imageSize = bmp.getRowBytes() * bmp.getHeight();
                 IntBuffer uncompressedBuffer = IntBuffer.allocate( imageSize);
                 bmp.copyPixelsToBuffer(uncompressedBuffer);
@@ -507,7 +612,9 @@ public abstract class CameraActivity extends AppCompatActivity
             };
 
     processImage();
-    LOGGER.d("onVideoFrame end");
+    if (Logger.VERBOSE_LOGGING) {
+      LOGGER.v("onVideoFrame end");
+    }
   }
 
 
@@ -525,6 +632,7 @@ public abstract class CameraActivity extends AppCompatActivity
     handlerThread = new HandlerThread("inference");
     handlerThread.start();
     handler = new Handler(handlerThread.getLooper());
+    yuvToRgbConverter = new YuvToRgbConverter(YuvToRgbConverter.defaultNumThreads());
 
     setFragment(true, cameraResolution);
   }
@@ -541,6 +649,7 @@ public abstract class CameraActivity extends AppCompatActivity
     } catch (final InterruptedException e) {
       LOGGER.e(e, "Exception!");
     }
+    yuvToRgbConverter.close();
 
     super.onPause();
   }
@@ -804,6 +913,13 @@ public abstract class CameraActivity extends AppCompatActivity
     inferenceTimeTextView.setText(inferenceTime);
   }
 
+  /** Pixel layouts the camera and video sources deliver frames in. */
+  private enum FrameFormat {
+    NV21,
+    YUV_420_888,
+    ARGB
+  }
+
   protected abstract void processImage();
 
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
@@ -36,15 +36,20 @@ import android.widget.EditText;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.android.Utils;
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
@@ -52,10 +57,24 @@ import org.opencv.imgproc.Imgproc;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
+import org.tensorflow.lite.examples.detection.env.DetectionJournal;
+import org.tensorflow.lite.examples.detection.env.DetectionScheduler;
+import org.tensorflow.lite.examples.detection.env.FrameBufferPool;
+import org.tensorflow.lite.examples.detection.env.FramePipeline;
+import org.tensorflow.lite.examples.detection.env.FramePipeline.DropPolicy;
+import org.tensorflow.lite.examples.detection.env.FramePipeline.StageStats;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MotionEstimator;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor.Suppression;
 import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.PooledDetector;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tiling.TileScheduler;
+import org.tensorflow.lite.examples.detection.tiling.TiledDetector;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 /**
@@ -73,9 +92,69 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
+  // How overlapping detections of the same class are merged before tracking.
+  private static final Suppression SUPPRESSION = Suppression.HARD;
+  // Overlap from which boxes of the same class are suppressed, or decayed by SOFT_LINEAR.
+  private static final float NMS_IOU_THRESHOLD = 0.5f;
+  // Spread of the SOFT_GAUSSIAN score decay.
+  private static final float SOFT_NMS_SIGMA = 0.5f;
   private static final boolean MAINTAIN_ASPECT = false;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final boolean SAVE_PREVIEW_BITMAP = false;
+  // Dumps the cropped region of every frame to "cropped.png" when cropping is enabled.
+  private static final boolean SAVE_CROPPED_BITMAP = false;
+  private static final Scalar BORDER_COLOR = new Scalar(0.0, 0.0, 0.0, 255.0);
+  private static final org.opencv.core.Size INPUT_SIZE =
+      new org.opencv.core.Size(TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE);
+  // Write camera frames straight into the model input instead of going through OpenCV. Video
+  // playback frames always take the OpenCV path.
+  private static final boolean FUSED_PREPROCESSING = true;
+  // Capacity of the reused detection results, the prepackaged model returns 10 boxes.
+  private static final int MAX_DETECTIONS = 10;
+  // Runs preprocessing, inference and tracking of consecutive camera frames concurrently, each
+  // stage on its own thread, instead of one frame at a time. Requires FUSED_PREPROCESSING.
+  private static final boolean PIPELINE_MODE = false;
+  // LATEST_WINS keeps the latency low by dropping stale frames, BLOCK processes every frame that
+  // enters the pipeline and slows the camera side down instead.
+  private static final DropPolicy PIPELINE_DROP_POLICY = DropPolicy.LATEST_WINS;
+  // Frames queued in front of each stage with DropPolicy.BLOCK.
+  private static final int PIPELINE_QUEUE_CAPACITY = 2;
+  // One frame per stage, one being copied from the camera and one queued in front of each stage.
+  private static final int PIPELINE_NUM_FRAMES = 7;
+  // Stage timings are logged every this many frames.
+  private static final int PIPELINE_LOG_INTERVAL = 100;
+  // Runs the detector on one frame out of this many at most. The tracker predicts where the
+  // objects are on the frames in between.
+  private static final int DETECTION_INTERVAL = 1;
+  // Frames after which a static scene is detected anyway.
+  private static final int MAX_DETECTION_INTERVAL = 30;
+  // Motion score, the mean luminance change since the last detected frame in [0, 1], from which
+  // a frame is detected. 0 detects every DETECTION_INTERVAL frames regardless of motion.
+  private static final float MOTION_THRESHOLD = 0.02f;
+  // Cells the luminance is averaged over to measure the motion.
+  private static final int MOTION_GRID_WIDTH = 32;
+  private static final int MOTION_GRID_HEIGHT = 24;
+  // Detection scheduler counters are logged every this many frames.
+  private static final int SCHEDULER_LOG_INTERVAL = 300;
+  // Detects tiles of the frame at the model resolution on top of the whole frame, so that small
+  // objects are not shrunk away. Applies to camera frames when cropping is disabled.
+  private static final boolean TILED_INFERENCE = false;
+  // Detector instances running the whole frame and the tiles of a round in parallel.
+  private static final int TILE_POOL_SIZE = 3;
+  // Overlap of neighbouring tiles, as a fraction of a tile.
+  private static final float TILE_OVERLAP = 0.2f;
+  // Tiles detected per frame at most, on top of the whole frame.
+  private static final int MAX_TILES_PER_FRAME = 2;
+  // Detection rounds a tile keeps being detected after it last saw an object.
+  private static final int TILE_HOLD_ROUNDS = 10;
+  // Capacity of the merged tiled detection results.
+  private static final int MAX_TILED_DETECTIONS = 50;
+  // Records every detected frame and its detections, in frame coordinates, to a journal in the
+  // app files. Pull it with adb and read it with DetectionJournalReader.
+  private static final boolean DETECTION_JOURNAL = false;
+  private static final String DETECTION_JOURNAL_FILE = "detections.journal";
+  // Records kept, 48 bytes each, the oldest are overwritten.
+  private static final int DETECTION_JOURNAL_CAPACITY = 1 << 15;
   private static final float TEXT_SIZE_DIP = 10;
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
@@ -87,9 +166,38 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private boolean computingDetection = false;
   private long timestamp = 0;
   private MultiBoxTracker tracker;
+  private YuvToInputConverter inputConverter;
+  private final Detector.Detections detections = new Detector.Detections(MAX_DETECTIONS);
+  // Detections over the minimum confidence, after suppression.
+  private final Detector.Detections filteredDetections = new Detector.Detections(MAX_DETECTIONS);
+  private final DetectionPostprocessor postprocessor = createPostprocessor(MAX_DETECTIONS);
   private BorderedText borderedText;
   private Mat mRgbImageMat;
+  // Native buffers of the OpenCV preprocessing path, reused across frames.
+  private final FrameBufferPool framePool = new FrameBufferPool();
   private int mPaddingImageSize;
+  private FramePipeline<PipelineFrame> pipeline;
+  // Frames not in the pipeline, ready to receive the next camera frame.
+  private ArrayBlockingQueue<PipelineFrame> freeFrames;
+  private YuvToInputConverter pipelineConverter;
+  // Used by the tracking stage only.
+  private DetectionPostprocessor pipelinePostprocessor;
+  private Detector.Detections pipelineDetections;
+  private long pipelineCameraDrops;
+  private final DetectionScheduler detectionScheduler =
+      new DetectionScheduler(
+          new MotionEstimator(MOTION_GRID_WIDTH, MOTION_GRID_HEIGHT),
+          MOTION_THRESHOLD,
+          DETECTION_INTERVAL,
+          MAX_DETECTION_INTERVAL);
+  private boolean schedulerCropChecked = false;
+  private TiledDetector tiledDetector;
+  // Copy of the camera frame the tiles are detected from.
+  private final YuvFrame tiledFrame = new YuvFrame();
+  private final Detector.Detections tiledDetections =
+      new Detector.Detections(MAX_TILED_DETECTIONS);
+  // Opened and closed on the UI thread, appended to on the detection threads.
+  private volatile DetectionJournal journal;
   ToggleButton toggleCrop;
   ToggleButton toggleDisplayCropRegion;
   EditText editTextNumberTopX;
@@ -126,6 +234,10 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     borderedText = new BorderedText(textSizePx);
     borderedText.setTypeface(Typeface.MONOSPACE);
 
+    // The stages and the tiles hold on to the detector and the tracker being replaced, so they are
+    // stopped before either is.
+    closePipeline();
+    closeTiledDetector();
     tracker = new MultiBoxTracker(this);
 
     int cropSize = TF_OD_API_INPUT_SIZE;
@@ -139,6 +251,13 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
               TF_OD_API_INPUT_SIZE,
               TF_OD_API_IS_QUANTIZED);
       cropSize = TF_OD_API_INPUT_SIZE;
+      inputConverter = new YuvToInputConverter(TF_OD_API_INPUT_SIZE, detector.isInputQuantized());
+      if (PIPELINE_MODE && FUSED_PREPROCESSING) {
+        createPipeline();
+      }
+      if (TILED_INFERENCE) {
+        createTiledDetector();
+      }
     } catch (final IOException e) {
       e.printStackTrace();
       LOGGER.e(e, "Exception initializing Detector!");
@@ -149,8 +268,14 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
       finish();
     }
 
+    if (DETECTION_JOURNAL && journal == null) {
+      openJournal();
+    }
+
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
+    // Buffers of the previous frame size would never be reused.
+    clearFramePool();
 
     sensorOrientation = 0;//rotation - getScreenOrientation();
     LOGGER.i("Camera orientation relative to screen canvas: [%d - %d] = %d", rotation, getScreenOrientation(), sensorOrientation);
@@ -267,51 +392,375 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
 
 
+  /** A camera frame travelling through the pipeline, and everything derived from it. */
+  private static final class PipelineFrame {
+    final YuvFrame yuv = new YuvFrame();
+    final ByteBuffer input;
+    final Detector.Detections detections = new Detector.Detections(MAX_DETECTIONS);
+    long timestamp;
+    // Region of the frame fed to the model, and the square it was padded to.
+    int cropX;
+    int cropY;
+    int cropWidth;
+    int cropHeight;
+    int paddedSize;
+    int padLeft;
+    int padTop;
+
+    PipelineFrame(final int inputBytes) {
+      input = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+    }
+  }
+
+  private void createPipeline() {
+    closePipeline();
+    final int inputBytes = detector.getInputBuffer().capacity();
+    freeFrames = new ArrayBlockingQueue<>(PIPELINE_NUM_FRAMES);
+    for (int i = 0; i < PIPELINE_NUM_FRAMES; ++i) {
+      freeFrames.add(new PipelineFrame(inputBytes));
+    }
+    pipelineConverter =
+        new YuvToInputConverter(TF_OD_API_INPUT_SIZE, detector.isInputQuantized());
+    pipelinePostprocessor = createPostprocessor(MAX_DETECTIONS);
+    pipelineDetections = new Detector.Detections(MAX_DETECTIONS);
+    pipelineCameraDrops = 0;
+    final ArrayBlockingQueue<PipelineFrame> free = freeFrames;
+    pipeline =
+        new FramePipeline<PipelineFrame>(
+                "detector", PIPELINE_QUEUE_CAPACITY, PIPELINE_DROP_POLICY, free::offer)
+            .addStage("preprocess", this::preprocessFrame)
+            .addStage("inference", this::detectFrame)
+            .addStage("track", this::trackFrame);
+    pipeline.start();
+  }
+
+  private void closePipeline() {
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
+  }
+
+  /** What became of a camera frame handed to the pipeline. */
+  private enum PipelineSubmission {
+    /** The frame is on its way through the stages. */
+    ENQUEUED,
+    /** The pipeline had no room for the frame, which was dropped. */
+    DROPPED,
+    /** The frame cannot go through the pipeline (video playback) and is still to be detected. */
+    UNSUPPORTED
+  }
+
+  /** Copies the current camera frame into the pipeline and hands the camera buffer back. */
+  private PipelineSubmission submitToPipeline(final long currTimestamp) {
+    final PipelineFrame frame = freeFrames.poll();
+    if (frame == null) {
+      // Every frame is in flight, the pipeline is saturated.
+      ++pipelineCameraDrops;
+      readyForNextImage();
+      return PipelineSubmission.DROPPED;
+    }
+    if (!copyFrame(frame.yuv)) {
+      freeFrames.offer(frame);
+      return PipelineSubmission.UNSUPPORTED;
+    }
+    readyForNextImage();
+
+    frame.timestamp = currTimestamp;
+    if (toggleCrop.isChecked()) {
+      frame.cropX = topX;
+      frame.cropY = topY;
+      frame.cropWidth = width;
+      frame.cropHeight = height;
+    } else {
+      frame.cropX = 0;
+      frame.cropY = 0;
+      frame.cropWidth = previewWidth;
+      frame.cropHeight = previewHeight;
+    }
+    frame.paddedSize = Math.max(frame.cropWidth, frame.cropHeight);
+    frame.padLeft = (frame.paddedSize - frame.cropWidth) / 2;
+    frame.padTop = (frame.paddedSize - frame.cropHeight) / 2;
+
+    if (!pipeline.submit(frame)) {
+      freeFrames.offer(frame);
+      return PipelineSubmission.DROPPED;
+    }
+    return PipelineSubmission.ENQUEUED;
+  }
+
+  private void preprocessFrame(final PipelineFrame frame) {
+    pipelineConverter.setCrop(frame.cropX, frame.cropY, frame.cropWidth, frame.cropHeight, 0);
+    frame.yuv.writeModelInput(pipelineConverter, frame.input);
+  }
+
+  private void detectFrame(final PipelineFrame frame) {
+    synchronized (detector) {
+      final ByteBuffer input = detector.getInputBuffer();
+      input.rewind();
+      frame.input.rewind();
+      input.put(frame.input);
+      input.rewind();
+      detector.recognizeInputBuffer(frame.detections);
+    }
+  }
+
+  private void trackFrame(final PipelineFrame frame) {
+    final Detector.Detections detections = pipelineDetections;
+    pipelinePostprocessor.run(frame.detections, detections);
+    final float scale = (float) frame.paddedSize / TF_OD_API_INPUT_SIZE;
+    final List<Detector.Recognition> mappedRecognitions = new ArrayList<>(detections.size());
+    for (int i = 0; i < detections.size(); ++i) {
+      final Detector.Recognition result = detections.toRecognition(i);
+      final RectF location = result.getLocation();
+      location.left = location.left * scale - frame.padLeft + frame.cropX;
+      location.right = location.right * scale - frame.padLeft + frame.cropX;
+      location.top = location.top * scale - frame.padTop + frame.cropY;
+      location.bottom = location.bottom * scale - frame.padTop + frame.cropY;
+      result.setLocation(location);
+      mappedRecognitions.add(result);
+    }
+    journalFrame(frame.timestamp, detections, mappedRecognitions);
+
+    tracker.trackResults(mappedRecognitions, frame.timestamp);
+    trackingOverlay.postInvalidate();
+
+    final List<StageStats> stats = pipeline.getStats();
+    final String timings =
+        String.format(
+            "%.0f/%.0f/%.0fms",
+            stats.get(0).getLastMs(), stats.get(1).getLastMs(), stats.get(2).getLastMs());
+    final long tracked = stats.get(2).getFrames() + 1;
+    if (tracked % PIPELINE_LOG_INTERVAL == 0) {
+      LOGGER.i("Pipeline, %d frames dropped at the camera", pipelineCameraDrops);
+      for (final StageStats stage : stats) {
+        LOGGER.i("Pipeline %s", stage);
+      }
+    }
+    runOnUiThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            showFrameInfo(previewWidth + "x" + previewHeight);
+            showCropInfo(TF_OD_API_INPUT_SIZE + "x" + TF_OD_API_INPUT_SIZE);
+            showInference(timings);
+          }
+        });
+  }
+
+  private void createTiledDetector() throws IOException {
+    final PooledDetector pool =
+        TFLiteObjectDetectionAPIModel.createPooled(
+            this,
+            TF_OD_API_MODEL_FILE,
+            TF_OD_API_LABELS_FILE,
+            TF_OD_API_INPUT_SIZE,
+            TF_OD_API_IS_QUANTIZED,
+            TILE_POOL_SIZE);
+    // The passes already run in parallel.
+    pool.setNumThreads(1);
+    tiledDetector =
+        new TiledDetector(
+            pool,
+            TF_OD_API_INPUT_SIZE,
+            new TileScheduler(
+                TF_OD_API_INPUT_SIZE, TILE_OVERLAP, MAX_TILES_PER_FRAME, TILE_HOLD_ROUNDS),
+            MAX_DETECTIONS,
+            createPostprocessor(MAX_TILED_DETECTIONS));
+  }
+
+  private static DetectionPostprocessor createPostprocessor(final int maxDetections) {
+    return new DetectionPostprocessor(
+        MINIMUM_CONFIDENCE_TF_OD_API,
+        SUPPRESSION,
+        NMS_IOU_THRESHOLD,
+        SOFT_NMS_SIGMA,
+        maxDetections);
+  }
+
+  private void closeTiledDetector() {
+    if (tiledDetector != null) {
+      tiledDetector.close();
+      tiledDetector = null;
+    }
+  }
+
+  /**
+   * Copies the current camera frame and detects it tile by tile in the background.
+   *
+   * @return false if the frame cannot be copied (video playback)
+   */
+  private boolean detectTiled(final long currTimestamp) {
+    if (!copyFrame(tiledFrame)) {
+      return false;
+    }
+    readyForNextImage();
+
+    runInBackground(
+        () -> {
+          final long startTime = SystemClock.uptimeMillis();
+          tiledDetector.detect(tiledFrame, tiledDetections);
+          lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+
+          // The detections are already post-processed and in frame coordinates.
+          final List<Detector.Recognition> results = new ArrayList<>(tiledDetections.size());
+          for (int i = 0; i < tiledDetections.size(); ++i) {
+            results.add(tiledDetections.toRecognition(i));
+          }
+          journalFrame(currTimestamp, tiledDetections, results);
+          tracker.trackResults(results, currTimestamp);
+          trackingOverlay.postInvalidate();
+          final String cropInfo =
+              TF_OD_API_INPUT_SIZE + "x" + TF_OD_API_INPUT_SIZE + ", "
+                  + tiledDetector.getLastTileCount() + " tiles";
+
+          computingDetection = false;
+
+          runOnUiThread(
+              () -> {
+                showFrameInfo(previewWidth + "x" + previewHeight);
+                showCropInfo(cropInfo);
+                showInference(lastProcessingTimeMs + "ms");
+              });
+        });
+    return true;
+  }
+
+  private void openJournal() {
+    try {
+      journal =
+          new DetectionJournal(
+              new File(getFilesDir(), DETECTION_JOURNAL_FILE), DETECTION_JOURNAL_CAPACITY);
+    } catch (final IOException e) {
+      // The journal is an audit trail, detection goes on without it.
+      LOGGER.w(e, "Failed to open the detection journal");
+    }
+  }
+
+  private void closeJournal() {
+    // Detaches the journal first, so that the detection threads stop appending to it.
+    final DetectionJournal journal = this.journal;
+    if (journal == null) {
+      return;
+    }
+    this.journal = null;
+    try {
+      journal.close();
+    } catch (final IOException e) {
+      LOGGER.w(e, "Failed to close the detection journal");
+    }
+  }
+
+  /**
+   * Records the detections of frame {@code frameId}, or the frame alone if there are none.
+   *
+   * @param detections the post-processed detections, for their class ids
+   * @param results the same detections, in frame coordinates
+   */
+  private void journalFrame(
+      final long frameId,
+      final Detector.Detections detections,
+      final List<Detector.Recognition> results) {
+    final DetectionJournal journal = this.journal;
+    if (journal == null) {
+      return;
+    }
+    final long timestampUs = System.currentTimeMillis() * 1000;
+    if (results.isEmpty()) {
+      journal.appendEmpty(timestampUs, frameId);
+      return;
+    }
+    for (int i = 0; i < results.size(); ++i) {
+      final Detector.Recognition result = results.get(i);
+      final RectF location = result.getLocation();
+      journal.append(
+          timestampUs,
+          frameId,
+          detections.getClassId(i),
+          result.getConfidence(),
+          location.left,
+          location.top,
+          location.right,
+          location.bottom);
+    }
+  }
+
+  /** Frees the pooled buffers, once the frame being preprocessed on the camera thread is done. */
+  private void clearFramePool() {
+    synchronized (framePool) {
+      framePool.clear();
+    }
+  }
+
+  /** Returns whether the current frame moved enough since the last detection to detect it. */
+  private boolean scheduleDetection() {
+    if (toggleCrop.isChecked() != schedulerCropChecked) {
+      // The detector sees another region now.
+      schedulerCropChecked = toggleCrop.isChecked();
+      detectionScheduler.reset();
+    }
+    // Video frames come as ARGB, without a luminance plane to measure motion on.
+    final boolean detect =
+        hasLuminance()
+            ? detectionScheduler.onFrame(
+                getLuminance(), previewWidth, previewHeight, getLuminanceStride())
+            : detectionScheduler.onFrameWithoutLuminance();
+    if (detectionScheduler.getFramesSeen() % SCHEDULER_LOG_INTERVAL == 0) {
+      LOGGER.i("Detection scheduler: %s", detectionScheduler);
+    }
+    return detect;
+  }
+
   @Override
   protected void processImage() {
     ++timestamp;
     final long currTimestamp = timestamp;
+    tracker.predict(currTimestamp);
     trackingOverlay.postInvalidate();
 
+    if (!scheduleDetection()) {
+      readyForNextImage();
+      return;
+    }
+
+    if (pipeline != null) {
+      final PipelineSubmission submission = submitToPipeline(currTimestamp);
+      // A dropped frame is not detected, so the motion reference stays where it was.
+      if (submission == PipelineSubmission.ENQUEUED) {
+        detectionScheduler.onDetectionStarted();
+      }
+      if (submission != PipelineSubmission.UNSUPPORTED) {
+        return;
+      }
+    }
+
     // No mutex needed as this method is not reentrant.
     if (computingDetection) {
       readyForNextImage();
       return;
     }
     computingDetection = true;
-    LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread. prevW " + previewWidth + " prevH" + previewHeight);
-
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    detectionScheduler.onDetectionStarted();
 
-    mRgbImageMat = new Mat();
-    Utils.bitmapToMat(rgbFrameBitmap, mRgbImageMat);
+    if (tiledDetector != null && !toggleCrop.isChecked() && detectTiled(currTimestamp)) {
+      return;
+    }
+    if (Logger.VERBOSE_LOGGING) {
+      LOGGER.v(
+          "Preparing image %d for detection in bg thread. prevW %d prevH %d",
+          currTimestamp, previewWidth, previewHeight);
+      LOGGER.v("toggleCrop is %s", toggleCrop.isChecked() ? "checked!" : "not checked!");
+    }
 
     int imageWidth, imageHeight;
-    Mat cropMat = null, processImage;
-
     if (toggleCrop.isChecked()) {
-      LOGGER.i("toggleCrop is checked!");
-
-      Rect rectCrop = new Rect(topX, topY, width, height);
-      cropMat = new Mat(mRgbImageMat, rectCrop);
-
-      Bitmap cropBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
-      Utils.matToBitmap(cropMat, cropBitmap);
-      ImageUtils.saveBitmap(cropBitmap, "cropped.png");
-
-
       imageWidth = width;
       imageHeight = height;
     } else {
-      LOGGER.i("toggleCrop is not checked!");
       imageWidth = previewWidth;
       imageHeight = previewHeight;
     }
 
-    Scalar color = new Scalar( 0.0, 0.0, 0.0, 255.0 );
-    Mat bordersImage = new Mat();
-    Mat resizeImage = new Mat();
-
     mBottom = 0;
     mTop = 0;
     mRight = 0;
@@ -321,77 +770,131 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     } else if (imageWidth < imageHeight){
       mRight = mLeft = (imageHeight - imageWidth) / 2;
     }
+    mPaddingImageSize = Math.max(imageWidth, imageHeight);
 
-    processImage = toggleCrop.isChecked() ? cropMat : mRgbImageMat;
-    Core.copyMakeBorder(processImage, bordersImage, mTop, mBottom, mLeft, mRight, BORDER_CONSTANT, color);
-    org.opencv.core.Size size = new org.opencv.core.Size(300, 300);
-    Imgproc.resize(bordersImage, resizeImage, size );
-    Bitmap opencvResizeimageBitmap = Bitmap.createBitmap(300, 300, Config.ARGB_8888);
-    Utils.matToBitmap(resizeImage, opencvResizeimageBitmap);
+    boolean fusedInput = false;
+    if (FUSED_PREPROCESSING) {
+      if (toggleCrop.isChecked()) {
+        inputConverter.setCrop(topX, topY, width, height, 0);
+      } else {
+        inputConverter.setCrop(0, 0, 0, 0, 0);
+      }
+      // Samples the model input straight out of the YUV planes into the detector's input buffer.
+      fusedInput = fillModelInput(inputConverter, detector.getInputBuffer());
+    }
+    final boolean useInputBuffer = fusedInput;
 
-    mPaddingImageSize = Math.max(imageWidth, imageHeight);
+    if (useInputBuffer) {
+      readyForNextImage();
+    } else {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
 
-    readyForNextImage();
+      // onPreviewSizeChosen() and onDestroy() clear the pool from the UI thread.
+      synchronized (framePool) {
+        // Every Mat and Bitmap below comes from the pool and goes back to it at the end of the
+        // frame, so steady-state frames reuse the same native buffers.
+        mRgbImageMat = framePool.acquireMat(previewHeight, previewWidth, CvType.CV_8UC4);
+        Utils.bitmapToMat(rgbFrameBitmap, mRgbImageMat);
+
+        Mat processImage = mRgbImageMat;
+
+        if (toggleCrop.isChecked()) {
+          Rect rectCrop = new Rect(topX, topY, width, height);
+          processImage = framePool.track(mRgbImageMat.submat(rectCrop));
+
+          if (SAVE_CROPPED_BITMAP) {
+            Bitmap cropBitmap = framePool.acquireBitmap(width, height, Config.ARGB_8888);
+            Utils.matToBitmap(processImage, cropBitmap);
+            ImageUtils.saveBitmap(cropBitmap, "cropped.png");
+          }
+        }
+
+        Mat bordersImage =
+            framePool.acquireMat(
+                imageHeight + mTop + mBottom, imageWidth + mLeft + mRight, CvType.CV_8UC4);
+        Mat resizeImage =
+            framePool.acquireMat(TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE, CvType.CV_8UC4);
+
+        Core.copyMakeBorder(
+            processImage, bordersImage, mTop, mBottom, mLeft, mRight, BORDER_CONSTANT, BORDER_COLOR);
+        Imgproc.resize(bordersImage, resizeImage, INPUT_SIZE);
+
+        readyForNextImage();
+
+        Utils.matToBitmap(resizeImage, croppedBitmap);
 
-    Utils.matToBitmap(resizeImage, croppedBitmap);
+        // For examining the actual TF input.
+        if (SAVE_PREVIEW_BITMAP) {
+          Bitmap opencvResizeimageBitmap =
+              framePool.acquireBitmap(
+                  TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE, Config.ARGB_8888);
+          Utils.matToBitmap(resizeImage, opencvResizeimageBitmap);
 
-    // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
+          VideoPlaybackFragment.SaveImage(opencvResizeimageBitmap, (int)timestamp);
+          //ImageUtils.saveBitmap(rgbFrameBitmap, "original.png");
+          //ImageUtils.saveBitmap(opencvResizeimageBitmap, "opencvresize.png");
+        }
 
-      VideoPlaybackFragment.SaveImage(opencvResizeimageBitmap, (int)timestamp);
-      //ImageUtils.saveBitmap(rgbFrameBitmap, "original.png");
-      //ImageUtils.saveBitmap(opencvResizeimageBitmap, "opencvresize.png");
+        framePool.endFrame();
+      }
     }
 
     runInBackground(
         new Runnable() {
           @Override
           public void run() {
-            LOGGER.i("Running detection on image " + currTimestamp);
+            if (Logger.VERBOSE_LOGGING) {
+              LOGGER.v("Running detection on image %d", currTimestamp);
+            }
             final long startTime = SystemClock.uptimeMillis();
-            final List<Detector.Recognition> results = detector.recognizeImage(croppedBitmap);
+            if (useInputBuffer) {
+              detector.recognizeInputBuffer(detections);
+            } else {
+              detector.recognizeImage(croppedBitmap, detections);
+            }
             lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-
-            cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-            final Canvas canvas = new Canvas(cropCopyBitmap);
+            // Drops the detections under the minimum confidence and merges overlapping ones.
+            postprocessor.run(detections, filteredDetections);
+
+            // The model input is only available as a bitmap on the OpenCV path.
+            Canvas canvas = null;
+            if (!useInputBuffer) {
+              cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
+              canvas = new Canvas(cropCopyBitmap);
+            }
             final Paint paint = new Paint();
             paint.setColor(Color.RED);
             paint.setStyle(Style.STROKE);
             paint.setStrokeWidth(2.0f);
 
-            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-            switch (MODE) {
-              case TF_OD_API:
-                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                break;
-            }
-
             final List<Detector.Recognition> mappedRecognitions =
-                new ArrayList<Detector.Recognition>();
+                new ArrayList<Detector.Recognition>(filteredDetections.size());
 
-            for (final Detector.Recognition result : results) {
+            for (int i = 0; i < filteredDetections.size(); ++i) {
+              final Detector.Recognition result = filteredDetections.toRecognition(i);
               final RectF location = result.getLocation();
-              if (location != null && result.getConfidence() >= minimumConfidence) {
+              if (canvas != null) {
                 canvas.drawRect(location, paint);
+              }
 
-                /////cropToFrameTransform.mapRect(location);
-                float resizeRatio = (float)mPaddingImageSize / (float)TF_OD_API_INPUT_SIZE;
-                location.top = location.top * resizeRatio - mTop;
-                location.bottom = location.bottom * resizeRatio - mBottom;
-                location.right = location.right * resizeRatio - mRight;
-                location.left = location.left * resizeRatio - mLeft;
-
-                if (toggleCrop.isChecked()) {
-                  location.top = location.top + topY;
-                  location.bottom = location.bottom + topY;
-                  location.right = location.right + topX;
-                  location.left = location.left + topX;
-                }
-
-                result.setLocation(location);
-                mappedRecognitions.add(result);
+              /////cropToFrameTransform.mapRect(location);
+              float resizeRatio = (float)mPaddingImageSize / (float)TF_OD_API_INPUT_SIZE;
+              location.top = location.top * resizeRatio - mTop;
+              location.bottom = location.bottom * resizeRatio - mBottom;
+              location.right = location.right * resizeRatio - mRight;
+              location.left = location.left * resizeRatio - mLeft;
+
+              if (toggleCrop.isChecked()) {
+                location.top = location.top + topY;
+                location.bottom = location.bottom + topY;
+                location.right = location.right + topX;
+                location.left = location.left + topX;
               }
+
+              result.setLocation(location);
+              mappedRecognitions.add(result);
             }
+            journalFrame(currTimestamp, filteredDetections, mappedRecognitions);
 
             tracker.trackResults(mappedRecognitions, currTimestamp);
             trackingOverlay.postInvalidate();
@@ -403,7 +906,7 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
                   @Override
                   public void run() {
                     showFrameInfo(previewWidth + "x" + previewHeight);
-                    showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
+                    showCropInfo(TF_OD_API_INPUT_SIZE + "x" + TF_OD_API_INPUT_SIZE);
                     showInference(lastProcessingTimeMs + "ms");
                   }
                 });
@@ -432,7 +935,12 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     runInBackground(
         () -> {
           try {
-            detector.setUseNNAPI(isChecked);
+            synchronized (detector) {
+              detector.setUseNNAPI(isChecked);
+            }
+            if (tiledDetector != null) {
+              tiledDetector.setUseNNAPI(isChecked);
+            }
           } catch (UnsupportedOperationException e) {
             LOGGER.e(e, "Failed to set \"Use NNAPI\".");
             runOnUiThread(
@@ -448,7 +956,13 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     runInBackground(
         () -> {
           try {
-            detector.setNumThreads(numThreads);
+            synchronized (detector) {
+              detector.setNumThreads(numThreads);
+            }
+            if (tiledDetector != null) {
+              // Spreads the threads over the passes running in parallel.
+              tiledDetector.setNumThreads(Math.max(1, numThreads / TILE_POOL_SIZE));
+            }
           } catch (IllegalArgumentException e) {
             LOGGER.e(e, "Failed to set multithreads.");
             runOnUiThread(
@@ -465,6 +979,15 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     //toggleCrop.setChecked(false);
   }
 
+  @Override
+  public synchronized void onDestroy() {
+    closePipeline();
+    closeTiledDetector();
+    closeJournal();
+    clearFramePool();
+    super.onDestroy();
+  }
+
   @Override
   protected void disableCrop() {
     toggleCrop.setChecked(false);
@@ -0,0 +1,159 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An audit trail of the detections, appended to a memory-mapped file of fixed size that wraps
+ * around, so it can be left on. Read it back with {@link DetectionJournalReader}.
+ *
+ * <p>Every detection is a fixed-size record, and a frame without detections is a record of class
+ * {@link #NO_DETECTION}, so the journal shows which frames were seen. An append reserves a slot
+ * with an atomic counter and writes the record straight into the mapping, without locks, system
+ * calls or allocations; the kernel writes the pages back on its own, and they survive a crash of
+ * the app. Several threads may append concurrently. Unlike the streamed {@link
+ * org.tensorflow.lite.examples.detection.offline.DetectionLogWriter} of offline video runs, it
+ * never grows and keeps only the latest records.
+ *
+ * <p>The file is little endian. A {@link #HEADER_SIZE} byte header holds {@code int magic, short
+ * version, short recordSize, int capacity}, followed by {@code capacity} records of {@link
+ * #RECORD_SIZE} bytes: {@code long sequence, long timestampUs, long frameId, int classId, float
+ * score, float left, top, right, bottom}. Sequences count from 1, record {@code n} lives in slot
+ * {@code (n - 1) % capacity}, and a slot with sequence 0 is empty or being written.
+ */
+public final class DetectionJournal implements Closeable {
+  /** Class of the record of a frame without detections. */
+  public static final int NO_DETECTION = -1;
+
+  static final int MAGIC = 0x4a444f54; // "TODJ" in little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 48;
+  static final int SEQUENCE_OFFSET = 0;
+  static final int TIMESTAMP_OFFSET = 8;
+  static final int FRAME_ID_OFFSET = 16;
+  static final int CLASS_ID_OFFSET = 24;
+  static final int SCORE_OFFSET = 28;
+  static final int BOX_OFFSET = 32;
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  // Sequence of the last reserved record.
+  private final AtomicLong sequence;
+
+  /**
+   * Opens the journal in {@code file}, continuing after its last record, or creates it if it does
+   * not exist or has another layout.
+   *
+   * @param capacity records kept, the oldest are overwritten
+   */
+  public DetectionJournal(final File file, final int capacity) throws IOException {
+    if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+      throw new IllegalArgumentException("Invalid journal capacity " + capacity);
+    }
+    this.capacity = capacity;
+    this.file = new RandomAccessFile(file, "rw");
+    final long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    try {
+      final boolean reuse = this.file.length() == size && hasHeader(this.file, capacity);
+      if (!reuse) {
+        // Zeroes every slot.
+        this.file.setLength(0);
+        this.file.setLength(size);
+      }
+      buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (!reuse) {
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putShort(6, (short) RECORD_SIZE);
+        buffer.putInt(8, capacity);
+      }
+    } catch (final IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+    sequence = new AtomicLong(lastSequence());
+  }
+
+  /** Appends a detection of frame {@code frameId}, with its box in frame pixels. */
+  public void append(
+      final long timestampUs,
+      final long frameId,
+      final int classId,
+      final float score,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    final long recordSequence = sequence.incrementAndGet();
+    final int offset = HEADER_SIZE + (int) ((recordSequence - 1) % capacity) * RECORD_SIZE;
+    // Marks the slot as being written, so that a crash cannot leave a half old, half new record.
+    buffer.putLong(offset + SEQUENCE_OFFSET, 0);
+    buffer.putLong(offset + TIMESTAMP_OFFSET, timestampUs);
+    buffer.putLong(offset + FRAME_ID_OFFSET, frameId);
+    buffer.putInt(offset + CLASS_ID_OFFSET, classId);
+    buffer.putFloat(offset + SCORE_OFFSET, score);
+    buffer.putFloat(offset + BOX_OFFSET, left);
+    buffer.putFloat(offset + BOX_OFFSET + 4, top);
+    buffer.putFloat(offset + BOX_OFFSET + 8, right);
+    buffer.putFloat(offset + BOX_OFFSET + 12, bottom);
+    buffer.putLong(offset + SEQUENCE_OFFSET, recordSequence);
+  }
+
+  /** Appends the record of a frame without detections. */
+  public void appendEmpty(final long timestampUs, final long frameId) {
+    append(timestampUs, frameId, NO_DETECTION, 0, 0, 0, 0, 0);
+  }
+
+  /** Number of records appended since the journal was created. */
+  public long getSequence() {
+    return sequence.get();
+  }
+
+  /** Writes the records back to the file and closes it. */
+  @Override
+  public void close() throws IOException {
+    buffer.force();
+    file.close();
+  }
+
+  private static boolean hasHeader(final RandomAccessFile file, final int capacity)
+      throws IOException {
+    file.seek(0);
+    return Integer.reverseBytes(file.readInt()) == MAGIC
+        && Short.reverseBytes(file.readShort()) == VERSION
+        && Short.reverseBytes(file.readShort()) == RECORD_SIZE
+        && Integer.reverseBytes(file.readInt()) == capacity;
+  }
+
+  private long lastSequence() {
+    long last = 0;
+    for (int slot = 0; slot < capacity; ++slot) {
+      last = Math.max(last, buffer.getLong(HEADER_SIZE + slot * RECORD_SIZE + SEQUENCE_OFFSET));
+    }
+    return last;
+  }
+}
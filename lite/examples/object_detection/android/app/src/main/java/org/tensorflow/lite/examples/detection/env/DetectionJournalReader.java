@@ -0,0 +1,232 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.BOX_OFFSET;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.CLASS_ID_OFFSET;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.FRAME_ID_OFFSET;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.HEADER_SIZE;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.RECORD_SIZE;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.SCORE_OFFSET;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.SEQUENCE_OFFSET;
+import static org.tensorflow.lite.examples.detection.env.DetectionJournal.TIMESTAMP_OFFSET;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scans a {@link DetectionJournal} from the oldest record to the newest, one record at a time,
+ * skipping the ones that do not pass the filters. Only depends on the JDK, so journals pulled off a
+ * device can be read on a desktop, see {@link #main}.
+ */
+public final class DetectionJournalReader implements Closeable {
+  /** Filter value of {@link #setClassId} that accepts every class. */
+  public static final int ANY_CLASS = Integer.MIN_VALUE;
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final long lastSequence;
+
+  private int classIdFilter = ANY_CLASS;
+  private float minScore = Float.NEGATIVE_INFINITY;
+  private long fromTimestampUs = Long.MIN_VALUE;
+  private long toTimestampUs = Long.MAX_VALUE;
+  private boolean includeEmptyFrames = true;
+
+  // Sequence of the next record to look at, and the offset of the current one.
+  private long nextSequence;
+  private int offset = -1;
+
+  public DetectionJournalReader(final File file) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    try {
+      buffer = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, this.file.length());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != DetectionJournal.MAGIC) {
+        throw new IOException("Not a detection journal");
+      }
+      final int version = buffer.getShort(4);
+      if (version != DetectionJournal.VERSION || buffer.getShort(6) != RECORD_SIZE) {
+        throw new IOException("Unsupported detection journal version " + version);
+      }
+      capacity = buffer.getInt(8);
+      if (buffer.capacity() != HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+        throw new IOException("Truncated detection journal");
+      }
+    } catch (final IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+    long last = 0;
+    for (int slot = 0; slot < capacity; ++slot) {
+      last = Math.max(last, buffer.getLong(HEADER_SIZE + slot * RECORD_SIZE + SEQUENCE_OFFSET));
+    }
+    lastSequence = last;
+    rewind();
+  }
+
+  /** Only returns detections of this class, or {@link #ANY_CLASS}. */
+  public void setClassId(final int classId) {
+    classIdFilter = classId;
+  }
+
+  /** Only returns detections scored at least this much. Records of empty frames are unaffected. */
+  public void setMinScore(final float minScore) {
+    this.minScore = minScore;
+  }
+
+  /** Only returns records in this range of timestamps, inclusive. */
+  public void setTimeRange(final long fromTimestampUs, final long toTimestampUs) {
+    this.fromTimestampUs = fromTimestampUs;
+    this.toTimestampUs = toTimestampUs;
+  }
+
+  /** Whether the records of frames without detections are returned, true by default. */
+  public void setIncludeEmptyFrames(final boolean includeEmptyFrames) {
+    this.includeEmptyFrames = includeEmptyFrames;
+  }
+
+  /** Starts over from the oldest record. */
+  public void rewind() {
+    nextSequence = Math.max(1, lastSequence - capacity + 1);
+    offset = -1;
+  }
+
+  /** Moves to the next record that passes the filters. Returns false past the newest one. */
+  public boolean next() {
+    while (nextSequence <= lastSequence) {
+      final long sequence = nextSequence++;
+      final int candidate = HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE;
+      // Skips slots that were being written, or overwritten by a concurrent writer.
+      if (buffer.getLong(candidate + SEQUENCE_OFFSET) != sequence) {
+        continue;
+      }
+      offset = candidate;
+      if (accept()) {
+        return true;
+      }
+    }
+    offset = -1;
+    return false;
+  }
+
+  private boolean accept() {
+    final long timestampUs = getTimestampUs();
+    if (timestampUs < fromTimestampUs || timestampUs > toTimestampUs) {
+      return false;
+    }
+    if (getClassId() == DetectionJournal.NO_DETECTION) {
+      return includeEmptyFrames;
+    }
+    return (classIdFilter == ANY_CLASS || getClassId() == classIdFilter)
+        && getScore() >= minScore;
+  }
+
+  /** Records in the journal, including overwritten ones. */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public long getSequence() {
+    return buffer.getLong(offset + SEQUENCE_OFFSET);
+  }
+
+  public long getTimestampUs() {
+    return buffer.getLong(offset + TIMESTAMP_OFFSET);
+  }
+
+  public long getFrameId() {
+    return buffer.getLong(offset + FRAME_ID_OFFSET);
+  }
+
+  /** Class of the detection, or {@link DetectionJournal#NO_DETECTION}. */
+  public int getClassId() {
+    return buffer.getInt(offset + CLASS_ID_OFFSET);
+  }
+
+  public float getScore() {
+    return buffer.getFloat(offset + SCORE_OFFSET);
+  }
+
+  public float getLeft() {
+    return buffer.getFloat(offset + BOX_OFFSET);
+  }
+
+  public float getTop() {
+    return buffer.getFloat(offset + BOX_OFFSET + 4);
+  }
+
+  public float getRight() {
+    return buffer.getFloat(offset + BOX_OFFSET + 8);
+  }
+
+  public float getBottom() {
+    return buffer.getFloat(offset + BOX_OFFSET + 12);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Prints the records of a journal as CSV.
+   *
+   * <p>Usage: {@code DetectionJournalReader <journal> [classId [minScore]]}
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: DetectionJournalReader <journal> [classId [minScore]]");
+      System.exit(1);
+    }
+    try (DetectionJournalReader reader = new DetectionJournalReader(new File(args[0]))) {
+      if (args.length > 1) {
+        reader.setClassId(Integer.parseInt(args[1]));
+        reader.setIncludeEmptyFrames(false);
+      }
+      if (args.length > 2) {
+        reader.setMinScore(Float.parseFloat(args[2]));
+      }
+      System.out.println("sequence,timestamp_us,frame_id,class_id,score,left,top,right,bottom");
+      while (reader.next()) {
+        System.out.println(
+            reader.getSequence()
+                + ","
+                + reader.getTimestampUs()
+                + ","
+                + reader.getFrameId()
+                + ","
+                + reader.getClassId()
+                + ","
+                + reader.getScore()
+                + ","
+                + reader.getLeft()
+                + ","
+                + reader.getTop()
+                + ","
+                + reader.getRight()
+                + ","
+                + reader.getBottom());
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Decides which camera frames are worth running the detector on.
+ *
+ * <p>The motion of every frame is measured by a {@link MotionEstimator} against the last detected
+ * frame, so slow changes add up until they trigger a detection too. A frame is detected when its
+ * motion reaches the threshold and at least {@code minInterval} frames passed since the last
+ * detection, or unconditionally once {@code maxInterval} frames passed. A static scene is then
+ * only detected every {@code maxInterval} frames, saving battery, while a moving one is detected
+ * as often as {@code minInterval} allows.
+ *
+ * <p>Not thread safe, call it from the thread that receives the frames.
+ */
+public final class DetectionScheduler {
+  private final MotionEstimator motionEstimator;
+  private final float motionThreshold;
+  private final int minInterval;
+  private final int maxInterval;
+
+  private int framesSinceDetection = Integer.MAX_VALUE / 2;
+  private boolean lastFrameMeasured;
+  private float lastMotion;
+  private long framesSeen;
+  private long framesInferred;
+  private long framesSkipped;
+
+  /**
+   * @param motionThreshold motion score, in [0, 1], from which a frame is detected
+   * @param minInterval frames from one detection to the next at least, 1 to allow every frame
+   * @param maxInterval frames from one detection to the next at most
+   */
+  public DetectionScheduler(
+      final MotionEstimator motionEstimator,
+      final float motionThreshold,
+      final int minInterval,
+      final int maxInterval) {
+    if (minInterval < 1 || maxInterval < minInterval) {
+      throw new IllegalArgumentException(
+          "Invalid detection intervals " + minInterval + ", " + maxInterval);
+    }
+    this.motionEstimator = motionEstimator;
+    this.motionThreshold = motionThreshold;
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+  }
+
+  /**
+   * Measures the motion of a frame and returns whether the detector should run on it. Call {@link
+   * #onDetectionStarted} if it then does, frames returning false count as skipped.
+   */
+  public boolean onFrame(
+      final byte[] luminance, final int width, final int height, final int rowStride) {
+    ++framesSeen;
+    ++framesSinceDetection;
+    lastMotion = motionEstimator.update(luminance, width, height, rowStride);
+    lastFrameMeasured = true;
+    final boolean detect =
+        framesSinceDetection >= maxInterval
+            || (framesSinceDetection >= minInterval && lastMotion >= motionThreshold);
+    if (!detect) {
+      ++framesSkipped;
+    }
+    return detect;
+  }
+
+  /**
+   * Counts a frame without a luminance plane, e.g. a video frame decoded to ARGB, and returns true:
+   * there is no motion to measure, so it is always detected. The next frame with a luminance plane
+   * has no reference to be compared to and scores 1.
+   */
+  public boolean onFrameWithoutLuminance() {
+    ++framesSeen;
+    ++framesSinceDetection;
+    lastFrameMeasured = false;
+    motionEstimator.reset();
+    return true;
+  }
+
+  /**
+   * Records that the detector runs on the frame of the last {@link #onFrame} or {@link
+   * #onFrameWithoutLuminance}.
+   */
+  public void onDetectionStarted() {
+    ++framesInferred;
+    framesSinceDetection = 0;
+    if (lastFrameMeasured) {
+      motionEstimator.markReference();
+    }
+  }
+
+  /** Forces a detection on the next frame, e.g. after the crop region changed. */
+  public void reset() {
+    framesSinceDetection = Integer.MAX_VALUE / 2;
+    motionEstimator.reset();
+  }
+
+  /** Motion score of the last frame. */
+  public float getLastMotion() {
+    return lastMotion;
+  }
+
+  /** Frames passed to {@link #onFrame}. */
+  public long getFramesSeen() {
+    return framesSeen;
+  }
+
+  /** Frames the detector ran on. */
+  public long getFramesInferred() {
+    return framesInferred;
+  }
+
+  /**
+   * Frames skipped for lack of motion. The remaining {@code seen - inferred - skipped} frames were
+   * due but dropped, e.g. because the detector was still busy.
+   */
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d frames, %d inferred, %d skipped, motion %.3f",
+        framesSeen, framesInferred, framesSkipped, lastMotion);
+  }
+}
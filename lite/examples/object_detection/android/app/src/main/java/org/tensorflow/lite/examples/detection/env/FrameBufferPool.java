@@ -0,0 +1,136 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.LongSparseArray;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Mat;
+
+/**
+ * Frame-scoped pool of OpenCV {@link Mat}s and {@link Bitmap}s, keyed by size and type.
+ *
+ * <p>Buffers handed out during a frame stay leased until {@link #endFrame()}, which returns them to
+ * the pool for the next frame. Native memory is only freed explicitly, through {@link #clear()},
+ * instead of waiting for finalizers, so a pipeline running at a fixed resolution keeps a flat
+ * native heap. Not thread safe; use one pool per processing thread.
+ */
+public final class FrameBufferPool {
+  private static final Logger LOGGER = new Logger();
+
+  private final LongSparseArray<ArrayDeque<Mat>> freeMats = new LongSparseArray<>();
+  private final LongSparseArray<ArrayDeque<Bitmap>> freeBitmaps = new LongSparseArray<>();
+  private final List<Mat> leasedMats = new ArrayList<>();
+  private final List<Bitmap> leasedBitmaps = new ArrayList<>();
+  // Mat headers that share another Mat's data, such as sub-matrices. They own no pixels and are
+  // released rather than pooled at the end of the frame.
+  private final List<Mat> views = new ArrayList<>();
+
+  /** Leases a Mat of the given size and OpenCV type, e.g. {@code CvType.CV_8UC4}. */
+  public Mat acquireMat(final int rows, final int cols, final int type) {
+    final long key = matKey(rows, cols, type);
+    final ArrayDeque<Mat> free = freeMats.get(key);
+    Mat mat = free != null ? free.poll() : null;
+    if (mat == null) {
+      LOGGER.d("Allocating %dx%d Mat of type %d", cols, rows, type);
+      mat = new Mat(rows, cols, type);
+    }
+    leasedMats.add(mat);
+    return mat;
+  }
+
+  /** Leases a Bitmap of the given size and configuration. Its previous contents are kept. */
+  public Bitmap acquireBitmap(final int width, final int height, final Config config) {
+    final long key = bitmapKey(width, height, config);
+    final ArrayDeque<Bitmap> free = freeBitmaps.get(key);
+    Bitmap bitmap = free != null ? free.poll() : null;
+    if (bitmap == null) {
+      LOGGER.d("Allocating %dx%d Bitmap of config %s", width, height, config);
+      bitmap = Bitmap.createBitmap(width, height, config);
+    }
+    leasedBitmaps.add(bitmap);
+    return bitmap;
+  }
+
+  /** Releases {@code view}, a header over another Mat's data, at the end of the frame. */
+  public Mat track(final Mat view) {
+    views.add(view);
+    return view;
+  }
+
+  /** Ends the current frame, returning every buffer leased during it to the pool. */
+  public void endFrame() {
+    for (final Mat view : views) {
+      view.release();
+    }
+    views.clear();
+
+    for (final Mat mat : leasedMats) {
+      // OpenCV functions may have reallocated an output Mat to another size, so file it under what
+      // it is now.
+      final long key = matKey(mat.rows(), mat.cols(), mat.type());
+      ArrayDeque<Mat> free = freeMats.get(key);
+      if (free == null) {
+        free = new ArrayDeque<>();
+        freeMats.put(key, free);
+      }
+      free.add(mat);
+    }
+    leasedMats.clear();
+
+    for (final Bitmap bitmap : leasedBitmaps) {
+      final long key = bitmapKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+      ArrayDeque<Bitmap> free = freeBitmaps.get(key);
+      if (free == null) {
+        free = new ArrayDeque<>();
+        freeBitmaps.put(key, free);
+      }
+      free.add(bitmap);
+    }
+    leasedBitmaps.clear();
+  }
+
+  /**
+   * Frees the native memory of every pooled buffer. Buffers leased in the current frame are freed
+   * too, so only call this between frames, e.g. when the frame size changes or processing stops.
+   */
+  public void clear() {
+    endFrame();
+    for (int i = 0; i < freeMats.size(); ++i) {
+      for (final Mat mat : freeMats.valueAt(i)) {
+        mat.release();
+      }
+    }
+    freeMats.clear();
+    for (int i = 0; i < freeBitmaps.size(); ++i) {
+      for (final Bitmap bitmap : freeBitmaps.valueAt(i)) {
+        bitmap.recycle();
+      }
+    }
+    freeBitmaps.clear();
+  }
+
+  private static long matKey(final int rows, final int cols, final int type) {
+    return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+  }
+
+  private static long bitmapKey(final int width, final int height, final Config config) {
+    return ((long) height << 40) | ((long) width << 16) | config.ordinal();
+  }
+}
@@ -0,0 +1,416 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A chain of processing stages, each on its own thread, joined by bounded single-producer /
+ * single-consumer queues.
+ *
+ * <p>While stage N works on frame t, stage N - 1 can already work on frame t + 1, so the throughput
+ * is bounded by the slowest stage rather than by the sum of all stages. Frames are mutable holders
+ * owned by the caller: a frame that leaves the last stage, or that is dropped on the way, is handed
+ * to the {@link Recycler} so that the producer can reuse it.
+ *
+ * <p>Usage: add stages with {@link #addStage}, {@link #start()} the pipeline, then {@link #submit}
+ * frames from a single producer thread.
+ *
+ * @param <T> the frame type flowing through the pipeline
+ */
+public final class FramePipeline<T> implements Closeable {
+  private static final Logger LOGGER = new Logger();
+
+  /** What to do with a frame when the next stage has not caught up yet. */
+  public enum DropPolicy {
+    /** Replace the frame waiting for the next stage, if any. Keeps latency at a minimum. */
+    LATEST_WINS,
+    /** Wait until the next stage has room. No frame is lost, upstream stages slow down instead. */
+    BLOCK
+  }
+
+  /** One step of the pipeline. Runs on a thread dedicated to the stage. */
+  public interface Stage<T> {
+    void process(T frame);
+  }
+
+  /** Receives frames that finished the last stage or were dropped. Called from stage threads. */
+  public interface Recycler<T> {
+    void recycle(T frame);
+  }
+
+  /** Timing counters of a stage. Written by the stage thread only. */
+  public static final class StageStats {
+    private final String name;
+    private volatile long frames;
+    private volatile long dropped;
+    private volatile long totalNanos;
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+
+    StageStats(final String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Frames processed by the stage. */
+    public long getFrames() {
+      return frames;
+    }
+
+    /** Frames dropped in front of the stage. */
+    public long getDropped() {
+      return dropped;
+    }
+
+    public float getLastMs() {
+      return lastNanos / 1e6f;
+    }
+
+    public float getAverageMs() {
+      final long frames = this.frames;
+      return frames == 0 ? 0 : totalNanos / 1e6f / frames;
+    }
+
+    public float getMaxMs() {
+      return maxNanos / 1e6f;
+    }
+
+    void record(final long nanos) {
+      lastNanos = nanos;
+      totalNanos += nanos;
+      if (nanos > maxNanos) {
+        maxNanos = nanos;
+      }
+      ++frames;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %d frames, %d dropped, last %.1fms, avg %.1fms, max %.1fms",
+          name, frames, dropped, getLastMs(), getAverageMs(), getMaxMs());
+    }
+  }
+
+  private final String name;
+  private final int capacity;
+  private final DropPolicy dropPolicy;
+  private final Recycler<T> recycler;
+  private final List<String> stageNames = new ArrayList<>();
+  private final List<Stage<T>> stages = new ArrayList<>();
+  private final List<StageStats> stats = new ArrayList<>();
+  private final List<Thread> threads = new ArrayList<>();
+  // queues.get(i) feeds stages.get(i).
+  private final List<FrameQueue<T>> queues = new ArrayList<>();
+  private volatile boolean running = false;
+
+  /**
+   * Creates an empty pipeline.
+   *
+   * @param name prefix of the stage thread names
+   * @param capacity frames buffered in front of each stage with {@link DropPolicy#BLOCK}. {@link
+   *     DropPolicy#LATEST_WINS} always buffers a single frame.
+   * @param dropPolicy what to do when a stage is busy
+   * @param recycler receives frames that are done or dropped
+   */
+  public FramePipeline(
+      final String name,
+      final int capacity,
+      final DropPolicy dropPolicy,
+      final Recycler<T> recycler) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.name = name;
+    this.capacity = capacity;
+    this.dropPolicy = dropPolicy;
+    this.recycler = recycler;
+  }
+
+  /** Appends a stage. Must be called before {@link #start()}. */
+  public FramePipeline<T> addStage(final String stageName, final Stage<T> stage) {
+    if (running) {
+      throw new IllegalStateException("Pipeline " + name + " is already running");
+    }
+    stageNames.add(stageName);
+    stages.add(stage);
+    stats.add(new StageStats(stageName));
+    return this;
+  }
+
+  /** Starts one thread per stage. */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    if (stages.isEmpty()) {
+      throw new IllegalStateException("Pipeline " + name + " has no stages");
+    }
+    running = true;
+    for (int i = 0; i < stages.size(); ++i) {
+      queues.add(
+          dropPolicy == DropPolicy.LATEST_WINS
+              ? new LatestSlot<T>()
+              : new BlockingRing<T>(capacity));
+    }
+    for (int i = 0; i < stages.size(); ++i) {
+      final int index = i;
+      final Thread thread =
+          new Thread(() -> runStage(index), name + "-" + stageNames.get(index));
+      queues.get(i).setConsumer(thread);
+      threads.add(thread);
+    }
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+  }
+
+  /**
+   * Feeds a frame to the first stage. Must always be called from the same thread.
+   *
+   * @return false if the frame was not accepted because the pipeline is not running. The frame
+   *     then still belongs to the caller.
+   */
+  public boolean submit(final T frame) {
+    if (!running) {
+      return false;
+    }
+    hand(frame, 0);
+    return true;
+  }
+
+  /** Returns the timing counters of every stage, in stage order. */
+  public List<StageStats> getStats() {
+    return stats;
+  }
+
+  /** Stops the stage threads. Frames still in flight are recycled. */
+  @Override
+  public synchronized void close() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    for (final FrameQueue<T> queue : queues) {
+      queue.close();
+    }
+    for (final Thread thread : threads) {
+      thread.interrupt();
+    }
+    for (final Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    for (final FrameQueue<T> queue : queues) {
+      for (T frame = queue.poll(); frame != null; frame = queue.poll()) {
+        recycler.recycle(frame);
+      }
+    }
+    threads.clear();
+    queues.clear();
+  }
+
+  private void runStage(final int index) {
+    final Stage<T> stage = stages.get(index);
+    final StageStats stageStats = stats.get(index);
+    final FrameQueue<T> queue = queues.get(index);
+    final boolean isLast = index == stages.size() - 1;
+    try {
+      while (running) {
+        final T frame = queue.take();
+        final long start = System.nanoTime();
+        try {
+          stage.process(frame);
+        } catch (final RuntimeException e) {
+          LOGGER.e(e, "Stage %s failed, dropping frame", stageNames.get(index));
+          recycler.recycle(frame);
+          continue;
+        }
+        stageStats.record(System.nanoTime() - start);
+        if (isLast) {
+          recycler.recycle(frame);
+        } else {
+          hand(frame, index + 1);
+        }
+      }
+    } catch (final InterruptedException e) {
+      // Closed.
+    }
+  }
+
+  /** Hands {@code frame} to stage {@code index}, applying the drop policy. */
+  private void hand(final T frame, final int index) {
+    final T dropped = queues.get(index).put(frame);
+    if (dropped != null) {
+      ++stats.get(index).dropped;
+      recycler.recycle(dropped);
+    }
+  }
+
+  /** Single-producer / single-consumer queue in front of a stage. */
+  private interface FrameQueue<T> {
+    void setConsumer(Thread consumer);
+
+    /** Enqueues {@code frame}. Returns a frame that had to be dropped to make room, if any. */
+    T put(T frame);
+
+    /** Dequeues a frame, waiting for one if needed. */
+    T take() throws InterruptedException;
+
+    /** Dequeues a frame, or returns null if there is none. */
+    T poll();
+
+    /** Wakes up a producer waiting for room, which then gets its frame back. */
+    void close();
+  }
+
+  /** One-frame mailbox in which a new frame replaces the one waiting. */
+  private static final class LatestSlot<T> implements FrameQueue<T> {
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private volatile Thread consumer;
+
+    @Override
+    public void setConsumer(final Thread consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    public T put(final T frame) {
+      final T previous = slot.getAndSet(frame);
+      LockSupport.unpark(consumer);
+      return previous;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+      while (true) {
+        final T frame = slot.getAndSet(null);
+        if (frame != null) {
+          return frame;
+        }
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    }
+
+    @Override
+    public T poll() {
+      return slot.getAndSet(null);
+    }
+
+    @Override
+    public void close() {
+      // Producers never wait.
+    }
+  }
+
+  /** Bounded ring buffer whose producer waits while it is full. */
+  private static final class BlockingRing<T> implements FrameQueue<T> {
+    private final AtomicReferenceArray<T> items;
+    private final int mask;
+    // Next index to write, only advanced by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    // Next index to read, only advanced by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    private volatile Thread consumer;
+    private volatile Thread producer;
+    private volatile boolean closed = false;
+
+    BlockingRing(final int capacity) {
+      final int size = Integer.highestOneBit(capacity - 1) << 1;
+      items = new AtomicReferenceArray<>(Math.max(size, 1));
+      mask = items.length() - 1;
+    }
+
+    @Override
+    public void setConsumer(final Thread consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    public T put(final T frame) {
+      producer = Thread.currentThread();
+      final long index = tail.get();
+      while (index - head.get() > mask) {
+        if (closed) {
+          // Shutting down: give the frame back instead of waiting forever.
+          return frame;
+        }
+        LockSupport.park(this);
+      }
+      items.lazySet((int) index & mask, frame);
+      tail.lazySet(index + 1);
+      LockSupport.unpark(consumer);
+      return null;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+      while (true) {
+        final T frame = poll();
+        if (frame != null) {
+          return frame;
+        }
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    }
+
+    @Override
+    public T poll() {
+      final long index = head.get();
+      if (index == tail.get()) {
+        return null;
+      }
+      final int slot = (int) index & mask;
+      final T frame = items.get(slot);
+      items.lazySet(slot, null);
+      head.lazySet(index + 1);
+      final Thread producer = this.producer;
+      if (producer != null) {
+        LockSupport.unpark(producer);
+      }
+      return frame;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      final Thread producer = this.producer;
+      if (producer != null) {
+        LockSupport.unpark(producer);
+      }
+    }
+  }
+}
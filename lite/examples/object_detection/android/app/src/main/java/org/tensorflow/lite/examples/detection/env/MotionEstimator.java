@@ -0,0 +1,98 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Estimates how much a frame changed from a reference frame, from its Y (luminance) plane only.
+ *
+ * <p>The plane is reduced to a small grid of cell averages, each from a few sampled pixels, and
+ * the score is the mean absolute difference of the cells with the reference grid, scaled to [0,
+ * 1]. That costs a few thousand byte reads per frame, far less than running the detector.
+ */
+public final class MotionEstimator {
+  // Pixels sampled per cell, in each direction.
+  private static final int SAMPLES = 4;
+
+  private final int gridWidth;
+  private final int gridHeight;
+  private int[] current;
+  private int[] reference;
+  private boolean hasReference = false;
+  private int frameWidth;
+  private int frameHeight;
+
+  public MotionEstimator(final int gridWidth, final int gridHeight) {
+    this.gridWidth = gridWidth;
+    this.gridHeight = gridHeight;
+    current = new int[gridWidth * gridHeight];
+    reference = new int[gridWidth * gridHeight];
+  }
+
+  /**
+   * Samples the luminance plane of a frame and returns its motion score against the reference
+   * frame, 1 if there is none yet or the frame size changed.
+   */
+  public float update(
+      final byte[] luminance, final int width, final int height, final int rowStride) {
+    if (width != frameWidth || height != frameHeight) {
+      frameWidth = width;
+      frameHeight = height;
+      hasReference = false;
+    }
+    final int cellWidth = Math.max(1, width / gridWidth);
+    final int cellHeight = Math.max(1, height / gridHeight);
+    final int stepX = Math.max(1, cellWidth / SAMPLES);
+    final int stepY = Math.max(1, cellHeight / SAMPLES);
+    long difference = 0;
+    for (int gy = 0; gy < gridHeight; ++gy) {
+      final int top = Math.min(gy * cellHeight, height - 1);
+      final int bottom = Math.min(top + cellHeight, height);
+      for (int gx = 0; gx < gridWidth; ++gx) {
+        final int left = Math.min(gx * cellWidth, width - 1);
+        final int right = Math.min(left + cellWidth, width);
+        int sum = 0;
+        int count = 0;
+        for (int y = top + stepY / 2; y < bottom; y += stepY) {
+          final int rowOffset = y * rowStride;
+          for (int x = left + stepX / 2; x < right; x += stepX) {
+            sum += luminance[rowOffset + x] & 0xff;
+            ++count;
+          }
+        }
+        final int cell = gy * gridWidth + gx;
+        current[cell] = count == 0 ? 0 : sum / count;
+        difference += Math.abs(current[cell] - reference[cell]);
+      }
+    }
+    if (!hasReference) {
+      return 1;
+    }
+    return difference / (255f * gridWidth * gridHeight);
+  }
+
+  /** Makes the frame of the last {@link #update} the reference the next frames are compared to. */
+  public void markReference() {
+    final int[] swap = reference;
+    reference = current;
+    current = swap;
+    hasReference = true;
+  }
+
+  /** Forgets the reference frame, the next frame scores 1. */
+  public void reset() {
+    hasReference = false;
+  }
+}
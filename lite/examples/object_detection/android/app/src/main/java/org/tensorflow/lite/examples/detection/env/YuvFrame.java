@@ -0,0 +1,91 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable copy of a YUV camera frame, so that the camera buffer can be returned right away while
+ * the frame is processed on another thread. The planes are only reallocated when they grow.
+ */
+public final class YuvFrame {
+  private byte[] yData = new byte[0];
+  private byte[] uData = new byte[0];
+  private byte[] vData = new byte[0];
+  private boolean isNV21;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** Copies an NV21 (YUV420SP) frame. */
+  public void setNV21(final byte[] input, final int width, final int height) {
+    final int size = ImageUtils.getYUVByteSize(width, height);
+    yData = copy(input, size, yData);
+    isNV21 = true;
+    this.width = width;
+    this.height = height;
+    yRowStride = width;
+    uvRowStride = width;
+    uvPixelStride = 2;
+  }
+
+  /** Copies a YUV_420_888 frame given as three planes. */
+  public void setYUV420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    this.yData = copy(yData, yData.length, this.yData);
+    this.uData = copy(uData, uData.length, this.uData);
+    this.vData = copy(vData, vData.length, this.vData);
+    isNV21 = false;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+  }
+
+  /** Writes the frame into a model input buffer, see {@link YuvToInputConverter}. */
+  public void writeModelInput(final YuvToInputConverter converter, final ByteBuffer out) {
+    if (isNV21) {
+      converter.convertYUV420SP(yData, width, height, out);
+    } else {
+      converter.convertYUV420(
+          yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+  }
+
+  private static byte[] copy(final byte[] src, final int length, final byte[] dst) {
+    final byte[] out = dst.length >= length ? dst : new byte[length];
+    System.arraycopy(src, 0, out, 0, length);
+    return out;
+  }
+}
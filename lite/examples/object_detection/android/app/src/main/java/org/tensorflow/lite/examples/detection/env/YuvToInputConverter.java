@@ -0,0 +1,322 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts a YUV camera frame straight into the input tensor of a square detection model.
+ *
+ * <p>Crop, pad-to-square, resize and rotation are folded into a per-pixel sampling map that is
+ * computed once per geometry. Each frame then only reads the source pixels that end up in the model
+ * input and writes them, quantized or normalized, into the model's input buffer. This replaces
+ * the full frame ARGB conversion, the Bitmap and OpenCV Mat copies and the final pixel extraction.
+ *
+ * <p>Resizing uses nearest neighbour sampling. Padding is black, as in the OpenCV path.
+ */
+public final class YuvToInputConverter {
+  // Normalization used by the float SSD models.
+  private static final float DEFAULT_MEAN = 127.5f;
+  private static final float DEFAULT_STD = 127.5f;
+  // Marks output pixels that fall into the padding around the crop.
+  private static final int PAD = -1;
+
+  private final int inputSize;
+  private final boolean isQuantized;
+
+  // For every output pixel, in output order, the offset of its source pixel in the luma plane and
+  // in the chroma planes, relative to the start of the frame, or PAD.
+  private final int[] yIndex;
+  private final int[] uvIndex;
+  private final byte[] byteValues;
+  private final float[] floatValues;
+  // Normalized float value of every channel byte, for float models.
+  private final float[] normalized = new float[256];
+
+  // Current geometry.
+  private int frameWidth = -1;
+  private int frameHeight = -1;
+  private int yRowStride = -1;
+  private int uvRowStride = -1;
+  private int uvPixelStride = -1;
+  private int requestedCropX;
+  private int requestedCropY;
+  private int requestedCropWidth;
+  private int requestedCropHeight;
+  private int rotation;
+  // Region actually sampled, the requested crop or the whole frame.
+  private int cropX;
+  private int cropY;
+  private int cropWidth;
+  private int cropHeight;
+  private int paddedSize;
+  private int padLeft;
+  private int padTop;
+
+  private ByteBuffer target;
+  private FloatBuffer targetFloats;
+
+  /** Creates a converter with the normalization of the prepackaged float models. */
+  public YuvToInputConverter(final int inputSize, final boolean isQuantized) {
+    this(inputSize, isQuantized, DEFAULT_MEAN, DEFAULT_STD);
+  }
+
+  /**
+   * Creates a converter.
+   *
+   * @param inputSize width and height of the model input
+   * @param isQuantized whether the model takes one uint8 per channel rather than a float
+   * @param mean subtracted from every channel of a float input
+   * @param std every channel of a float input is divided by this after subtracting the mean
+   */
+  public YuvToInputConverter(
+      final int inputSize, final boolean isQuantized, final float mean, final float std) {
+    this.inputSize = inputSize;
+    this.isQuantized = isQuantized;
+    yIndex = new int[inputSize * inputSize];
+    uvIndex = new int[inputSize * inputSize];
+    if (isQuantized) {
+      byteValues = new byte[inputSize * inputSize * 3];
+      floatValues = null;
+    } else {
+      byteValues = null;
+      floatValues = new float[inputSize * inputSize * 3];
+      for (int i = 0; i < normalized.length; ++i) {
+        normalized[i] = (i - mean) / std;
+      }
+    }
+  }
+
+  /**
+   * Sets the region of the frame fed to the model and how it is rotated. The region is padded to a
+   * square around its center and then scaled to the model input size. A region with zero width or
+   * height selects the whole frame. Cheap when nothing changed.
+   *
+   * @param rotation clockwise rotation applied to the model input, a multiple of 90
+   */
+  public void setCrop(
+      final int cropX,
+      final int cropY,
+      final int cropWidth,
+      final int cropHeight,
+      final int rotation) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    final int normalizedRotation = ((rotation % 360) + 360) % 360;
+    if (cropX != requestedCropX
+        || cropY != requestedCropY
+        || cropWidth != requestedCropWidth
+        || cropHeight != requestedCropHeight
+        || normalizedRotation != this.rotation) {
+      requestedCropX = cropX;
+      requestedCropY = cropY;
+      requestedCropWidth = cropWidth;
+      requestedCropHeight = cropHeight;
+      this.rotation = normalizedRotation;
+      frameWidth = -1; // Forces the sampling map to be rebuilt.
+    }
+  }
+
+  /** Side of the padded square region, in frame pixels. */
+  public int getPaddedSize() {
+    return paddedSize;
+  }
+
+  /**
+   * Maps a box from model input coordinates back into frame coordinates, undoing rotation, scale,
+   * padding and crop.
+   */
+  public void mapToFrame(final RectF box) {
+    final float last = inputSize;
+    final float left = box.left;
+    final float top = box.top;
+    final float right = box.right;
+    final float bottom = box.bottom;
+    switch (rotation) {
+      case 90:
+        box.set(top, last - right, bottom, last - left);
+        break;
+      case 180:
+        box.set(last - right, last - bottom, last - left, last - top);
+        break;
+      case 270:
+        box.set(last - bottom, left, last - top, right);
+        break;
+      default:
+        break;
+    }
+    final float scale = paddedSize / (float) inputSize;
+    box.left = box.left * scale - padLeft + cropX;
+    box.right = box.right * scale - padLeft + cropX;
+    box.top = box.top * scale - padTop + cropY;
+    box.bottom = box.bottom * scale - padTop + cropY;
+  }
+
+  /**
+   * Writes a YUV_420_888 frame, as delivered by the camera2 API, into {@code out} starting at
+   * index 0. {@code out} must be a native order buffer of the model input size.
+   */
+  public void convertYUV420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final ByteBuffer out) {
+    updateMap(width, height, yRowStride, uvRowStride, uvPixelStride);
+    convert(yData, uData, vData, 0, 0, out);
+  }
+
+  /** Writes an NV21 (YUV420SP) frame into {@code out}, see {@link #convertYUV420}. */
+  public void convertYUV420SP(
+      final byte[] input, final int width, final int height, final ByteBuffer out) {
+    updateMap(width, height, width, width, 2);
+    final int frameSize = width * height;
+    convert(input, input, input, frameSize + 1, frameSize, out);
+  }
+
+  private void convert(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int uOffset,
+      final int vOffset,
+      final ByteBuffer out) {
+    final int numPixels = inputSize * inputSize;
+    if (isQuantized) {
+      for (int i = 0, j = 0; i < numPixels; ++i) {
+        final int rgb = sample(yData, uData, vData, uOffset, vOffset, i);
+        byteValues[j++] = (byte) (rgb >> 16);
+        byteValues[j++] = (byte) (rgb >> 8);
+        byteValues[j++] = (byte) rgb;
+      }
+      out.rewind();
+      out.put(byteValues);
+      out.rewind();
+    } else {
+      for (int i = 0, j = 0; i < numPixels; ++i) {
+        final int rgb = sample(yData, uData, vData, uOffset, vOffset, i);
+        floatValues[j++] = normalized[(rgb >> 16) & 0xFF];
+        floatValues[j++] = normalized[(rgb >> 8) & 0xFF];
+        floatValues[j++] = normalized[rgb & 0xFF];
+      }
+      if (target != out) {
+        target = out;
+        targetFloats = out.asFloatBuffer();
+      }
+      targetFloats.rewind();
+      targetFloats.put(floatValues);
+      out.rewind();
+    }
+  }
+
+  private int sample(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int uOffset,
+      final int vOffset,
+      final int i) {
+    final int yOffset = yIndex[i];
+    if (yOffset == PAD) {
+      return 0;
+    }
+    final int uvOffset = uvIndex[i];
+    return YuvToRgbConverter.yuvToRgb(
+        0xff & yData[yOffset], 0xff & uData[uOffset + uvOffset], 0xff & vData[vOffset + uvOffset]);
+  }
+
+  private void updateMap(
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    if (width == frameWidth
+        && height == frameHeight
+        && yRowStride == this.yRowStride
+        && uvRowStride == this.uvRowStride
+        && uvPixelStride == this.uvPixelStride) {
+      return;
+    }
+    frameWidth = width;
+    frameHeight = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+
+    if (requestedCropWidth <= 0 || requestedCropHeight <= 0) {
+      cropX = 0;
+      cropY = 0;
+      cropWidth = width;
+      cropHeight = height;
+    } else {
+      cropX = requestedCropX;
+      cropY = requestedCropY;
+      cropWidth = requestedCropWidth;
+      cropHeight = requestedCropHeight;
+    }
+    paddedSize = Math.max(cropWidth, cropHeight);
+    padLeft = (paddedSize - cropWidth) / 2;
+    padTop = (paddedSize - cropHeight) / 2;
+
+    final int last = inputSize - 1;
+    for (int oy = 0; oy < inputSize; ++oy) {
+      for (int ox = 0; ox < inputSize; ++ox) {
+        // Undo the rotation to find the pixel of the unrotated square.
+        final int rx;
+        final int ry;
+        switch (rotation) {
+          case 90:
+            rx = oy;
+            ry = last - ox;
+            break;
+          case 180:
+            rx = last - ox;
+            ry = last - oy;
+            break;
+          case 270:
+            rx = last - oy;
+            ry = ox;
+            break;
+          default:
+            rx = ox;
+            ry = oy;
+            break;
+        }
+        // Nearest pixel center in the padded square, then back into the crop and the frame.
+        final int px = (int) ((rx + 0.5f) * paddedSize / inputSize) - padLeft;
+        final int py = (int) ((ry + 0.5f) * paddedSize / inputSize) - padTop;
+        final int i = oy * inputSize + ox;
+        if (px < 0 || px >= cropWidth || py < 0 || py >= cropHeight) {
+          yIndex[i] = PAD;
+          uvIndex[i] = PAD;
+        } else {
+          final int sx = cropX + px;
+          final int sy = cropY + py;
+          yIndex[i] = sy * yRowStride + sx;
+          uvIndex[i] = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.offline;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a log written by {@link DetectionLogWriter}, one frame at a time. The same arrays are
+ * reused for every frame.
+ */
+public final class DetectionLogReader implements Closeable {
+  private final DataInputStream in;
+  private final int frameWidth;
+  private final int frameHeight;
+  private final Map<Integer, String> labels = new HashMap<>();
+
+  private int frameIndex = -1;
+  private long timestampUs;
+  private int count;
+  private int[] classIds = new int[16];
+  private float[] values = new float[16 * 5];
+
+  public DetectionLogReader(final File file) throws IOException {
+    this(new FileInputStream(file));
+  }
+
+  public DetectionLogReader(final InputStream stream) throws IOException {
+    in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+    if (in.readInt() != DetectionLogWriter.MAGIC) {
+      throw new IOException("Not a detection log");
+    }
+    final int version = in.readUnsignedShort();
+    if (version != DetectionLogWriter.VERSION) {
+      throw new IOException("Unsupported detection log version " + version);
+    }
+    frameWidth = in.readInt();
+    frameHeight = in.readInt();
+  }
+
+  public int getFrameWidth() {
+    return frameWidth;
+  }
+
+  public int getFrameHeight() {
+    return frameHeight;
+  }
+
+  /** Reads the next frame record. Returns false at the end of the log. */
+  public boolean next() throws IOException {
+    while (true) {
+      final int tag;
+      try {
+        tag = in.readByte();
+      } catch (final EOFException e) {
+        return false;
+      }
+      if (tag == DetectionLogWriter.TAG_LABEL) {
+        final int classId = in.readShort();
+        labels.put(classId, in.readUTF());
+      } else if (tag == DetectionLogWriter.TAG_FRAME) {
+        readFrame();
+        return true;
+      } else {
+        throw new IOException("Corrupt detection log, unknown record " + tag);
+      }
+    }
+  }
+
+  private void readFrame() throws IOException {
+    frameIndex = in.readInt();
+    timestampUs = in.readLong();
+    count = in.readUnsignedShort();
+    if (classIds.length < count) {
+      classIds = new int[count];
+      values = new float[count * 5];
+    }
+    for (int i = 0; i < count; ++i) {
+      classIds[i] = in.readShort();
+      final int j = i * 5;
+      for (int k = 0; k < 5; ++k) {
+        values[j + k] = in.readFloat();
+      }
+    }
+  }
+
+  public int getFrameIndex() {
+    return frameIndex;
+  }
+
+  public long getTimestampUs() {
+    return timestampUs;
+  }
+
+  /** Number of detections in the current frame. */
+  public int size() {
+    return count;
+  }
+
+  public int getClassId(final int i) {
+    return classIds[i];
+  }
+
+  public String getLabel(final int i) {
+    return labels.get(classIds[i]);
+  }
+
+  public float getScore(final int i) {
+    return values[i * 5];
+  }
+
+  public float getLeft(final int i) {
+    return values[i * 5 + 1];
+  }
+
+  public float getTop(final int i) {
+    return values[i * 5 + 2];
+  }
+
+  public float getRight(final int i) {
+    return values[i * 5 + 3];
+  }
+
+  public float getBottom(final int i) {
+    return values[i * 5 + 4];
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,142 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.offline;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes per-frame detections into a compact binary log, read back by {@link DetectionLogReader}.
+ *
+ * <p>The log is plain Java data, big endian, so it can be processed off-device. It starts with
+ * {@link #MAGIC} and {@link #VERSION} followed by the frame size, then a sequence of records, each
+ * starting with a tag byte:
+ *
+ * <ul>
+ *   <li>{@link #TAG_LABEL}: {@code short classId, UTF label}, written the first time a class shows
+ *       up, before the frame that uses it.
+ *   <li>{@link #TAG_FRAME}: {@code int frameIndex, long timestampUs, short count}, then for every
+ *       detection {@code short classId, float score, float left, top, right, bottom}, with the box
+ *       in frame pixels.
+ * </ul>
+ */
+public final class DetectionLogWriter implements Closeable {
+  static final int MAGIC = 0x54464f44; // "TFOD"
+  static final int VERSION = 1;
+  static final byte TAG_LABEL = 'L';
+  static final byte TAG_FRAME = 'F';
+
+  private final DataOutputStream out;
+  private final Map<Integer, String> labels = new HashMap<>();
+  // Detections of the frame being written, flushed by endFrame().
+  private int frameIndex = -1;
+  private long timestampUs;
+  private int count;
+  private short[] classIds = new short[16];
+  private float[] values = new float[16 * 5];
+
+  public DetectionLogWriter(final File file, final int frameWidth, final int frameHeight)
+      throws IOException {
+    this(new FileOutputStream(file), frameWidth, frameHeight);
+  }
+
+  public DetectionLogWriter(final OutputStream stream, final int frameWidth, final int frameHeight)
+      throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    out.writeInt(frameWidth);
+    out.writeInt(frameHeight);
+  }
+
+  /** Starts the record of a frame. Frames without detections are recorded too. */
+  public void beginFrame(final int frameIndex, final long timestampUs) {
+    this.frameIndex = frameIndex;
+    this.timestampUs = timestampUs;
+    count = 0;
+  }
+
+  /** Adds a detection to the current frame, with its box in frame pixels. */
+  public void addDetection(
+      final int classId,
+      final String label,
+      final float score,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom)
+      throws IOException {
+    if (frameIndex < 0) {
+      throw new IllegalStateException("addDetection() called outside of a frame");
+    }
+    if (classId < 0 || classId > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Class id out of range: " + classId);
+    }
+    if (!labels.containsKey(classId)) {
+      labels.put(classId, label);
+      out.writeByte(TAG_LABEL);
+      out.writeShort(classId);
+      out.writeUTF(label != null ? label : "");
+    }
+    if (count == classIds.length) {
+      final short[] newClassIds = new short[count * 2];
+      System.arraycopy(classIds, 0, newClassIds, 0, count);
+      classIds = newClassIds;
+      final float[] newValues = new float[count * 2 * 5];
+      System.arraycopy(values, 0, newValues, 0, count * 5);
+      values = newValues;
+    }
+    classIds[count] = (short) classId;
+    final int j = count * 5;
+    values[j] = score;
+    values[j + 1] = left;
+    values[j + 2] = top;
+    values[j + 3] = right;
+    values[j + 4] = bottom;
+    ++count;
+  }
+
+  /** Writes the record of the current frame. */
+  public void endFrame() throws IOException {
+    if (frameIndex < 0) {
+      throw new IllegalStateException("endFrame() called outside of a frame");
+    }
+    out.writeByte(TAG_FRAME);
+    out.writeInt(frameIndex);
+    out.writeLong(timestampUs);
+    out.writeShort(count);
+    for (int i = 0; i < count; ++i) {
+      out.writeShort(classIds[i]);
+      final int j = i * 5;
+      for (int k = 0; k < 5; ++k) {
+        out.writeFloat(values[j + k]);
+      }
+    }
+    frameIndex = -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,288 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.offline;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor.Suppression;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Detections;
+
+/**
+ * Runs a {@link Detector} over every frame of a video file, without any UI, and writes the
+ * detections to a {@link DetectionLogWriter} log.
+ *
+ * <p>Frames are decoded with {@link MediaCodec} into YUV images and sampled straight into the
+ * detector input with a {@link YuvToInputConverter}, so no Bitmap or display is involved. The raw
+ * detections go through the same {@link DetectionPostprocessor} as the live preview. By default
+ * frames are fed as fast as the detector keeps up; {@link #setTargetFrameRate} paces them instead.
+ * {@link #run} blocks, call it from a background thread.
+ */
+public final class VideoDetectionEngine {
+  private static final Logger LOGGER = new Logger();
+
+  private static final long DEQUEUE_TIMEOUT_US = 10000;
+  private static final int MAX_DETECTIONS = 10;
+  private static final float MINIMUM_CONFIDENCE = 0.5f;
+  private static final float NMS_IOU_THRESHOLD = 0.5f;
+  private static final float SOFT_NMS_SIGMA = 0.5f;
+
+  /** Receives progress updates from the decoding thread. */
+  public interface ProgressListener {
+    void onFrameDetected(int frameIndex, long timestampUs, Detections detections);
+  }
+
+  /** Summary of a run. */
+  public static final class Stats {
+    public int frames;
+    public long elapsedMs;
+    public long detectionMs;
+
+    public float getFramesPerSecond() {
+      return elapsedMs == 0 ? 0 : frames * 1000f / elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d frames in %dms (%.1f fps), %.1fms detection per frame",
+          frames, elapsedMs, getFramesPerSecond(), frames == 0 ? 0 : detectionMs / (float) frames);
+    }
+  }
+
+  private final Detector detector;
+  private final YuvToInputConverter converter;
+  private final Detections rawDetections = new Detections(MAX_DETECTIONS);
+  private final Detections detections = new Detections(MAX_DETECTIONS);
+  private final RectF box = new RectF();
+  private final byte[][] planes = new byte[3][];
+  private DetectionPostprocessor postprocessor =
+      new DetectionPostprocessor(
+          MINIMUM_CONFIDENCE, Suppression.HARD, NMS_IOU_THRESHOLD, SOFT_NMS_SIGMA, MAX_DETECTIONS);
+  private float targetFrameRate = 0;
+  private ProgressListener listener;
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param detector detector fed through its input buffer, see {@link Detector#getInputBuffer()}
+   * @param inputSize width and height of the model input
+   */
+  public VideoDetectionEngine(final Detector detector, final int inputSize) {
+    this.detector = detector;
+    converter = new YuvToInputConverter(inputSize, detector.isInputQuantized());
+  }
+
+  /**
+   * Filters and suppresses the detections of each frame before they are written. Defaults to hard
+   * NMS over the detections scoring at least 0.5.
+   */
+  public void setPostprocessor(final DetectionPostprocessor postprocessor) {
+    this.postprocessor = postprocessor;
+  }
+
+  /** Feeds frames at this rate instead of as fast as possible. 0 disables pacing. */
+  public void setTargetFrameRate(final float framesPerSecond) {
+    targetFrameRate = framesPerSecond;
+  }
+
+  public void setProgressListener(final ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /** Stops a running {@link #run} after the current frame. Safe to call from any thread. */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /** Detects objects in every frame of {@code video} and writes them to {@code output}. */
+  public Stats run(final File video, final File output) throws IOException {
+    cancelled = false;
+    final MediaExtractor extractor = new MediaExtractor();
+    MediaCodec codec = null;
+    DetectionLogWriter writer = null;
+    try {
+      extractor.setDataSource(video.getPath());
+      final int track = selectVideoTrack(extractor);
+      if (track < 0) {
+        throw new IOException("No video track in " + video);
+      }
+      extractor.selectTrack(track);
+      final MediaFormat format = extractor.getTrackFormat(track);
+      final int rotation =
+          format.containsKey(MediaFormat.KEY_ROTATION)
+              ? format.getInteger(MediaFormat.KEY_ROTATION)
+              : 0;
+      LOGGER.i("Decoding %s: %s", video, format);
+
+      codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+      format.setInteger(
+          MediaFormat.KEY_COLOR_FORMAT, CodecCapabilities.COLOR_FormatYUV420Flexible);
+      codec.configure(format, null, null, 0);
+      codec.start();
+
+      writer =
+          new DetectionLogWriter(
+              output,
+              format.getInteger(MediaFormat.KEY_WIDTH),
+              format.getInteger(MediaFormat.KEY_HEIGHT));
+      return decode(extractor, codec, writer, rotation);
+    } finally {
+      if (codec != null) {
+        codec.release();
+      }
+      extractor.release();
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  private Stats decode(
+      final MediaExtractor extractor,
+      final MediaCodec codec,
+      final DetectionLogWriter writer,
+      final int rotation)
+      throws IOException {
+    final Stats stats = new Stats();
+    final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    final long startTime = SystemClock.uptimeMillis();
+    boolean inputDone = false;
+    boolean outputDone = false;
+    while (!outputDone && !cancelled) {
+      if (!inputDone) {
+        final int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+        if (inputIndex >= 0) {
+          final ByteBuffer buffer = codec.getInputBuffer(inputIndex);
+          final int size = extractor.readSampleData(buffer, 0);
+          if (size < 0) {
+            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+          } else {
+            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+          }
+        }
+      }
+
+      final int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+      if (outputIndex < 0) {
+        continue;
+      }
+      if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+        outputDone = true;
+      }
+      if (info.size > 0) {
+        final Image image = codec.getOutputImage(outputIndex);
+        if (image != null) {
+          pace(startTime, stats.frames);
+          final long detectionStart = SystemClock.uptimeMillis();
+          detect(image, rotation);
+          stats.detectionMs += SystemClock.uptimeMillis() - detectionStart;
+          image.close();
+          write(writer, stats.frames, info.presentationTimeUs);
+          if (listener != null) {
+            listener.onFrameDetected(stats.frames, info.presentationTimeUs, detections);
+          }
+          ++stats.frames;
+        }
+      }
+      codec.releaseOutputBuffer(outputIndex, false);
+    }
+    stats.elapsedMs = SystemClock.uptimeMillis() - startTime;
+    LOGGER.i("Video detection done: %s", stats);
+    return stats;
+  }
+
+  /** Waits until frame {@code frameIndex} is due, when a target frame rate is set. */
+  private void pace(final long startTime, final int frameIndex) {
+    if (targetFrameRate <= 0) {
+      return;
+    }
+    final long dueTime = startTime + (long) (frameIndex * 1000 / targetFrameRate);
+    final long delay = dueTime - SystemClock.uptimeMillis();
+    if (delay > 0) {
+      SystemClock.sleep(delay);
+    }
+  }
+
+  private void detect(final Image image, final int rotation) {
+    Trace.beginSection("detectVideoFrame");
+    final Image.Plane[] imagePlanes = image.getPlanes();
+    for (int i = 0; i < 3; ++i) {
+      final ByteBuffer buffer = imagePlanes[i].getBuffer();
+      if (planes[i] == null || planes[i].length < buffer.remaining()) {
+        planes[i] = new byte[buffer.remaining()];
+      }
+      buffer.get(planes[i], 0, buffer.remaining());
+    }
+    final Rect crop = image.getCropRect();
+    converter.setCrop(crop.left, crop.top, crop.width(), crop.height(), rotation);
+    converter.convertYUV420(
+        planes[0],
+        planes[1],
+        planes[2],
+        image.getWidth(),
+        image.getHeight(),
+        imagePlanes[0].getRowStride(),
+        imagePlanes[1].getRowStride(),
+        imagePlanes[1].getPixelStride(),
+        detector.getInputBuffer());
+    detector.recognizeInputBuffer(rawDetections);
+    postprocessor.run(rawDetections, detections);
+    Trace.endSection();
+  }
+
+  private void write(final DetectionLogWriter writer, final int frameIndex, final long timestampUs)
+      throws IOException {
+    writer.beginFrame(frameIndex, timestampUs);
+    for (int i = 0; i < detections.size(); ++i) {
+      detections.getLocation(i, box);
+      converter.mapToFrame(box);
+      writer.addDetection(
+          detections.getClassId(i),
+          detections.getTitle(i),
+          detections.getScore(i),
+          box.left,
+          box.top,
+          box.right,
+          box.bottom);
+    }
+    writer.endFrame();
+  }
+
+  private static int selectVideoTrack(final MediaExtractor extractor) {
+    for (int i = 0; i < extractor.getTrackCount(); ++i) {
+      final String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+      if (mime != null && mime.startsWith("video/")) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
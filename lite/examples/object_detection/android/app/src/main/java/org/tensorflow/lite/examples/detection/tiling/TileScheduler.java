@@ -0,0 +1,207 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tiling;
+
+/**
+ * Splits a frame into overlapping square tiles and picks the ones to detect on each round.
+ *
+ * <p>Tiles are {@code tileSize} wide, the model input size, so that objects are detected at their
+ * native resolution, and neighbours overlap by at least {@code minOverlap} of a tile. A tile is
+ * active while it saw a detection in the last {@code holdRounds} rounds. Each round detects the
+ * active tiles, the most recently hit first, plus inactive tiles taken in turn to find new objects,
+ * {@code maxTilesPerRound} tiles in total. As long as there is more than one tile per round, one of
+ * them is always kept for the inactive tiles, so every tile is visited eventually.
+ *
+ * <p>Not thread safe.
+ */
+public final class TileScheduler {
+  private final int tileSize;
+  private final float minOverlap;
+  private final int maxTilesPerRound;
+  private final int holdRounds;
+
+  private int frameWidth = -1;
+  private int frameHeight = -1;
+  private int tileWidth;
+  private int tileHeight;
+  private int columns;
+  private int rows;
+  private int[] tileLeft = new int[0];
+  private int[] tileTop = new int[0];
+  // Round of the last detection in every tile.
+  private long[] lastHit = new long[0];
+  private int[] activeTiles = new int[0];
+  private long round;
+  // Next inactive tile to visit.
+  private int sweep;
+
+  /**
+   * @param tileSize side of a tile, in frame pixels
+   * @param minOverlap overlap of neighbouring tiles, as a fraction of a tile, in [0, 1)
+   * @param maxTilesPerRound tiles detected per round at most
+   * @param holdRounds rounds a tile stays active after a detection
+   */
+  public TileScheduler(
+      final int tileSize,
+      final float minOverlap,
+      final int maxTilesPerRound,
+      final int holdRounds) {
+    if (tileSize <= 0 || minOverlap < 0 || minOverlap >= 1 || maxTilesPerRound <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid tiling " + tileSize + ", " + minOverlap + ", " + maxTilesPerRound);
+    }
+    this.tileSize = tileSize;
+    this.minOverlap = minOverlap;
+    this.maxTilesPerRound = maxTilesPerRound;
+    this.holdRounds = holdRounds;
+  }
+
+  /** Lays the tiles out over a frame of this size, unless it already is. */
+  public void setFrameSize(final int width, final int height) {
+    if (width == frameWidth && height == frameHeight) {
+      return;
+    }
+    frameWidth = width;
+    frameHeight = height;
+    tileWidth = Math.min(tileSize, width);
+    tileHeight = Math.min(tileSize, height);
+    columns = countTiles(width, tileWidth);
+    rows = countTiles(height, tileHeight);
+    final int count = columns * rows;
+    tileLeft = new int[count];
+    tileTop = new int[count];
+    lastHit = new long[count];
+    activeTiles = new int[count];
+    for (int row = 0; row < rows; ++row) {
+      for (int column = 0; column < columns; ++column) {
+        final int tile = row * columns + column;
+        tileLeft[tile] = position(column, columns, width, tileWidth);
+        tileTop[tile] = position(row, rows, height, tileHeight);
+      }
+    }
+    reset();
+  }
+
+  /** Forgets the detections, every tile is inactive again. */
+  public void reset() {
+    for (int tile = 0; tile < lastHit.length; ++tile) {
+      lastHit[tile] = Long.MIN_VALUE / 2;
+    }
+    sweep = 0;
+  }
+
+  public int getMaxTilesPerRound() {
+    return maxTilesPerRound;
+  }
+
+  public int getTileCount() {
+    return tileLeft.length;
+  }
+
+  public int getTileLeft(final int tile) {
+    return tileLeft[tile];
+  }
+
+  public int getTileTop(final int tile) {
+    return tileTop[tile];
+  }
+
+  public int getTileWidth() {
+    return tileWidth;
+  }
+
+  public int getTileHeight() {
+    return tileHeight;
+  }
+
+  /** Whether the tile saw a detection in the last {@code holdRounds} rounds. */
+  public boolean isActive(final int tile) {
+    return round - lastHit[tile] <= holdRounds;
+  }
+
+  /**
+   * Starts a round and writes the tiles to detect in it into {@code tiles}, which must hold {@code
+   * maxTilesPerRound} tiles. Returns how many there are.
+   */
+  public int selectTiles(final int[] tiles) {
+    ++round;
+    int numActive = 0;
+    for (int tile = 0; tile < lastHit.length; ++tile) {
+      if (isActive(tile)) {
+        // Insertion by decreasing last hit, there are only a few tiles.
+        int i = numActive++;
+        for (; i > 0 && lastHit[activeTiles[i - 1]] < lastHit[tile]; --i) {
+          activeTiles[i] = activeTiles[i - 1];
+        }
+        activeTiles[i] = tile;
+      }
+    }
+    int count = Math.min(numActive, maxTilesPerRound);
+    if (numActive < lastHit.length && count == maxTilesPerRound && maxTilesPerRound > 1) {
+      // Leaves room for an inactive tile.
+      --count;
+    }
+    System.arraycopy(activeTiles, 0, tiles, 0, count);
+
+    for (int visited = 0; visited < lastHit.length && count < maxTilesPerRound; ++visited) {
+      final int tile = sweep;
+      sweep = (sweep + 1) % lastHit.length;
+      if (!isActive(tile)) {
+        tiles[count++] = tile;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Records a detection of the current round, in frame coordinates. The tile whose center is the
+   * closest to the center of the box becomes active, it is the one that sees most of it.
+   */
+  public void onDetection(
+      final float left, final float top, final float right, final float bottom) {
+    if (lastHit.length == 0) {
+      return;
+    }
+    final float centerX = (left + right) / 2;
+    final float centerY = (top + bottom) / 2;
+    final int column = nearest(centerX, columns, frameWidth, tileWidth);
+    final int row = nearest(centerY, rows, frameHeight, tileHeight);
+    lastHit[row * columns + column] = round;
+  }
+
+  private int countTiles(final int length, final int tile) {
+    if (length <= tile) {
+      return 1;
+    }
+    final float stride = tile * (1 - minOverlap);
+    return (int) Math.ceil((length - tile) / stride) + 1;
+  }
+
+  /** Start of tile {@code index} out of {@code count} spread evenly over {@code length}. */
+  private static int position(final int index, final int count, final int length, final int tile) {
+    return count == 1 ? 0 : Math.round(index * (float) (length - tile) / (count - 1));
+  }
+
+  /** Index of the tile whose center is the closest to {@code center} along one axis. */
+  private static int nearest(
+      final float center, final int count, final int length, final int tile) {
+    if (count == 1) {
+      return 0;
+    }
+    final float index = (center - tile / 2f) * (count - 1) / (length - tile);
+    return Math.max(0, Math.min(count - 1, Math.round(index)));
+  }
+}
@@ -0,0 +1,240 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tiling;
+
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+import org.tensorflow.lite.examples.detection.env.YuvToInputConverter;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.PooledDetector;
+
+/**
+ * Detects small objects by running the model on tiles of the frame at their native resolution, on
+ * top of the usual pass over the whole frame shrunk to the model input.
+ *
+ * <p>The tiles of each round are chosen by a {@link TileScheduler} and detected in parallel over a
+ * {@link PooledDetector}, each written straight from the YUV frame into the input of a pooled
+ * instance. Their boxes are mapped back to frame coordinates and merged with the whole frame ones
+ * by a {@link DetectionPostprocessor}, with class-aware non-maximum suppression. A tile box
+ * touching a tile edge inside the frame is dropped, as the object is cut there; the overlap of the
+ * tiles, or the whole frame pass, sees it whole.
+ *
+ * <p>Not thread safe, call {@link #detect} from a single thread.
+ */
+public final class TiledDetector {
+  // Distance, in frame pixels, from an inner tile edge within which a box counts as cut.
+  private static final float EDGE_MARGIN = 2.0f;
+  // Marks the whole frame pass.
+  private static final int WHOLE_FRAME = -1;
+
+  private final PooledDetector pool;
+  private final int inputSize;
+  private final boolean isQuantized;
+  private final TileScheduler scheduler;
+  private final DetectionPostprocessor postprocessor;
+  private final int detectionsPerPass;
+
+  // Per pass state, the whole frame pass first, then one per tile of the round.
+  private final int[] tiles;
+  private final List<Future<Detector.Detections>> pending = new ArrayList<>();
+  private final List<Detector.Detections> passDetections = new ArrayList<>();
+  private final YuvToInputConverter wholeFrameConverter;
+  // One per tile, so that a tile keeps its sampling map from round to round.
+  private YuvToInputConverter[] tileConverters = new YuvToInputConverter[0];
+
+  // Candidates of all passes, in frame coordinates.
+  private float[] boxes = new float[0];
+  private float[] scores = new float[0];
+  private int[] classIds = new int[0];
+  private String[] titles = new String[0];
+  private int[] keep = new int[0];
+  private float[] keptScores = new float[0];
+  private final RectF box = new RectF();
+  private int lastTileCount;
+
+  /**
+   * @param pool detectors of the model, closed with this
+   * @param inputSize width and height of the model input
+   * @param scheduler picks the tiles, with tiles of the model input size
+   * @param detectionsPerPass capacity of the results of a single pass
+   * @param postprocessor merges the detections of all passes
+   */
+  public TiledDetector(
+      final PooledDetector pool,
+      final int inputSize,
+      final TileScheduler scheduler,
+      final int detectionsPerPass,
+      final DetectionPostprocessor postprocessor) {
+    this.pool = pool;
+    this.inputSize = inputSize;
+    this.scheduler = scheduler;
+    this.detectionsPerPass = detectionsPerPass;
+    this.postprocessor = postprocessor;
+    isQuantized = pool.isInputQuantized();
+    wholeFrameConverter = new YuvToInputConverter(inputSize, isQuantized);
+    tiles = new int[scheduler.getMaxTilesPerRound()];
+  }
+
+  /**
+   * Detects {@code frame}, which must not change until this returns, and writes the merged
+   * detections into {@code out} by decreasing score, as many as it holds.
+   */
+  public void detect(final YuvFrame frame, final Detector.Detections out) {
+    scheduler.setFrameSize(frame.getWidth(), frame.getHeight());
+    if (tileConverters.length != scheduler.getTileCount()) {
+      tileConverters = new YuvToInputConverter[scheduler.getTileCount()];
+    }
+    final int tileCount = scheduler.selectTiles(tiles);
+    lastTileCount = tileCount;
+
+    while (passDetections.size() < tileCount + 1) {
+      passDetections.add(new Detector.Detections(detectionsPerPass));
+    }
+    pending.clear();
+    pending.add(submit(frame, WHOLE_FRAME, passDetections.get(0)));
+    for (int i = 0; i < tileCount; ++i) {
+      pending.add(submit(frame, tiles[i], passDetections.get(i + 1)));
+    }
+
+    int count = 0;
+    ensureCapacity((tileCount + 1) * detectionsPerPass);
+    for (int pass = 0; pass <= tileCount; ++pass) {
+      final Detector.Detections detections = await(pending.get(pass));
+      final int tile = pass == 0 ? WHOLE_FRAME : tiles[pass - 1];
+      final YuvToInputConverter converter =
+          tile == WHOLE_FRAME ? wholeFrameConverter : tileConverters[tile];
+      for (int i = 0; i < detections.size(); ++i) {
+        detections.getLocation(i, box);
+        converter.mapToFrame(box);
+        if (tile != WHOLE_FRAME && isCut(tile, frame.getWidth(), frame.getHeight())) {
+          continue;
+        }
+        final int offset = count * 4;
+        boxes[offset] = box.left;
+        boxes[offset + 1] = box.top;
+        boxes[offset + 2] = box.right;
+        boxes[offset + 3] = box.bottom;
+        scores[count] = detections.getScore(i);
+        classIds[count] = detections.getClassId(i);
+        titles[count] = detections.getTitle(i);
+        ++count;
+      }
+    }
+
+    final int kept = postprocessor.run(boxes, scores, classIds, count, keep, keptScores);
+    out.clear();
+    for (int k = 0; k < kept; ++k) {
+      final int i = keep[k];
+      final int offset = i * 4;
+      scheduler.onDetection(
+          boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]);
+      if (out.size() < out.capacity()) {
+        out.add(
+            boxes[offset],
+            boxes[offset + 1],
+            boxes[offset + 2],
+            boxes[offset + 3],
+            classIds[i],
+            titles[i],
+            keptScores[k]);
+      }
+    }
+  }
+
+  /** Number of tiles detected by the last {@link #detect}, on top of the whole frame. */
+  public int getLastTileCount() {
+    return lastTileCount;
+  }
+
+  public void setNumThreads(final int numThreads) {
+    pool.setNumThreads(numThreads);
+  }
+
+  public void setUseNNAPI(final boolean isChecked) {
+    pool.setUseNNAPI(isChecked);
+  }
+
+  /** Closes the detectors, waiting for running detections to finish. */
+  public void close() {
+    pool.close();
+  }
+
+  private Future<Detector.Detections> submit(
+      final YuvFrame frame, final int tile, final Detector.Detections detections) {
+    final YuvToInputConverter converter;
+    if (tile == WHOLE_FRAME) {
+      converter = wholeFrameConverter;
+      converter.setCrop(0, 0, 0, 0, 0);
+    } else {
+      if (tileConverters[tile] == null) {
+        tileConverters[tile] = new YuvToInputConverter(inputSize, isQuantized);
+      }
+      converter = tileConverters[tile];
+      converter.setCrop(
+          scheduler.getTileLeft(tile),
+          scheduler.getTileTop(tile),
+          scheduler.getTileWidth(),
+          scheduler.getTileHeight(),
+          0);
+    }
+    return pool.submit(
+        detector -> {
+          frame.writeModelInput(converter, detector.getInputBuffer());
+          detector.recognizeInputBuffer(detections);
+          return detections;
+        });
+  }
+
+  /** Whether {@link #box} touches an edge of {@code tile} that is not an edge of the frame. */
+  private boolean isCut(final int tile, final int frameWidth, final int frameHeight) {
+    final int left = scheduler.getTileLeft(tile);
+    final int top = scheduler.getTileTop(tile);
+    final int right = left + scheduler.getTileWidth();
+    final int bottom = top + scheduler.getTileHeight();
+    return (left > 0 && box.left < left + EDGE_MARGIN)
+        || (top > 0 && box.top < top + EDGE_MARGIN)
+        || (right < frameWidth && box.right > right - EDGE_MARGIN)
+        || (bottom < frameHeight && box.bottom > bottom - EDGE_MARGIN);
+  }
+
+  private static Detector.Detections await(final Future<Detector.Detections> future) {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while detecting tiles", e);
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException("Tile detection failed", e.getCause());
+    }
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (scores.length >= capacity) {
+      return;
+    }
+    boxes = new float[capacity * 4];
+    scores = new float[capacity];
+    classIds = new int[capacity];
+    titles = new String[capacity];
+    keep = new int[capacity];
+    keptScores = new float[capacity];
+  }
+}
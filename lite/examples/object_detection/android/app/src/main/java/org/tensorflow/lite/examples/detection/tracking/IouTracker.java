@@ -0,0 +1,313 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Associates detections across frames by the overlap of their boxes, and keeps one {@link Track}
+ * with a stable id per object.
+ *
+ * <p>Every track runs a constant velocity Kalman filter, which is what the detections are matched
+ * against and what {@link Track#getBox} extrapolates on frames without a detection. The detector
+ * can then run on a fraction of the frames only while the boxes keep moving on every frame.
+ *
+ * <p>Boxes are {@code left, top, right, bottom} and times are frame numbers. Not thread safe.
+ */
+public final class IouTracker {
+  /** How detections are assigned to tracks. */
+  public enum Association {
+    /** Highest overlap first. Good enough for the few, mostly separated, boxes of a detector. */
+    GREEDY,
+    /** Optimal assignment maximizing the total overlap (Hungarian algorithm). */
+    HUNGARIAN
+  }
+
+  /** An object followed across frames. */
+  public static final class Track {
+    private final int id;
+    private final KalmanBoxFilter filter;
+    private int hits = 1;
+    private int misses = 0;
+    private int detectionIndex;
+
+    private Track(final int id, final KalmanBoxFilter filter, final int detectionIndex) {
+      this.id = id;
+      this.filter = filter;
+      this.detectionIndex = detectionIndex;
+    }
+
+    /** Unique id, stable for the lifetime of the track. */
+    public int getId() {
+      return id;
+    }
+
+    /** Number of detections matched to this track. */
+    public int getHits() {
+      return hits;
+    }
+
+    /** Number of consecutive updates without a matching detection. */
+    public int getMisses() {
+      return misses;
+    }
+
+    /** Index of the detection matched in the last update, or -1 if none was. */
+    public int getDetectionIndex() {
+      return detectionIndex;
+    }
+
+    /** Time of the last matched detection. */
+    public long getLastUpdate() {
+      return filter.getTime();
+    }
+
+    /** Writes the box estimated at {@code time} into {@code out} at {@code offset}. */
+    public void getBox(final long time, final float[] out, final int offset) {
+      filter.getBox(time, out, offset);
+    }
+  }
+
+  // Cost of pairs below the overlap threshold in the Hungarian assignment.
+  private static final float NO_MATCH_COST = 1e3f;
+
+  private final Association association;
+  private final float minIou;
+  private final int maxMisses;
+  private final List<Track> tracks = new ArrayList<>();
+  private final List<Track> unmodifiableTracks = Collections.unmodifiableList(tracks);
+  private int nextId = 0;
+
+  // Scratch buffers, grown as needed.
+  private float[] predicted = new float[0];
+  private float[] iou = new float[0];
+  private int[] trackToDetection = new int[0];
+  private int[] detectionToTrack = new int[0];
+
+  /**
+   * @param association how detections are assigned to tracks
+   * @param minIou overlap (intersection over union) below which a detection never matches a track
+   * @param maxMisses updates without a matching detection after which a track is dropped
+   */
+  public IouTracker(final Association association, final float minIou, final int maxMisses) {
+    this.association = association;
+    this.minIou = minIou;
+    this.maxMisses = maxMisses;
+  }
+
+  /** Live tracks, oldest first. */
+  public List<Track> getTracks() {
+    return unmodifiableTracks;
+  }
+
+  /** Drops every track. Ids keep increasing. */
+  public void clear() {
+    tracks.clear();
+  }
+
+  /**
+   * Matches the detections of a frame to the tracks and updates them. Unmatched detections start
+   * new tracks, tracks unmatched for more than {@code maxMisses} updates are dropped.
+   *
+   * @param boxes {@code count} boxes, 4 floats each
+   * @param time frame of the detections, updates must come in increasing time
+   * @return the live tracks
+   */
+  public List<Track> update(final float[] boxes, final int count, final long time) {
+    final int numTracks = tracks.size();
+    ensureCapacity(numTracks, count);
+    for (int i = 0; i < numTracks; ++i) {
+      tracks.get(i).filter.getBox(time, predicted, i * 4);
+    }
+    for (int i = 0; i < numTracks; ++i) {
+      for (int j = 0; j < count; ++j) {
+        iou[i * count + j] = iou(predicted, i * 4, boxes, j * 4);
+      }
+    }
+
+    Arrays.fill(trackToDetection, 0, numTracks, -1);
+    Arrays.fill(detectionToTrack, 0, count, -1);
+    if (numTracks > 0 && count > 0) {
+      if (association == Association.HUNGARIAN) {
+        assignHungarian(numTracks, count);
+      } else {
+        assignGreedy(numTracks, count);
+      }
+    }
+
+    for (int i = 0; i < numTracks; ++i) {
+      final Track track = tracks.get(i);
+      final int j = trackToDetection[i];
+      track.detectionIndex = j;
+      if (j >= 0) {
+        track.filter.predict(time);
+        track.filter.update(boxes[j * 4], boxes[j * 4 + 1], boxes[j * 4 + 2], boxes[j * 4 + 3]);
+        ++track.hits;
+        track.misses = 0;
+      } else {
+        ++track.misses;
+      }
+    }
+    for (final Iterator<Track> it = tracks.iterator(); it.hasNext(); ) {
+      if (it.next().misses > maxMisses) {
+        it.remove();
+      }
+    }
+    for (int j = 0; j < count; ++j) {
+      if (detectionToTrack[j] < 0) {
+        final KalmanBoxFilter filter =
+            new KalmanBoxFilter(
+                boxes[j * 4], boxes[j * 4 + 1], boxes[j * 4 + 2], boxes[j * 4 + 3], time);
+        tracks.add(new Track(nextId++, filter, j));
+      }
+    }
+    return unmodifiableTracks;
+  }
+
+  private void assignGreedy(final int numTracks, final int count) {
+    while (true) {
+      int bestTrack = -1;
+      int bestDetection = -1;
+      float best = minIou;
+      for (int i = 0; i < numTracks; ++i) {
+        if (trackToDetection[i] >= 0) {
+          continue;
+        }
+        for (int j = 0; j < count; ++j) {
+          final float overlap = iou[i * count + j];
+          if (detectionToTrack[j] < 0 && overlap >= best && overlap > 0) {
+            best = overlap;
+            bestTrack = i;
+            bestDetection = j;
+          }
+        }
+      }
+      if (bestTrack < 0) {
+        return;
+      }
+      trackToDetection[bestTrack] = bestDetection;
+      detectionToTrack[bestDetection] = bestTrack;
+    }
+  }
+
+  /**
+   * Minimum cost assignment with cost {@code 1 - iou}, by the O(n^2 m) shortest augmenting path
+   * formulation of the Hungarian algorithm, which needs no more rows than columns.
+   */
+  private void assignHungarian(final int numTracks, final int count) {
+    final boolean transposed = numTracks > count;
+    final int n = transposed ? count : numTracks;
+    final int m = transposed ? numTracks : count;
+    // 1-based potentials and matching, column 0 is a sentinel.
+    final float[] u = new float[n + 1];
+    final float[] v = new float[m + 1];
+    final int[] rowOfColumn = new int[m + 1];
+    final int[] way = new int[m + 1];
+    final float[] minSlack = new float[m + 1];
+    final boolean[] used = new boolean[m + 1];
+    for (int row = 1; row <= n; ++row) {
+      rowOfColumn[0] = row;
+      int column = 0;
+      Arrays.fill(minSlack, Float.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      do {
+        used[column] = true;
+        final int current = rowOfColumn[column];
+        float delta = Float.POSITIVE_INFINITY;
+        int next = 0;
+        for (int j = 1; j <= m; ++j) {
+          if (used[j]) {
+            continue;
+          }
+          final float overlap =
+              transposed ? iou[(j - 1) * count + current - 1] : iou[(current - 1) * count + j - 1];
+          final float cost = overlap >= minIou && overlap > 0 ? 1 - overlap : NO_MATCH_COST;
+          final float slack = cost - u[current] - v[j];
+          if (slack < minSlack[j]) {
+            minSlack[j] = slack;
+            way[j] = column;
+          }
+          if (minSlack[j] < delta) {
+            delta = minSlack[j];
+            next = j;
+          }
+        }
+        for (int j = 0; j <= m; ++j) {
+          if (used[j]) {
+            u[rowOfColumn[j]] += delta;
+            v[j] -= delta;
+          } else {
+            minSlack[j] -= delta;
+          }
+        }
+        column = next;
+      } while (rowOfColumn[column] != 0);
+      do {
+        final int previous = way[column];
+        rowOfColumn[column] = rowOfColumn[previous];
+        column = previous;
+      } while (column != 0);
+    }
+
+    for (int j = 1; j <= m; ++j) {
+      if (rowOfColumn[j] == 0) {
+        continue;
+      }
+      final int track = transposed ? j - 1 : rowOfColumn[j] - 1;
+      final int detection = transposed ? rowOfColumn[j] - 1 : j - 1;
+      // Pairs below the threshold only fill the assignment up, they are not matches.
+      final float overlap = iou[track * count + detection];
+      if (overlap >= minIou && overlap > 0) {
+        trackToDetection[track] = detection;
+        detectionToTrack[detection] = track;
+      }
+    }
+  }
+
+  private void ensureCapacity(final int numTracks, final int count) {
+    if (predicted.length < numTracks * 4) {
+      predicted = new float[numTracks * 4];
+    }
+    if (iou.length < numTracks * count) {
+      iou = new float[numTracks * count];
+    }
+    if (trackToDetection.length < numTracks) {
+      trackToDetection = new int[numTracks];
+    }
+    if (detectionToTrack.length < count) {
+      detectionToTrack = new int[count];
+    }
+  }
+
+  /** Intersection over union of the boxes at {@code a[i]} and {@code b[j]}. */
+  static float iou(final float[] a, final int i, final float[] b, final int j) {
+    final float width = Math.min(a[i + 2], b[j + 2]) - Math.max(a[i], b[j]);
+    final float height = Math.min(a[i + 3], b[j + 3]) - Math.max(a[i + 1], b[j + 1]);
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    final float intersection = width * height;
+    final float union =
+        (a[i + 2] - a[i]) * (a[i + 3] - a[i + 1])
+            + (b[j + 2] - b[j]) * (b[j + 3] - b[j + 1])
+            - intersection;
+    return union > 0 ? intersection / union : 0;
+  }
+}
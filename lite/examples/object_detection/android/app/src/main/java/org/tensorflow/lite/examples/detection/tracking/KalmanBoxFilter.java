@@ -0,0 +1,133 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Constant velocity Kalman filter over a box, as center x, center y, width and height.
+ *
+ * <p>Every coordinate is measured directly and moves independently, so the 8x8 covariance of the
+ * full filter stays block diagonal and is kept as four 2x2 (position, velocity) filters. Noise is
+ * scaled by the box size, large boxes are allowed to move more pixels per frame. Time is in frames.
+ */
+final class KalmanBoxFilter {
+  private static final int NUM_COORDINATES = 4;
+  // Standard deviations relative to the box size.
+  private static final float POSITION_NOISE = 1f / 20;
+  private static final float VELOCITY_NOISE = 1f / 160;
+  private static final float MEASUREMENT_NOISE = 1f / 20;
+  private static final float MIN_SIZE = 1f;
+
+  private final float[] position = new float[NUM_COORDINATES];
+  private final float[] velocity = new float[NUM_COORDINATES];
+  // Covariance of every coordinate: var(position), cov(position, velocity), var(velocity).
+  private final float[] p00 = new float[NUM_COORDINATES];
+  private final float[] p01 = new float[NUM_COORDINATES];
+  private final float[] p11 = new float[NUM_COORDINATES];
+  private final float[] measurement = new float[NUM_COORDINATES];
+  private long time;
+
+  /** Starts the filter at the box {@code left, top, right, bottom}, at rest. */
+  KalmanBoxFilter(
+      final float left, final float top, final float right, final float bottom, final long time) {
+    toCenterSize(left, top, right, bottom, position);
+    final float scale = scale();
+    for (int i = 0; i < NUM_COORDINATES; ++i) {
+      final float positionStd = 2 * POSITION_NOISE * scale;
+      final float velocityStd = 10 * VELOCITY_NOISE * scale;
+      p00[i] = positionStd * positionStd;
+      p11[i] = velocityStd * velocityStd;
+    }
+    this.time = time;
+  }
+
+  /** Time of the last update. */
+  long getTime() {
+    return time;
+  }
+
+  /** Advances the state to {@code time}. Earlier times leave the state unchanged. */
+  void predict(final long time) {
+    final float dt = time - this.time;
+    if (dt <= 0) {
+      return;
+    }
+    final float scale = scale();
+    final float positionStd = POSITION_NOISE * scale;
+    final float velocityStd = VELOCITY_NOISE * scale;
+    final float q0 = positionStd * positionStd * dt;
+    final float q1 = velocityStd * velocityStd * dt;
+    for (int i = 0; i < NUM_COORDINATES; ++i) {
+      position[i] += velocity[i] * dt;
+      p00[i] += 2 * dt * p01[i] + dt * dt * p11[i] + q0;
+      p01[i] += dt * p11[i];
+      p11[i] += q1;
+    }
+    clampSize(position);
+    this.time = time;
+  }
+
+  /** Corrects the state with a measured box, after {@link #predict} to the measurement time. */
+  void update(final float left, final float top, final float right, final float bottom) {
+    final float measurementStd = MEASUREMENT_NOISE * scale();
+    final float r = measurementStd * measurementStd;
+    toCenterSize(left, top, right, bottom, measurement);
+    for (int i = 0; i < NUM_COORDINATES; ++i) {
+      final float s = p00[i] + r;
+      final float k0 = p00[i] / s;
+      final float k1 = p01[i] / s;
+      final float residual = measurement[i] - position[i];
+      position[i] += k0 * residual;
+      velocity[i] += k1 * residual;
+      p11[i] -= k1 * p01[i];
+      p01[i] *= 1 - k0;
+      p00[i] *= 1 - k0;
+    }
+    clampSize(position);
+  }
+
+  /**
+   * Writes the box extrapolated to {@code time} as {@code left, top, right, bottom} into {@code
+   * out} at {@code offset}, without changing the state.
+   */
+  void getBox(final long time, final float[] out, final int offset) {
+    final float dt = Math.max(0, time - this.time);
+    final float cx = position[0] + velocity[0] * dt;
+    final float cy = position[1] + velocity[1] * dt;
+    final float w = Math.max(MIN_SIZE, position[2] + velocity[2] * dt);
+    final float h = Math.max(MIN_SIZE, position[3] + velocity[3] * dt);
+    out[offset] = cx - w / 2;
+    out[offset + 1] = cy - h / 2;
+    out[offset + 2] = cx + w / 2;
+    out[offset + 3] = cy + h / 2;
+  }
+
+  private float scale() {
+    return Math.max(position[2], position[3]);
+  }
+
+  private static void toCenterSize(
+      final float left, final float top, final float right, final float bottom, final float[] out) {
+    out[0] = (left + right) / 2;
+    out[1] = (top + bottom) / 2;
+    out[2] = Math.max(MIN_SIZE, right - left);
+    out[3] = Math.max(MIN_SIZE, bottom - top);
+  }
+
+  private static void clampSize(final float[] state) {
+    state[2] = Math.max(MIN_SIZE, state[2]);
+    state[3] = Math.max(MIN_SIZE, state[3]);
+  }
+}
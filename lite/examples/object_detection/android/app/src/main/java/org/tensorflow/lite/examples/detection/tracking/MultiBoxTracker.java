@@ -27,18 +27,31 @@ import android.graphics.RectF;
 import android.text.TextUtils;
 import android.util.Pair;
 import android.util.TypedValue;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.tracking.IouTracker.Association;
+import org.tensorflow.lite.examples.detection.tracking.IouTracker.Track;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that matches existing objects to new detections, see {@link IouTracker}. Objects keep
+ * their color while they are tracked, and {@link #predict} moves them on frames without detection.
+ */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
   private static final float MIN_SIZE = 16.0f;
+  private static final Association ASSOCIATION = Association.HUNGARIAN;
+  // Minimum overlap of a detection with the predicted box of a track to continue it.
+  private static final float MIN_IOU = 0.3f;
+  // Detection results an object can be missing from before its track is dropped.
+  private static final int MAX_MISSES = 2;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -60,6 +73,13 @@ public class MultiBoxTracker {
   private final Logger logger = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
   private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  private final IouTracker iouTracker = new IouTracker(ASSOCIATION, MIN_IOU, MAX_MISSES);
+  private final Map<Integer, TrackedRecognition> objectsByTrackId =
+      new HashMap<Integer, TrackedRecognition>();
+  private final float[] box = new float[4];
+  private float[] detectionBoxes = new float[0];
+  // Frame the tracked locations are estimated at.
+  private long currentTimestamp;
   private final Paint boxPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
@@ -115,8 +135,22 @@ public class MultiBoxTracker {
   }
 
   public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+    if (Logger.VERBOSE_LOGGING) {
+      logger.v("Processing %d results from %d", results.size(), timestamp);
+    }
+    processResults(results, timestamp);
+  }
+
+  /**
+   * Moves the tracked objects to where they are expected at frame {@code timestamp}. Called on
+   * every frame, so that boxes keep moving on frames that are not run through the detector.
+   */
+  public synchronized void predict(final long timestamp) {
+    currentTimestamp = Math.max(currentTimestamp, timestamp);
+    for (final TrackedRecognition recognition : trackedObjects) {
+      recognition.track.getBox(currentTimestamp, box, 0);
+      recognition.location.set(box[0], box[1], box[2], box[3]);
+    }
   }
 
   private Matrix getFrameToCanvasMatrix() {
@@ -187,8 +221,8 @@ public class MultiBoxTracker {
     cropRectangle = rect;
   }
 
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
+  private void processResults(final List<Recognition> results, final long timestamp) {
+    final List<Recognition> rectsToTrack = new ArrayList<Recognition>(results.size());
 
     screenRects.clear();
     final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
@@ -202,40 +236,74 @@ public class MultiBoxTracker {
       final RectF detectionScreenRect = new RectF();
       rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
 
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
+      if (Logger.VERBOSE_LOGGING) {
+        logger.v("Result! Frame: %s mapped to screen: %s", detectionFrameRect, detectionScreenRect);
+      }
 
       screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
 
       if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
+        logger.w("Degenerate rectangle! %s", detectionFrameRect);
         continue;
       }
 
-      rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
+      rectsToTrack.add(result);
     }
 
-    trackedObjects.clear();
-    if (rectsToTrack.isEmpty()) {
-      logger.v("Nothing to track, aborting.");
-      return;
+    if (detectionBoxes.length < rectsToTrack.size() * 4) {
+      detectionBoxes = new float[rectsToTrack.size() * 4];
+    }
+    int count = 0;
+    for (final Recognition potential : rectsToTrack) {
+      final RectF location = potential.getLocation();
+      detectionBoxes[count * 4] = location.left;
+      detectionBoxes[count * 4 + 1] = location.top;
+      detectionBoxes[count * 4 + 2] = location.right;
+      detectionBoxes[count * 4 + 3] = location.bottom;
+      ++count;
     }
+    final List<Track> tracks = iouTracker.update(detectionBoxes, count, timestamp);
 
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-      trackedRecognition.color = COLORS[trackedObjects.size()];
+    // Objects keep their color for as long as their track lives.
+    final Map<Integer, TrackedRecognition> previousObjects =
+        new HashMap<Integer, TrackedRecognition>(objectsByTrackId);
+    objectsByTrackId.clear();
+    trackedObjects.clear();
+    for (final Track track : tracks) {
+      TrackedRecognition trackedRecognition = previousObjects.remove(track.getId());
+      if (trackedRecognition == null) {
+        if (availableColors.isEmpty()) {
+          // More objects than colors, the extra ones are not shown.
+          continue;
+        }
+        trackedRecognition = new TrackedRecognition();
+        trackedRecognition.track = track;
+        trackedRecognition.location = new RectF();
+        trackedRecognition.color = availableColors.poll();
+      }
+      final int detectionIndex = track.getDetectionIndex();
+      if (detectionIndex >= 0) {
+        final Recognition detection = rectsToTrack.get(detectionIndex);
+        trackedRecognition.detectionConfidence = detection.getConfidence();
+        trackedRecognition.title = detection.getTitle();
+      }
+      objectsByTrackId.put(track.getId(), trackedRecognition);
       trackedObjects.add(trackedRecognition);
+    }
+    for (final TrackedRecognition dropped : previousObjects.values()) {
+      availableColors.add(dropped.color);
+    }
+    predict(timestamp);
 
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
+    if (trackedObjects.isEmpty()) {
+      if (Logger.VERBOSE_LOGGING) {
+        logger.v("Nothing to track.");
       }
     }
   }
 
   private static class TrackedRecognition {
+    Track track;
     RectF location;
     float detectionConfidence;
     int color;
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Test;
+
+/** Writes a {@link DetectionJournal} and scans it back with {@link DetectionJournalReader}. */
+public final class DetectionJournalTest {
+  private static final float EPSILON = 0f;
+
+  @Test
+  public void recordsRoundTrip() throws IOException {
+    final File file = File.createTempFile("detections", ".journal");
+    try {
+      try (DetectionJournal journal = new DetectionJournal(file, 8)) {
+        journal.append(1000, 0, 1, 0.9f, 10, 20, 30, 40);
+        journal.append(1000, 0, 17, 0.6f, 1.5f, 2.5f, 3.5f, 4.5f);
+        journal.appendEmpty(2000, 1);
+        assertEquals(3, journal.getSequence());
+      }
+
+      try (DetectionJournalReader reader = new DetectionJournalReader(file)) {
+        assertTrue(reader.next());
+        assertEquals(1, reader.getSequence());
+        assertEquals(1000, reader.getTimestampUs());
+        assertEquals(0, reader.getFrameId());
+        assertEquals(1, reader.getClassId());
+        assertEquals(0.9f, reader.getScore(), EPSILON);
+        assertEquals(10f, reader.getLeft(), EPSILON);
+        assertEquals(20f, reader.getTop(), EPSILON);
+        assertEquals(30f, reader.getRight(), EPSILON);
+        assertEquals(40f, reader.getBottom(), EPSILON);
+        assertTrue(reader.next());
+        assertEquals(17, reader.getClassId());
+        assertEquals(3.5f, reader.getRight(), EPSILON);
+        assertTrue(reader.next());
+        assertEquals(2000, reader.getTimestampUs());
+        assertEquals(1, reader.getFrameId());
+        assertEquals(DetectionJournal.NO_DETECTION, reader.getClassId());
+        assertFalse(reader.next());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void keepsTheLatestRecordsInOrder() throws IOException {
+    final File file = File.createTempFile("detections", ".journal");
+    try {
+      try (DetectionJournal journal = new DetectionJournal(file, 4)) {
+        for (int frame = 0; frame < 10; ++frame) {
+          journal.append(frame * 100, frame, frame, 0.5f, 0, 0, 1, 1);
+        }
+      }
+
+      try (DetectionJournalReader reader = new DetectionJournalReader(file)) {
+        assertEquals(10, reader.getLastSequence());
+        for (int frame = 6; frame < 10; ++frame) {
+          assertTrue(reader.next());
+          assertEquals(frame + 1, reader.getSequence());
+          assertEquals(frame, reader.getFrameId());
+        }
+        assertFalse(reader.next());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void reopeningContinuesAfterTheLastRecord() throws IOException {
+    final File file = File.createTempFile("detections", ".journal");
+    try {
+      try (DetectionJournal journal = new DetectionJournal(file, 4)) {
+        journal.appendEmpty(100, 0);
+        journal.appendEmpty(200, 1);
+        journal.appendEmpty(300, 2);
+      }
+      try (DetectionJournal journal = new DetectionJournal(file, 4)) {
+        assertEquals(3, journal.getSequence());
+        journal.appendEmpty(400, 3);
+        journal.appendEmpty(500, 4);
+      }
+
+      try (DetectionJournalReader reader = new DetectionJournalReader(file)) {
+        for (int frame = 1; frame < 5; ++frame) {
+          assertTrue(reader.next());
+          assertEquals(frame, reader.getFrameId());
+        }
+        assertFalse(reader.next());
+      }
+
+      // Another capacity starts a new journal.
+      try (DetectionJournal journal = new DetectionJournal(file, 2)) {
+        assertEquals(0, journal.getSequence());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void filtersRecords() throws IOException {
+    final File file = File.createTempFile("detections", ".journal");
+    try {
+      try (DetectionJournal journal = new DetectionJournal(file, 16)) {
+        journal.append(100, 0, 1, 0.9f, 0, 0, 1, 1);
+        journal.append(100, 0, 2, 0.8f, 0, 0, 1, 1);
+        journal.appendEmpty(200, 1);
+        journal.append(300, 2, 1, 0.4f, 0, 0, 1, 1);
+        journal.append(400, 3, 1, 0.7f, 0, 0, 1, 1);
+      }
+
+      try (DetectionJournalReader reader = new DetectionJournalReader(file)) {
+        reader.setClassId(1);
+        reader.setMinScore(0.5f);
+        assertTrue(reader.next());
+        assertEquals(0, reader.getFrameId());
+        assertTrue(reader.next());
+        assertEquals(1, reader.getFrameId());
+        assertTrue(reader.next());
+        assertEquals(3, reader.getFrameId());
+        assertFalse(reader.next());
+
+        reader.rewind();
+        reader.setIncludeEmptyFrames(false);
+        reader.setTimeRange(100, 300);
+        assertTrue(reader.next());
+        assertEquals(0, reader.getFrameId());
+        assertFalse(reader.next());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void skipsRecordsBeingWritten() throws IOException {
+    final File file = File.createTempFile("detections", ".journal");
+    try {
+      try (DetectionJournal journal = new DetectionJournal(file, 4)) {
+        journal.appendEmpty(100, 0);
+        journal.appendEmpty(200, 1);
+        journal.appendEmpty(300, 2);
+      }
+      // Clears the sequence of the second record, as if the app died while writing it.
+      try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+        raw.seek(DetectionJournal.HEADER_SIZE + DetectionJournal.RECORD_SIZE);
+        raw.writeLong(0);
+      }
+
+      try (DetectionJournalReader reader = new DetectionJournalReader(file)) {
+        assertTrue(reader.next());
+        assertEquals(0, reader.getFrameId());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getFrameId());
+        assertFalse(reader.next());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Feeds synthetic luminance planes to {@link DetectionScheduler}. */
+public final class DetectionSchedulerTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  // Rows are padded, as camera planes often are.
+  private static final int ROW_STRIDE = 704;
+  private static final float THRESHOLD = 0.02f;
+  private static final int MAX_INTERVAL = 10;
+
+  private final byte[] luminance = new byte[ROW_STRIDE * HEIGHT];
+
+  private DetectionScheduler newScheduler(final int minInterval) {
+    return new DetectionScheduler(
+        new MotionEstimator(32, 24), THRESHOLD, minInterval, MAX_INTERVAL);
+  }
+
+  private boolean onFrame(final DetectionScheduler scheduler) {
+    final boolean detect = scheduler.onFrame(luminance, WIDTH, HEIGHT, ROW_STRIDE);
+    if (detect) {
+      scheduler.onDetectionStarted();
+    }
+    return detect;
+  }
+
+  @Test
+  public void staticSceneIsDetectedOnMaxInterval() {
+    Arrays.fill(luminance, (byte) 100);
+    final DetectionScheduler scheduler = newScheduler(1);
+    assertTrue(onFrame(scheduler));
+    for (int frame = 1; frame <= 3 * MAX_INTERVAL; ++frame) {
+      assertEquals(frame % MAX_INTERVAL == 0, onFrame(scheduler));
+    }
+    assertEquals(3 * MAX_INTERVAL + 1, scheduler.getFramesSeen());
+    assertEquals(4, scheduler.getFramesInferred());
+    assertEquals(3 * MAX_INTERVAL - 3, scheduler.getFramesSkipped());
+    assertEquals(0, scheduler.getLastMotion(), 0);
+  }
+
+  @Test
+  public void movingSceneIsDetectedOnMinInterval() {
+    final DetectionScheduler scheduler = newScheduler(2);
+    for (int frame = 0; frame < 20; ++frame) {
+      // A bright square sliding over a dark background.
+      Arrays.fill(luminance, (byte) 20);
+      final int left = frame * 16;
+      for (int y = 100; y < 300; ++y) {
+        Arrays.fill(luminance, y * ROW_STRIDE + left, y * ROW_STRIDE + left + 200, (byte) 230);
+      }
+      assertEquals(frame % 2 == 0, onFrame(scheduler));
+    }
+    assertEquals(10, scheduler.getFramesInferred());
+  }
+
+  @Test
+  public void slowChangesAddUp() {
+    Arrays.fill(luminance, (byte) 100);
+    final DetectionScheduler scheduler = newScheduler(1);
+    assertTrue(onFrame(scheduler));
+    // 1 level per frame is below the threshold, until enough frames have passed since the last
+    // detection.
+    assertFalse(brighten(scheduler));
+    assertFalse(brighten(scheduler));
+    assertFalse(brighten(scheduler));
+    assertFalse(brighten(scheduler));
+    assertFalse(brighten(scheduler));
+    assertTrue(brighten(scheduler));
+    assertFalse(brighten(scheduler));
+  }
+
+  @Test
+  public void resetForcesDetection() {
+    Arrays.fill(luminance, (byte) 100);
+    final DetectionScheduler scheduler = newScheduler(1);
+    assertTrue(onFrame(scheduler));
+    assertFalse(onFrame(scheduler));
+    scheduler.reset();
+    assertTrue(onFrame(scheduler));
+    assertEquals(1, scheduler.getLastMotion(), 0);
+  }
+
+  @Test
+  public void frameWithoutLuminanceIsDetected() {
+    Arrays.fill(luminance, (byte) 100);
+    final DetectionScheduler scheduler = newScheduler(1);
+    assertTrue(onFrame(scheduler));
+    assertFalse(onFrame(scheduler));
+    assertTrue(scheduler.onFrameWithoutLuminance());
+    scheduler.onDetectionStarted();
+    assertTrue(scheduler.onFrameWithoutLuminance());
+    scheduler.onDetectionStarted();
+    // No reference was kept from the frames without luminance.
+    assertTrue(onFrame(scheduler));
+    assertEquals(1, scheduler.getLastMotion(), 0);
+    assertFalse(onFrame(scheduler));
+    assertEquals(6, scheduler.getFramesSeen());
+    assertEquals(4, scheduler.getFramesInferred());
+  }
+
+  @Test
+  public void firstFrameWithoutLuminanceIsDetected() {
+    final DetectionScheduler scheduler = newScheduler(MAX_INTERVAL);
+    // No camera frame, and so no luminance plane, was ever seen.
+    assertTrue(scheduler.onFrameWithoutLuminance());
+    scheduler.onDetectionStarted();
+    assertTrue(scheduler.onFrameWithoutLuminance());
+    assertEquals(0, scheduler.getFramesSkipped());
+  }
+
+  private boolean brighten(final DetectionScheduler scheduler) {
+    for (int i = 0; i < luminance.length; ++i) {
+      ++luminance[i];
+    }
+    return onFrame(scheduler);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsInvalidIntervals() {
+    newScheduler(MAX_INTERVAL + 1);
+  }
+}
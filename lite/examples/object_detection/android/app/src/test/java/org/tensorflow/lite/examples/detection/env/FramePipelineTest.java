@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.FramePipeline.DropPolicy;
+
+/**
+ * Runs {@link FramePipeline} with a first stage that holds each frame until the test lets it go,
+ * so that which frames wait and which are dropped does not depend on timing.
+ */
+public final class FramePipelineTest {
+  // Only guards against a hang, the tests never wait for it to expire.
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private static final class Frame {
+    final long id;
+
+    Frame(final long id) {
+      this.id = id;
+    }
+  }
+
+  @Test
+  public void blockProcessesEveryFrameInOrder() throws InterruptedException {
+    final GatedRun run = new GatedRun(DropPolicy.BLOCK, 2, 4);
+    run.submit(0);
+    run.awaitGateEntered();
+    // Fills the two frame queue in front of the held stage, then waits for room.
+    run.submit(1);
+    run.submit(2);
+    final Thread producer = new Thread(() -> run.submit(3));
+    producer.start();
+    run.letThrough(4);
+    producer.join();
+    run.awaitRecycled();
+
+    assertEquals(ids(0, 1, 2, 3), run.completed);
+    assertEquals(0, run.pipeline.getStats().get(0).getDropped());
+    assertEquals(4, run.pipeline.getStats().get(1).getFrames());
+    run.pipeline.close();
+  }
+
+  @Test
+  public void latestWinsDropsStaleFramesInOrder() throws InterruptedException {
+    final GatedRun run = new GatedRun(DropPolicy.LATEST_WINS, 2, 4);
+    run.submit(0);
+    run.awaitGateEntered();
+    // Each frame replaces the one waiting in front of the held stage.
+    run.submit(1);
+    run.submit(2);
+    run.submit(3);
+    // One frame at a time, so that the last stage never has a frame waiting to be replaced.
+    run.letThrough(1);
+    run.awaitCompleted(1);
+    run.letThrough(1);
+    run.awaitRecycled();
+
+    assertEquals(ids(0, 3), run.completed);
+    assertEquals(2, run.pipeline.getStats().get(0).getDropped());
+    assertEquals(0, run.pipeline.getStats().get(1).getDropped());
+    assertEquals(ids(0, 1, 2, 3), run.sortedRecycled());
+    run.pipeline.close();
+  }
+
+  @Test
+  public void closeRecyclesFramesInFlight() throws InterruptedException {
+    final GatedRun run = new GatedRun(DropPolicy.BLOCK, 2, 2);
+    run.submit(0);
+    run.awaitGateEntered();
+    run.submit(1);
+    // Interrupts the held stage, which drops its frame, and empties the queues.
+    run.pipeline.close();
+    run.awaitRecycled();
+
+    assertTrue(run.completed.isEmpty());
+    assertEquals(ids(0, 1), run.sortedRecycled());
+  }
+
+  @Test
+  public void submitFailsWhenClosed() {
+    final FramePipeline<Frame> pipeline =
+        new FramePipeline<Frame>("test", 1, DropPolicy.BLOCK, frame -> {})
+            .addStage("noop", frame -> {});
+    assertFalse(pipeline.submit(new Frame(0)));
+    pipeline.start();
+    assertTrue(pipeline.submit(new Frame(1)));
+    pipeline.close();
+    assertFalse(pipeline.submit(new Frame(2)));
+  }
+
+  private static List<Long> ids(final long... ids) {
+    final List<Long> list = new ArrayList<>();
+    for (final long id : ids) {
+      list.add(id);
+    }
+    return list;
+  }
+
+  /** A two stage pipeline whose first stage waits for a permit before letting each frame go. */
+  private static final class GatedRun {
+    final FramePipeline<Frame> pipeline;
+    // Ids of the frames that reached the last stage, in order.
+    final List<Long> completed = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> recycled = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch gateEntered = new CountDownLatch(1);
+    private final Semaphore gate = new Semaphore(0);
+    private final Semaphore completions = new Semaphore(0);
+    private final CountDownLatch allRecycled;
+
+    GatedRun(final DropPolicy policy, final int capacity, final int numFrames) {
+      allRecycled = new CountDownLatch(numFrames);
+      pipeline =
+          new FramePipeline<Frame>(
+                  "test",
+                  capacity,
+                  policy,
+                  frame -> {
+                    recycled.add(frame.id);
+                    allRecycled.countDown();
+                  })
+              .addStage(
+                  "gate",
+                  frame -> {
+                    gateEntered.countDown();
+                    try {
+                      gate.acquire();
+                    } catch (final InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                      throw new IllegalStateException(e);
+                    }
+                  })
+              .addStage(
+                  "sink",
+                  frame -> {
+                    completed.add(frame.id);
+                    completions.release();
+                  });
+      pipeline.start();
+    }
+
+    void submit(final long id) {
+      assertTrue(pipeline.submit(new Frame(id)));
+    }
+
+    void awaitGateEntered() throws InterruptedException {
+      assertTrue(gateEntered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    void letThrough(final int numFrames) {
+      gate.release(numFrames);
+    }
+
+    void awaitCompleted(final int numFrames) throws InterruptedException {
+      assertTrue(completions.tryAcquire(numFrames, TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    void awaitRecycled() throws InterruptedException {
+      assertTrue(allRecycled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    List<Long> sortedRecycled() {
+      final List<Long> sorted = new ArrayList<>(recycled);
+      Collections.sort(sorted);
+      return sorted;
+    }
+  }
+}
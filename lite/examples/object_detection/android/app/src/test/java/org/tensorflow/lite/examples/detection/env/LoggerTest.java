@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.util.Log;
+import org.junit.Test;
+
+/** Checks that {@link Logger} only formats the messages it emits, at any level. */
+public final class LoggerTest {
+  /** Counts how many times it is formatted. */
+  private static final class CountingArgument {
+    int formatted;
+
+    @Override
+    public String toString() {
+      ++formatted;
+      return "argument";
+    }
+  }
+
+  @Test
+  public void formatsEmittedMessagesOnly() {
+    final Logger logger = new Logger("Test");
+    logger.setMinLogLevel(Log.INFO);
+    final CountingArgument argument = new CountingArgument();
+
+    logger.d("Filtered %s", argument);
+    logger.v("Compiled out %s", argument);
+    assertEquals(0, argument.formatted);
+
+    logger.i("Emitted %s", argument);
+    assertEquals(1, argument.formatted);
+  }
+
+  @Test
+  public void leavesUnknownLevelsToThePlatform() {
+    final Logger logger = new Logger("Test");
+    logger.setMinLogLevel(Log.ASSERT + 2);
+
+    // Not enabled for the tag, as android.util.Log returns false in unit tests.
+    assertFalse(logger.isLoggable(-1));
+    assertFalse(logger.isLoggable(Log.ASSERT + 1));
+  }
+}
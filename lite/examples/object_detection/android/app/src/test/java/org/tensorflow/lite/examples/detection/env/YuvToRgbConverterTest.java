@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks {@link YuvToRgbConverter} against the scalar loops in {@link ImageUtils}, at the preview
+ * sizes the camera is likely to deliver.
+ */
+public final class YuvToRgbConverterTest {
+  private static final int[][] SIZES = {{640, 480}, {1280, 720}, {1920, 1080}};
+
+  private final Random random = new Random(42);
+  private YuvToRgbConverter converter;
+
+  @Before
+  public void setUp() {
+    converter = new YuvToRgbConverter(YuvToRgbConverter.defaultNumThreads());
+  }
+
+  @After
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Test
+  public void yuv420SPMatchesScalarConversion() {
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] input = randomBytes(ImageUtils.getYUVByteSize(width, height));
+      final int[] expected = new int[width * height];
+      final int[] actual = new int[width * height];
+
+      ImageUtils.convertYUV420SPToARGB8888(input, width, height, expected);
+      converter.convertYUV420SPToARGB8888(input, width, height, actual);
+      assertArrayEquals(expected, actual);
+
+      final IntBuffer direct =
+          ByteBuffer.allocateDirect(width * height * 4)
+              .order(ByteOrder.nativeOrder())
+              .asIntBuffer();
+      converter.convertYUV420SPToARGB8888(input, width, height, direct);
+      direct.get(actual);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void yuv420MatchesScalarConversion() {
+    for (final int[] size : SIZES) {
+      final Planes planes = new Planes(size[0], size[1]);
+      final int[] expected = new int[planes.width * planes.height];
+      final int[] actual = new int[planes.width * planes.height];
+
+      planes.convertScalar(expected);
+      planes.convert(converter, actual);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  private byte[] randomBytes(final int size) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  /** A YUV_420_888 frame laid out the way camera2 delivers it, with padded rows. */
+  private final class Planes {
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride = 2;
+    final byte[] y;
+    final byte[] u;
+    final byte[] v;
+
+    Planes(final int width, final int height) {
+      this.width = width;
+      this.height = height;
+      yRowStride = width + 64;
+      uvRowStride = yRowStride;
+      y = randomBytes(yRowStride * height);
+      u = randomBytes(uvRowStride * (height / 2));
+      v = randomBytes(uvRowStride * (height / 2));
+    }
+
+    void convertScalar(final int[] out) {
+      ImageUtils.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+
+    void convert(final YuvToRgbConverter converter, final int[] out) {
+      converter.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.offline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+/** Round trips {@link DetectionLogWriter} through {@link DetectionLogReader}. */
+public final class DetectionLogTest {
+  private static final float EPSILON = 0f;
+
+  @Test
+  public void framesRoundTrip() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DetectionLogWriter writer = new DetectionLogWriter(bytes, 640, 480);
+    writer.beginFrame(0, 0);
+    writer.addDetection(1, "person", 0.9f, 10, 20, 30, 40);
+    writer.addDetection(17, "cat", 0.6f, 1.5f, 2.5f, 3.5f, 4.5f);
+    writer.endFrame();
+    writer.beginFrame(1, 33333);
+    writer.endFrame();
+    writer.beginFrame(2, 66666);
+    // More detections than the initial capacity, and a label seen before.
+    for (int i = 0; i < 40; ++i) {
+      writer.addDetection(1, "person", i / 40f, i, i + 1, i + 2, i + 3);
+    }
+    writer.endFrame();
+    writer.close();
+
+    final DetectionLogReader reader =
+        new DetectionLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(640, reader.getFrameWidth());
+    assertEquals(480, reader.getFrameHeight());
+
+    assertTrue(reader.next());
+    assertEquals(0, reader.getFrameIndex());
+    assertEquals(2, reader.size());
+    assertEquals(1, reader.getClassId(0));
+    assertEquals("person", reader.getLabel(0));
+    assertEquals(0.9f, reader.getScore(0), EPSILON);
+    assertEquals(10f, reader.getLeft(0), EPSILON);
+    assertEquals(40f, reader.getBottom(0), EPSILON);
+    assertEquals("cat", reader.getLabel(1));
+    assertEquals(2.5f, reader.getTop(1), EPSILON);
+    assertEquals(3.5f, reader.getRight(1), EPSILON);
+
+    assertTrue(reader.next());
+    assertEquals(1, reader.getFrameIndex());
+    assertEquals(33333, reader.getTimestampUs());
+    assertEquals(0, reader.size());
+
+    assertTrue(reader.next());
+    assertEquals(40, reader.size());
+    assertEquals("person", reader.getLabel(39));
+    assertEquals(39f, reader.getLeft(39), EPSILON);
+
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    new DetectionLogReader(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}));
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.DetectionPostprocessor.Suppression;
+
+/** Runs {@link DetectionPostprocessor} on hand-made candidates. */
+public final class DetectionPostprocessorTest {
+  // Two overlapping boxes of class 1 (IoU 0.5), a low score box and a box of class 2.
+  private static final float[] BOXES = {
+    0, 0, 30, 10,
+    10, 0, 40, 10,
+    100, 100, 110, 110,
+    0, 0, 30, 10,
+  };
+  private static final float[] SCORES = {0.9f, 0.8f, 0.2f, 0.7f};
+  private static final int[] CLASS_IDS = {1, 1, 1, 2};
+
+  private final int[] keep = new int[4];
+  private final float[] keptScores = new float[4];
+
+  private int run(final Suppression suppression, final float iouThreshold, final int max) {
+    return new DetectionPostprocessor(0.3f, suppression, iouThreshold, 0.5f, max)
+        .run(BOXES, SCORES, CLASS_IDS, BOXES.length / 4, keep, keptScores);
+  }
+
+  @Test
+  public void noSuppressionFiltersAndSorts() {
+    assertEquals(3, run(Suppression.NONE, 0.4f, 10));
+    assertEquals(0, keep[0]);
+    assertEquals(1, keep[1]);
+    assertEquals(3, keep[2]);
+    assertEquals(0.8f, keptScores[1], 0);
+  }
+
+  @Test
+  public void hardSuppressionIsClassAware() {
+    assertEquals(2, run(Suppression.HARD, 0.4f, 10));
+    assertEquals(0, keep[0]);
+    assertEquals(3, keep[1]);
+  }
+
+  @Test
+  public void keepsMaxDetections() {
+    assertEquals(2, run(Suppression.NONE, 0.4f, 2));
+    assertEquals(0, keep[0]);
+    assertEquals(1, keep[1]);
+  }
+
+  @Test
+  public void linearSoftSuppressionDecaysOverlappingScores() {
+    assertEquals(3, run(Suppression.SOFT_LINEAR, 0.4f, 10));
+    assertEquals(0, keep[0]);
+    assertEquals(3, keep[1]);
+    assertEquals(1, keep[2]);
+    assertEquals(0.8f * 0.5f, keptScores[2], 1e-6f);
+  }
+
+  @Test
+  public void linearSoftSuppressionDropsDecayedScoresUnderThreshold() {
+    final float[] scores = {0.9f, 0.5f};
+    final int kept =
+        new DetectionPostprocessor(0.3f, Suppression.SOFT_LINEAR, 0.4f, 0.5f, 10)
+            .run(BOXES, scores, CLASS_IDS, 2, keep, keptScores);
+    assertEquals(1, kept);
+    assertEquals(0, keep[0]);
+  }
+
+  @Test
+  public void gaussianSoftSuppressionDecaysOverlappingScores() {
+    assertEquals(3, run(Suppression.SOFT_GAUSSIAN, 0.4f, 10));
+    assertEquals(1, keep[2]);
+    assertEquals(0.8f * (float) Math.exp(-0.25f / 0.5f), keptScores[2], 1e-6f);
+  }
+
+  @Test
+  public void postprocessesDetections() {
+    final Detector.Detections in = new Detector.Detections(4);
+    for (int i = 0; i < 4; ++i) {
+      in.add(
+          BOXES[i * 4],
+          BOXES[i * 4 + 1],
+          BOXES[i * 4 + 2],
+          BOXES[i * 4 + 3],
+          CLASS_IDS[i],
+          "class" + CLASS_IDS[i],
+          SCORES[i]);
+    }
+    final Detector.Detections out = new Detector.Detections(4);
+    new DetectionPostprocessor(0.3f, Suppression.HARD, 0.4f, 0.5f, 10).run(in, out);
+    assertEquals(2, out.size());
+    assertEquals(0.9f, out.getScore(0), 0);
+    assertEquals("class2", out.getTitle(1));
+    final float[] box = new float[4];
+    out.getLocation(1, box, 0);
+    assertEquals(30, box[2], 0);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Runs {@link NonMaxSuppression} on hand-made candidates. */
+public final class NonMaxSuppressionTest {
+  private final NonMaxSuppression nonMaxSuppression = new NonMaxSuppression(0.5f);
+  private final int[] keep = new int[8];
+
+  @Test
+  public void keepsTheBestOfOverlappingSameClassBoxes() {
+    final float[] boxes = {
+      0, 0, 10, 10,
+      1, 1, 11, 11,
+      50, 50, 60, 60,
+    };
+    final float[] scores = {0.6f, 0.9f, 0.3f};
+    final int[] classIds = {1, 1, 1};
+    assertEquals(2, nonMaxSuppression.run(boxes, scores, classIds, 3, keep));
+    assertEquals(1, keep[0]);
+    assertEquals(2, keep[1]);
+  }
+
+  @Test
+  public void keepsOverlappingBoxesOfDifferentClasses() {
+    final float[] boxes = {
+      0, 0, 10, 10,
+      1, 1, 11, 11,
+    };
+    final float[] scores = {0.6f, 0.9f};
+    final int[] classIds = {1, 2};
+    assertEquals(2, nonMaxSuppression.run(boxes, scores, classIds, 2, keep));
+    assertEquals(1, keep[0]);
+    assertEquals(0, keep[1]);
+  }
+
+  @Test
+  public void sortsNegativeScores() {
+    final float[] boxes = {
+      0, 0, 10, 10,
+      20, 20, 30, 30,
+      40, 40, 50, 50,
+    };
+    final float[] scores = {-2f, 0.5f, -1f};
+    final int[] classIds = {0, 0, 0};
+    assertEquals(3, nonMaxSuppression.run(boxes, scores, classIds, 3, keep));
+    assertEquals(1, keep[0]);
+    assertEquals(2, keep[1]);
+    assertEquals(0, keep[2]);
+  }
+
+  @Test
+  public void computesIntersectionOverUnion() {
+    final float[] boxes = {
+      0, 0, 10, 10,
+      5, 0, 15, 10,
+      10, 0, 20, 10,
+    };
+    assertEquals(1 / 3f, NonMaxSuppression.iou(boxes, 0, 1), 1e-6f);
+    assertEquals(0, NonMaxSuppression.iou(boxes, 0, 2), 0);
+  }
+}
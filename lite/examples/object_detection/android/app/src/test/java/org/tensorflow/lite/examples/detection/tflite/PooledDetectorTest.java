@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/** Leases and closes fake instances through a {@link PooledDetector}. */
+public final class PooledDetectorTest {
+  private static final long TIMEOUT_MS = 5000;
+
+  private final FakeDetector first = new FakeDetector();
+  private final FakeDetector second = new FakeDetector();
+  private final PooledDetector pool = new PooledDetector(Arrays.asList(first, second));
+
+  @Test
+  public void leasesEveryInstanceOnce() {
+    final Detector leased = pool.acquire();
+    final Detector other = pool.acquire();
+    assertNotSame(leased, other);
+    pool.release(leased);
+    assertEquals(leased, pool.acquire());
+  }
+
+  @Test
+  public void appliesSettingsToEveryInstance() {
+    pool.setNumThreads(3);
+    assertEquals(3, first.numThreads);
+    assertEquals(3, second.numThreads);
+  }
+
+  @Test
+  public void submitReleasesTheInstance() throws Exception {
+    for (int i = 0; i < 5; ++i) {
+      assertTrue(pool.submit(detector -> detector == first || detector == second).get());
+    }
+  }
+
+  @Test
+  public void closeClosesEveryInstanceOnce() {
+    pool.close();
+    pool.close();
+    assertEquals(1, first.closeCount);
+    assertEquals(1, second.closeCount);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void acquireAfterCloseThrows() {
+    pool.close();
+    pool.acquire();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void settingsAfterCloseThrow() {
+    pool.close();
+    pool.setUseNNAPI(true);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void submitAfterCloseThrows() {
+    pool.close();
+    pool.submit(detector -> null);
+  }
+
+  @Test
+  public void closeWakesUpWaitingCalls() throws Exception {
+    final FakeDetector only = new FakeDetector();
+    final PooledDetector single = new PooledDetector(Collections.singletonList(only));
+    final Detector leased = single.acquire();
+    // Waits for the leased instance first, then closes the pool.
+    final Thread closer = new Thread(single::close);
+    closer.start();
+    waitUntilBlocked(closer);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread waiter =
+        new Thread(
+            () -> {
+              try {
+                single.release(single.acquire());
+              } catch (final Throwable t) {
+                failure.set(t);
+              }
+            });
+    waiter.start();
+    waitUntilBlocked(waiter);
+
+    single.release(leased);
+    closer.join(TIMEOUT_MS);
+    waiter.join(TIMEOUT_MS);
+    assertFalse(waiter.isAlive());
+    assertTrue(failure.get() instanceof IllegalStateException);
+    assertEquals(1, only.closeCount);
+  }
+
+  private static void waitUntilBlocked(final Thread thread) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  private static final class FakeDetector implements Detector {
+    int numThreads;
+    int closeCount;
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      return null;
+    }
+
+    @Override
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+      return null;
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final Detections detections) {}
+
+    @Override
+    public ByteBuffer getInputBuffer() {
+      return null;
+    }
+
+    @Override
+    public boolean isInputQuantized() {
+      return true;
+    }
+
+    @Override
+    public void recognizeInputBuffer(final Detections detections) {}
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return "";
+    }
+
+    @Override
+    public void close() {
+      ++closeCount;
+    }
+
+    @Override
+    public void setNumThreads(final int numThreads) {
+      this.numThreads = numThreads;
+    }
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {}
+  }
+}
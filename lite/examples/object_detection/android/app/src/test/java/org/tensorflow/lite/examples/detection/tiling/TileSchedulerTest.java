@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Lays {@link TileScheduler} tiles over a 640x480 preview frame. */
+public final class TileSchedulerTest {
+  private static final int TILE_SIZE = 300;
+  private static final int HOLD_ROUNDS = 3;
+
+  private final int[] tiles = new int[2];
+
+  private TileScheduler newScheduler() {
+    final TileScheduler scheduler = new TileScheduler(TILE_SIZE, 0.2f, 2, HOLD_ROUNDS);
+    scheduler.setFrameSize(640, 480);
+    return scheduler;
+  }
+
+  @Test
+  public void tilesCoverTheFrameWithOverlap() {
+    final TileScheduler scheduler = newScheduler();
+    // 3 columns and 2 rows, at least 60 pixels of overlap.
+    assertEquals(6, scheduler.getTileCount());
+    assertEquals(0, scheduler.getTileLeft(0));
+    assertEquals(170, scheduler.getTileLeft(1));
+    assertEquals(340, scheduler.getTileLeft(2));
+    assertEquals(0, scheduler.getTileTop(2));
+    assertEquals(180, scheduler.getTileTop(3));
+    assertEquals(TILE_SIZE, scheduler.getTileWidth());
+    assertEquals(TILE_SIZE, scheduler.getTileHeight());
+  }
+
+  @Test
+  public void sweepsInactiveTilesInTurn() {
+    final TileScheduler scheduler = newScheduler();
+    for (int round = 0; round < 3; ++round) {
+      assertEquals(2, scheduler.selectTiles(tiles));
+      assertEquals(2 * round, tiles[0]);
+      assertEquals(2 * round + 1, tiles[1]);
+    }
+    assertEquals(2, scheduler.selectTiles(tiles));
+    assertEquals(0, tiles[0]);
+  }
+
+  @Test
+  public void detectionsKeepTheirTileActive() {
+    final TileScheduler scheduler = newScheduler();
+    scheduler.selectTiles(tiles);
+    // A small object in the bottom right corner.
+    scheduler.onDetection(600, 440, 620, 460);
+    assertTrue(scheduler.isActive(5));
+    for (int round = 0; round < HOLD_ROUNDS; ++round) {
+      assertEquals(2, scheduler.selectTiles(tiles));
+      assertEquals(5, tiles[0]);
+      // The other slot keeps sweeping the inactive tiles.
+      assertFalse(tiles[1] == 5);
+    }
+    scheduler.selectTiles(tiles);
+    assertFalse(scheduler.isActive(5));
+  }
+
+  @Test
+  public void smallFrameIsASingleTile() {
+    final TileScheduler scheduler = new TileScheduler(TILE_SIZE, 0.2f, 2, HOLD_ROUNDS);
+    scheduler.setFrameSize(200, 100);
+    assertEquals(1, scheduler.getTileCount());
+    assertEquals(200, scheduler.getTileWidth());
+    assertEquals(1, scheduler.selectTiles(tiles));
+    scheduler.onDetection(10, 10, 20, 20);
+    assertEquals(1, scheduler.selectTiles(tiles));
+    assertEquals(0, tiles[0]);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tracking.IouTracker.Association;
+import org.tensorflow.lite.examples.detection.tracking.IouTracker.Track;
+
+/** Follows synthetic boxes through {@link IouTracker}. */
+public final class IouTrackerTest {
+  private static final float MIN_IOU = 0.3f;
+  private static final int MAX_MISSES = 2;
+  // Pixels per frame.
+  private static final float SPEED = 4;
+
+  @Test
+  public void greedyKeepsIdsOfMovingObjects() {
+    keepsIdsOfMovingObjects(Association.GREEDY);
+  }
+
+  @Test
+  public void hungarianKeepsIdsOfMovingObjects() {
+    keepsIdsOfMovingObjects(Association.HUNGARIAN);
+  }
+
+  private static void keepsIdsOfMovingObjects(final Association association) {
+    final IouTracker tracker = new IouTracker(association, MIN_IOU, MAX_MISSES);
+    final float[] boxes = new float[8];
+    for (int frame = 0; frame < 30; ++frame) {
+      // Two objects moving in opposite directions, reported in alternating order.
+      final int first = frame % 2;
+      setBox(boxes, first, 100 + SPEED * frame, 100);
+      setBox(boxes, 1 - first, 300 - SPEED * frame, 200);
+      final List<Track> tracks = tracker.update(boxes, 2, frame);
+      assertEquals(2, tracks.size());
+      assertEquals(0, tracks.get(0).getId());
+      assertEquals(1, tracks.get(1).getId());
+      assertEquals(first, tracks.get(0).getDetectionIndex());
+      assertEquals(1 - first, tracks.get(1).getDetectionIndex());
+    }
+  }
+
+  @Test
+  public void predictsBetweenDetections() {
+    final IouTracker tracker = new IouTracker(Association.HUNGARIAN, MIN_IOU, MAX_MISSES);
+    final float[] boxes = new float[4];
+    final float[] box = new float[4];
+    // Detections on every 4th frame only.
+    for (int frame = 0; frame <= 80; frame += 4) {
+      setBox(boxes, 0, 100 + SPEED * frame, 100);
+      tracker.update(boxes, 1, frame);
+    }
+    final Track track = tracker.getTracks().get(0);
+    assertEquals(0, track.getId());
+    // The filter has picked the velocity up, boxes in between move along.
+    for (int frame = 81; frame < 84; ++frame) {
+      track.getBox(frame, box, 0);
+      assertEquals(100 + SPEED * frame, box[0], 1f);
+      assertEquals(100, box[1], 1f);
+    }
+  }
+
+  @Test
+  public void dropsTracksAfterMaxMisses() {
+    final IouTracker tracker = new IouTracker(Association.GREEDY, MIN_IOU, MAX_MISSES);
+    final float[] boxes = new float[4];
+    setBox(boxes, 0, 100, 100);
+    tracker.update(boxes, 1, 0);
+    for (int frame = 1; frame <= MAX_MISSES; ++frame) {
+      final List<Track> tracks = tracker.update(boxes, 0, frame);
+      assertEquals(1, tracks.size());
+      assertEquals(frame, tracks.get(0).getMisses());
+      assertEquals(-1, tracks.get(0).getDetectionIndex());
+    }
+    assertTrue(tracker.update(boxes, 0, MAX_MISSES + 1).isEmpty());
+
+    // A new object gets a new id.
+    final List<Track> tracks = tracker.update(boxes, 1, MAX_MISSES + 2);
+    assertEquals(1, tracks.size());
+    assertEquals(1, tracks.get(0).getId());
+  }
+
+  @Test
+  public void hungarianMatchesMoreTracksThanGreedy() {
+    // Detection 1 overlaps track 0 the most, but it is the only match of track 1.
+    final float[] tracked = {0, 0, 100, 100, 50, 0, 150, 100};
+    final float[] detected = {-60, 0, 40, 100, 20, 0, 110, 100};
+
+    final IouTracker greedy = new IouTracker(Association.GREEDY, 0.1f, MAX_MISSES);
+    greedy.update(tracked, 2, 0);
+    List<Track> tracks = greedy.update(detected, 2, 1);
+    assertEquals(3, tracks.size());
+    assertEquals(1, tracks.get(0).getDetectionIndex());
+    assertEquals(-1, tracks.get(1).getDetectionIndex());
+
+    final IouTracker hungarian = new IouTracker(Association.HUNGARIAN, 0.1f, MAX_MISSES);
+    hungarian.update(tracked, 2, 0);
+    tracks = hungarian.update(detected, 2, 1);
+    assertEquals(2, tracks.size());
+    assertEquals(0, tracks.get(0).getDetectionIndex());
+    assertEquals(1, tracks.get(1).getDetectionIndex());
+  }
+
+  private static void setBox(final float[] boxes, final int i, final float x, final float y) {
+    boxes[i * 4] = x;
+    boxes[i * 4 + 1] = y;
+    boxes[i * 4 + 2] = x + 50;
+    boxes[i * 4 + 3] = y + 80;
+  }
+}
@@ -30,10 +30,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,8 +68,8 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
-  // Pre-allocated buffers.
-  private final List<String> labels = new ArrayList<>();
+  // Pre-allocated buffers. The labels may be shared with other instances of the same model.
+  private List<String> labels;
   private int[] intValues;
   // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
   // contains the location of detected boxes
@@ -82,7 +84,29 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   // contains the number of detected boxes
   private float[] numDetections;
 
+  // Unpacked pixels staged for a bulk copy into imgData, only one of them is allocated.
+  private byte[] byteValues;
+  private float[] floatValues;
+
   private ByteBuffer imgData;
+  // Float view over imgData, used for bulk writes with float models.
+  private FloatBuffer floatData;
+  private Object[] inputArray;
+  private Map<Integer, Object> outputMap;
+
+  // Number of images the interpreter tensors are currently sized for, or 0 if unknown.
+  private int batchSize = 1;
+  // Set once the model turned out not to support batches, e.g. because its detection
+  // post-processing only handles a single image.
+  private boolean batchingUnsupported = false;
+  // Input and outputs of recognizeImages, sized for batchSize images.
+  private ByteBuffer batchData;
+  private float[][][] batchLocations;
+  private float[][] batchClasses;
+  private float[][] batchScores;
+  private float[] batchNumDetections;
+  private Object[] batchInputArray;
+  private Map<Integer, Object> batchOutputMap;
 
   private MappedByteBuffer tfLiteModel;
   private Interpreter.Options tfLiteOptions;
@@ -116,9 +140,47 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
-    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    MappedByteBuffer modelFile = loadModelFile(context.getAssets(), modelFilename);
+    return create(
+        modelFile, loadLabels(modelFile, labelFilename), inputSize, isQuantized, NUM_THREADS);
+  }
 
+  /**
+   * Creates {@code numInstances} detectors that can run concurrently. They share the memory-mapped
+   * model and the labels, but each has its own interpreter and buffers. The interpreter threads are
+   * split between the instances.
+   *
+   * @param numInstances number of detections that can run at the same time
+   */
+  public static PooledDetector createPooled(
+      final Context context,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final int numInstances)
+      throws IOException {
     MappedByteBuffer modelFile = loadModelFile(context.getAssets(), modelFilename);
+    List<String> labels = loadLabels(modelFile, labelFilename);
+    int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / numInstances);
+    List<Detector> detectors = new ArrayList<>(numInstances);
+    try {
+      for (int i = 0; i < numInstances; ++i) {
+        detectors.add(create(modelFile, labels, inputSize, isQuantized, numThreads));
+      }
+    } catch (RuntimeException e) {
+      for (Detector detector : detectors) {
+        detector.close();
+      }
+      throw e;
+    }
+    return new PooledDetector(detectors);
+  }
+
+  /** Reads the labels packed in the model metadata. */
+  private static List<String> loadLabels(MappedByteBuffer modelFile, String labelFilename)
+      throws IOException {
+    List<String> labels = new ArrayList<>();
     MetadataExtractor metadata = new MetadataExtractor(modelFile);
     try (BufferedReader br =
         new BufferedReader(
@@ -127,15 +189,25 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
       String line;
       while ((line = br.readLine()) != null) {
         Log.w(TAG, line);
-        d.labels.add(line);
+        labels.add(line);
       }
     }
+    return Collections.unmodifiableList(labels);
+  }
 
+  private static TFLiteObjectDetectionAPIModel create(
+      final MappedByteBuffer modelFile,
+      final List<String> labels,
+      final int inputSize,
+      final boolean isQuantized,
+      final int numThreads) {
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    d.labels = labels;
     d.inputSize = inputSize;
 
     try {
       Interpreter.Options options = new Interpreter.Options();
-      options.setNumThreads(NUM_THREADS);
+      options.setNumThreads(numThreads);
       d.tfLite = new Interpreter(modelFile, options);
       d.tfLiteModel = modelFile;
       d.tfLiteOptions = options;
@@ -154,11 +226,24 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
     d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
     d.imgData.order(ByteOrder.nativeOrder());
     d.intValues = new int[d.inputSize * d.inputSize];
+    if (isQuantized) {
+      d.byteValues = new byte[d.inputSize * d.inputSize * 3];
+    } else {
+      d.floatValues = new float[d.inputSize * d.inputSize * 3];
+      d.floatData = d.imgData.asFloatBuffer();
+    }
 
     d.outputLocations = new float[1][NUM_DETECTIONS][4];
     d.outputClasses = new float[1][NUM_DETECTIONS];
     d.outputScores = new float[1][NUM_DETECTIONS];
     d.numDetections = new float[1];
+
+    d.inputArray = new Object[] {d.imgData};
+    d.outputMap = new HashMap<>();
+    d.outputMap.put(0, d.outputLocations);
+    d.outputMap.put(1, d.outputClasses);
+    d.outputMap.put(2, d.outputScores);
+    d.outputMap.put(3, d.numDetections);
     return d;
   }
 
@@ -166,46 +251,158 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    preprocess(bitmap);
+    final int numDetectionsOutput = runInference();
+
+    final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
+    for (int i = 0; i < numDetectionsOutput; ++i) {
+      final RectF detection =
+          new RectF(
+              outputLocations[0][i][1] * inputSize,
+              outputLocations[0][i][0] * inputSize,
+              outputLocations[0][i][3] * inputSize,
+              outputLocations[0][i][2] * inputSize);
+
+      recognitions.add(
+          new Recognition(
+              "" + i, labels.get((int) outputClasses[0][i]), outputScores[0][i], detection));
+    }
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final int size = bitmaps.size();
+    final List<List<Recognition>> results = new ArrayList<>(size);
+    if (size <= 1 || batchingUnsupported || !resizeBatch(size)) {
+      for (Bitmap bitmap : bitmaps) {
+        results.add(recognizeImage(bitmap));
+      }
+      return results;
+    }
+
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImages");
+    batchData.rewind();
+    for (Bitmap bitmap : bitmaps) {
+      preprocess(bitmap);
+      batchData.put(imgData);
+    }
+    batchData.rewind();
+
+    Trace.beginSection("run");
+    tfLite.runForMultipleInputsOutputs(batchInputArray, batchOutputMap);
+    Trace.endSection();
 
+    for (int b = 0; b < size; ++b) {
+      final int numDetectionsOutput = min(NUM_DETECTIONS, (int) batchNumDetections[b]);
+      final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
+      for (int i = 0; i < numDetectionsOutput; ++i) {
+        final RectF detection =
+            new RectF(
+                batchLocations[b][i][1] * inputSize,
+                batchLocations[b][i][0] * inputSize,
+                batchLocations[b][i][3] * inputSize,
+                batchLocations[b][i][2] * inputSize);
+        recognitions.add(
+            new Recognition(
+                "" + i, labels.get((int) batchClasses[b][i]), batchScores[b][i], detection));
+      }
+      results.add(recognitions);
+    }
+    Trace.endSection(); // "recognizeImages"
+    return results;
+  }
+
+  @Override
+  public void recognizeImage(final Bitmap bitmap, final Detections detections) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImage");
+    preprocess(bitmap);
+    copyDetections(runInference(), detections);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  @Override
+  public ByteBuffer getInputBuffer() {
+    return imgData;
+  }
+
+  @Override
+  public boolean isInputQuantized() {
+    return isModelQuantized;
+  }
+
+  @Override
+  public void recognizeInputBuffer(final Detections detections) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeInputBuffer");
+    imgData.rewind();
+    copyDetections(runInference(), detections);
+    Trace.endSection(); // "recognizeInputBuffer"
+  }
+
+  private void copyDetections(final int numDetectionsOutput, final Detections detections) {
+    detections.clear();
+    for (int i = 0; i < numDetectionsOutput; ++i) {
+      final int classId = (int) outputClasses[0][i];
+      if (!detections.add(
+          outputLocations[0][i][1] * inputSize,
+          outputLocations[0][i][0] * inputSize,
+          outputLocations[0][i][3] * inputSize,
+          outputLocations[0][i][2] * inputSize,
+          classId,
+          labels.get(classId),
+          outputScores[0][i])) {
+        break;
+      }
+    }
+  }
+
+  /** Writes {@code bitmap} into imgData. */
+  private void preprocess(final Bitmap bitmap) {
     Trace.beginSection("preprocessBitmap");
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
+    // Unpack the pixels into a heap array first and hand it to the direct buffer in a single bulk
+    // put; per-element puts on a direct buffer are bounds checked one call at a time.
+    final int numPixels = inputSize * inputSize;
     imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
+    if (isModelQuantized) {
+      for (int i = 0, j = 0; i < numPixels; ++i) {
+        final int pixelValue = intValues[i];
+        byteValues[j++] = (byte) ((pixelValue >> 16) & 0xFF);
+        byteValues[j++] = (byte) ((pixelValue >> 8) & 0xFF);
+        byteValues[j++] = (byte) (pixelValue & 0xFF);
+      }
+      imgData.put(byteValues);
+    } else {
+      for (int i = 0, j = 0; i < numPixels; ++i) {
+        final int pixelValue = intValues[i];
+        floatValues[j++] = (((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+        floatValues[j++] = (((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+        floatValues[j++] = ((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
       }
+      floatData.rewind();
+      floatData.put(floatValues);
     }
+    imgData.rewind();
     Trace.endSection(); // preprocessBitmap
+  }
 
-    // Copy the input data into TensorFlow.
-    Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
-    Trace.endSection();
-
-    // Run the inference call.
+  /**
+   * Runs the interpreter on the contents of imgData, leaving the results in the pre-allocated
+   * output buffers.
+   *
+   * @return the number of valid detections in the output buffers
+   */
+  private int runInference() {
+    resizeBatch(1);
+    // Run the inference call. The output arrays and map are allocated once in create() and
+    // overwritten in place by the interpreter on every call.
     Trace.beginSection("run");
     tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
     Trace.endSection();
@@ -217,26 +414,65 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
     // because on some models, they don't always output the same total number of detections
     // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
     // If you don't use the output's numDetections, you'll get nonsensical data
-    int numDetectionsOutput =
-        min(
-            NUM_DETECTIONS,
-            (int) numDetections[0]); // cast from float to integer, use min for safety
+    return min(
+        NUM_DETECTIONS, (int) numDetections[0]); // cast from float to integer, use min for safety
+  }
 
-    final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
-    for (int i = 0; i < numDetectionsOutput; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
+  /**
+   * Resizes the interpreter to take {@code size} images and allocates the matching batch buffers.
+   * Reallocating tensors is costly, so callers should keep the batch size constant.
+   *
+   * @return false if the model cannot run that batch size, in which case it is left at one image
+   */
+  private boolean resizeBatch(final int size) {
+    if (size == batchSize) {
+      return true;
+    }
+    Trace.beginSection("resizeBatch");
+    // The tensor shape is unknown until allocateTensors() succeeds, so that resizing back to one
+    // image after a failure is never skipped as a no-op.
+    batchSize = 0;
+    try {
+      tfLite.resizeInput(0, new int[] {size, inputSize, inputSize, 3});
+      tfLite.allocateTensors();
+      batchSize = size;
+      // The SSD post-processing op always produces a single image worth of detections.
+      if (tfLite.getOutputTensor(0).shape()[0] != size) {
+        Log.w(TAG, "Model does not support batches, detecting images one at a time.");
+        batchingUnsupported = true;
+        resizeBatch(1);
+        return false;
+      }
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      Log.w(TAG, "Cannot resize the input to a batch, detecting images one at a time.", e);
+      batchingUnsupported = true;
+      if (size != 1) {
+        resizeBatch(1);
+      }
+      return false;
+    } finally {
+      Trace.endSection(); // "resizeBatch"
+    }
 
-      recognitions.add(
-          new Recognition(
-              "" + i, labels.get((int) outputClasses[0][i]), outputScores[0][i], detection));
+    if (size > 1) {
+      batchData = ByteBuffer.allocateDirect(size * imgData.capacity());
+      batchData.order(ByteOrder.nativeOrder());
+      batchLocations = new float[size][NUM_DETECTIONS][4];
+      batchClasses = new float[size][NUM_DETECTIONS];
+      batchScores = new float[size][NUM_DETECTIONS];
+      batchNumDetections = new float[size];
+      batchInputArray = new Object[] {batchData};
+      batchOutputMap = new HashMap<>();
+      batchOutputMap.put(0, batchLocations);
+      batchOutputMap.put(1, batchClasses);
+      batchOutputMap.put(2, batchScores);
+      batchOutputMap.put(3, batchNumDetections);
+    } else {
+      batchData = null;
+      batchInputArray = null;
+      batchOutputMap = null;
     }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
+    return true;
   }
 
   @Override
@@ -274,5 +510,6 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   private void recreateInterpreter() {
     tfLite.close();
     tfLite = new Interpreter(tfLiteModel, tfLiteOptions);
+    batchSize = 1;
   }
 }
@@ -0,0 +1,223 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * Post-processes candidate detections: drops the ones under a score threshold, suppresses
+ * overlapping boxes of the same class, and keeps the best {@code maxDetections}.
+ *
+ * <p>Candidates live in primitive arrays, boxes as {@code [left, top, right, bottom]} quadruples,
+ * so that hundreds of them, e.g. from tiled or multi-model detection, stay cheap. Working arrays
+ * only grow, steady-state calls do not allocate.
+ *
+ * <p>Not thread safe, use one instance per thread.
+ */
+public final class DetectionPostprocessor {
+  /** How overlapping boxes of the same class are handled. */
+  public enum Suppression {
+    /** Keeps every box over the threshold. */
+    NONE,
+    /** Drops boxes overlapping a better one by more than the IoU threshold. */
+    HARD,
+    /** Scales the score of boxes overlapping a better one by more than the threshold by 1 - IoU. */
+    SOFT_LINEAR,
+    /** Scales the score of boxes overlapping a better one by exp(-IoU^2 / sigma). */
+    SOFT_GAUSSIAN
+  }
+
+  private final float scoreThreshold;
+  private final Suppression suppression;
+  private final float iouThreshold;
+  private final float sigma;
+  private final int maxDetections;
+  private final NonMaxSuppression nonMaxSuppression;
+
+  // Candidates over the threshold, compacted, and their index in the input.
+  private float[] boxes = new float[0];
+  private float[] scores = new float[0];
+  private int[] classIds = new int[0];
+  private int[] indices = new int[0];
+  private int[] order = new int[0];
+  // Results of run(Detections, Detections), by input index.
+  private int[] keep = new int[0];
+  private float[] keptScores = new float[0];
+  private float[] inputBoxes = new float[0];
+  private float[] inputScores = new float[0];
+  private int[] inputClassIds = new int[0];
+
+  /**
+   * @param scoreThreshold score under which candidates are dropped, also after a soft decay
+   * @param iouThreshold overlap above which {@link Suppression#HARD} drops a box and {@link
+   *     Suppression#SOFT_LINEAR} decays it
+   * @param sigma spread of {@link Suppression#SOFT_GAUSSIAN}, smaller decays faster
+   * @param maxDetections detections kept at most
+   */
+  public DetectionPostprocessor(
+      final float scoreThreshold,
+      final Suppression suppression,
+      final float iouThreshold,
+      final float sigma,
+      final int maxDetections) {
+    if (maxDetections <= 0 || sigma <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid post-processing " + maxDetections + " detections, sigma " + sigma);
+    }
+    this.scoreThreshold = scoreThreshold;
+    this.suppression = suppression;
+    this.iouThreshold = iouThreshold;
+    this.sigma = sigma;
+    this.maxDetections = maxDetections;
+    // An infinite threshold never suppresses, it only sorts.
+    nonMaxSuppression =
+        new NonMaxSuppression(
+            suppression == Suppression.HARD ? iouThreshold : Float.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Writes the indices of the kept candidates into {@code keep} and their scores, decayed by soft
+   * suppression, into {@code keptScores}, by decreasing score. Returns how many there are. The
+   * inputs are left untouched.
+   *
+   * @param count number of candidates in the arrays
+   * @param keep receives the kept indices, at least {@code min(count, maxDetections)} long
+   * @param keptScores receives the kept scores, as long as {@code keep}
+   */
+  public int run(
+      final float[] boxes,
+      final float[] scores,
+      final int[] classIds,
+      final int count,
+      final int[] keep,
+      final float[] keptScores) {
+    ensureCapacity(count);
+    int candidates = 0;
+    for (int i = 0; i < count; ++i) {
+      if (scores[i] >= scoreThreshold) {
+        System.arraycopy(boxes, i * 4, this.boxes, candidates * 4, 4);
+        this.scores[candidates] = scores[i];
+        this.classIds[candidates] = classIds[i];
+        indices[candidates] = i;
+        ++candidates;
+      }
+    }
+
+    if (suppression == Suppression.SOFT_LINEAR || suppression == Suppression.SOFT_GAUSSIAN) {
+      return softSuppress(candidates, keep, keptScores);
+    }
+    final int kept =
+        Math.min(
+            maxDetections,
+            nonMaxSuppression.run(this.boxes, this.scores, this.classIds, candidates, order));
+    for (int k = 0; k < kept; ++k) {
+      keep[k] = indices[order[k]];
+      keptScores[k] = this.scores[order[k]];
+    }
+    return kept;
+  }
+
+  /**
+   * Post-processes {@code in} into {@code out}, which must be another container. {@code out} is
+   * cleared first and receives at most its capacity.
+   */
+  public void run(final Detector.Detections in, final Detector.Detections out) {
+    final int count = in.size();
+    if (inputScores.length < count) {
+      inputBoxes = new float[count * 4];
+      inputScores = new float[count];
+      inputClassIds = new int[count];
+      keep = new int[count];
+      keptScores = new float[count];
+    }
+    for (int i = 0; i < count; ++i) {
+      in.getLocation(i, inputBoxes, i * 4);
+      inputScores[i] = in.getScore(i);
+      inputClassIds[i] = in.getClassId(i);
+    }
+    final int kept = run(inputBoxes, inputScores, inputClassIds, count, keep, keptScores);
+    out.clear();
+    for (int k = 0; k < kept; ++k) {
+      final int i = keep[k];
+      final int offset = i * 4;
+      if (!out.add(
+          inputBoxes[offset],
+          inputBoxes[offset + 1],
+          inputBoxes[offset + 2],
+          inputBoxes[offset + 3],
+          inputClassIds[i],
+          in.getTitle(i),
+          keptScores[k])) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Soft-NMS: repeatedly keeps the best remaining candidate and decays the scores of the remaining
+   * ones of its class by their overlap with it, dropping those that fall under the threshold.
+   */
+  private int softSuppress(final int candidates, final int[] keep, final float[] keptScores) {
+    // The remaining candidates, unordered.
+    int remaining = candidates;
+    for (int i = 0; i < remaining; ++i) {
+      order[i] = i;
+    }
+    int kept = 0;
+    while (kept < maxDetections && remaining > 0) {
+      int best = 0;
+      for (int r = 1; r < remaining; ++r) {
+        if (scores[order[r]] > scores[order[best]]) {
+          best = r;
+        }
+      }
+      final int candidate = order[best];
+      order[best] = order[--remaining];
+      keep[kept] = indices[candidate];
+      keptScores[kept] = scores[candidate];
+      ++kept;
+
+      for (int r = 0; r < remaining; ) {
+        final int other = order[r];
+        if (classIds[other] == classIds[candidate]) {
+          scores[other] *= decay(NonMaxSuppression.iou(boxes, candidate, other));
+          if (scores[other] < scoreThreshold) {
+            order[r] = order[--remaining];
+            continue;
+          }
+        }
+        ++r;
+      }
+    }
+    return kept;
+  }
+
+  private float decay(final float iou) {
+    if (suppression == Suppression.SOFT_LINEAR) {
+      return iou > iouThreshold ? 1 - iou : 1;
+    }
+    return (float) Math.exp(-iou * iou / sigma);
+  }
+
+  private void ensureCapacity(final int count) {
+    if (scores.length >= count) {
+      return;
+    }
+    boxes = new float[count * 4];
+    scores = new float[count];
+    classIds = new int[count];
+    indices = new int[count];
+    order = new int[count];
+  }
+}
@@ -17,12 +17,42 @@ package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Detector {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Runs detection on several images of the model input size and returns the results of each, in
+   * order. Implementations run the images as a single batch when the model supports it.
+   */
+  List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
+  /**
+   * Runs detection on {@code bitmap} and writes the results into {@code detections}, replacing its
+   * previous contents. Callers may keep one {@link Detections} per stream and pass it back every
+   * frame so that steady-state detection does not allocate.
+   */
+  void recognizeImage(Bitmap bitmap, Detections detections);
+
+  /**
+   * Returns the direct buffer the model input is read from. Callers that produce the model input
+   * themselves (see {@link #isInputQuantized()} for the layout) write a full square RGB image of the
+   * model input size into it, starting at index 0, and then call {@link #recognizeInputBuffer}.
+   */
+  ByteBuffer getInputBuffer();
+
+  /**
+   * Returns true if {@link #getInputBuffer()} takes one unsigned byte per channel, false if it
+   * takes one normalized float per channel.
+   */
+  boolean isInputQuantized();
+
+  /** Runs detection on the contents of {@link #getInputBuffer()}. */
+  void recognizeInputBuffer(Detections detections);
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -102,4 +132,96 @@ public interface Detector {
       return resultString.trim();
     }
   }
+
+  /**
+   * A reusable, fixed-capacity container of detection results backed by primitive arrays. Boxes
+   * are stored as {@code [left, top, right, bottom]} quadruples in the coordinate space of the
+   * input bitmap.
+   */
+  public class Detections {
+    private final float[] locations;
+    private final float[] scores;
+    private final int[] classIds;
+    private final String[] titles;
+    private int size;
+
+    public Detections(final int capacity) {
+      locations = new float[capacity * 4];
+      scores = new float[capacity];
+      classIds = new int[capacity];
+      titles = new String[capacity];
+    }
+
+    public int capacity() {
+      return scores.length;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public void clear() {
+      size = 0;
+    }
+
+    /**
+     * Appends a detection. Returns false without modifying the container if it is already full.
+     */
+    public boolean add(
+        final float left,
+        final float top,
+        final float right,
+        final float bottom,
+        final int classId,
+        final String title,
+        final float score) {
+      if (size == scores.length) {
+        return false;
+      }
+      final int offset = size * 4;
+      locations[offset] = left;
+      locations[offset + 1] = top;
+      locations[offset + 2] = right;
+      locations[offset + 3] = bottom;
+      classIds[size] = classId;
+      titles[size] = title;
+      scores[size] = score;
+      ++size;
+      return true;
+    }
+
+    public float getScore(final int index) {
+      return scores[index];
+    }
+
+    public int getClassId(final int index) {
+      return classIds[index];
+    }
+
+    public String getTitle(final int index) {
+      return titles[index];
+    }
+
+    /** Copies the location of the detection at {@code index} into {@code out} and returns it. */
+    public RectF getLocation(final int index, final RectF out) {
+      final int offset = index * 4;
+      out.set(
+          locations[offset], locations[offset + 1], locations[offset + 2], locations[offset + 3]);
+      return out;
+    }
+
+    /**
+     * Copies the location of the detection at {@code index} into {@code out}, as {@code [left,
+     * top, right, bottom]} starting at {@code offset}.
+     */
+    public void getLocation(final int index, final float[] out, final int offset) {
+      System.arraycopy(locations, index * 4, out, offset, 4);
+    }
+
+    /** Builds a {@link Recognition} for the detection at {@code index}. This allocates. */
+    public Recognition toRecognition(final int index) {
+      return new Recognition(
+          "" + index, titles[index], scores[index], getLocation(index, new RectF()));
+    }
+  }
 }
@@ -0,0 +1,106 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Arrays;
+
+/**
+ * Class-aware non-maximum suppression over detections stored in primitive arrays, e.g. to merge the
+ * detections of overlapping tiles.
+ *
+ * <p>Boxes are {@code [left, top, right, bottom]} quadruples in {@code boxes}. Candidates are
+ * visited by decreasing score, and a candidate is kept unless a kept box of the same class overlaps
+ * it by more than the IoU threshold. Sorting goes through a primitive array of packed score and
+ * index pairs, reused across calls, so steady-state calls do not allocate.
+ *
+ * <p>Not thread safe, use one instance per thread.
+ */
+public final class NonMaxSuppression {
+  private final float iouThreshold;
+  // Sortable score in the upper 32 bits, candidate index in the lower 32 bits.
+  private long[] order = new long[0];
+
+  /** @param iouThreshold overlap above which the lower scored of two same class boxes is dropped */
+  public NonMaxSuppression(final float iouThreshold) {
+    this.iouThreshold = iouThreshold;
+  }
+
+  /**
+   * Writes the indices of the kept candidates into {@code keep}, by decreasing score, and returns
+   * how many there are.
+   *
+   * @param count number of candidates in the arrays
+   * @param keep receives the kept indices, at least {@code count} long
+   */
+  public int run(
+      final float[] boxes,
+      final float[] scores,
+      final int[] classIds,
+      final int count,
+      final int[] keep) {
+    if (order.length < count) {
+      order = new long[count];
+    }
+    for (int i = 0; i < count; ++i) {
+      order[i] = ((long) sortableBits(scores[i]) << 32) | i;
+    }
+    Arrays.sort(order, 0, count);
+
+    int kept = 0;
+    for (int n = count - 1; n >= 0; --n) {
+      final int candidate = (int) order[n];
+      boolean suppressed = false;
+      for (int k = 0; k < kept; ++k) {
+        final int other = keep[k];
+        if (classIds[other] == classIds[candidate]
+            && iou(boxes, other, candidate) > iouThreshold) {
+          suppressed = true;
+          break;
+        }
+      }
+      if (!suppressed) {
+        keep[kept++] = candidate;
+      }
+    }
+    return kept;
+  }
+
+  /** Intersection over union of the boxes at indices {@code a} and {@code b} of {@code boxes}. */
+  public static float iou(final float[] boxes, final int a, final int b) {
+    final int offsetA = a * 4;
+    final int offsetB = b * 4;
+    final float areaA =
+        (boxes[offsetA + 2] - boxes[offsetA]) * (boxes[offsetA + 3] - boxes[offsetA + 1]);
+    final float areaB =
+        (boxes[offsetB + 2] - boxes[offsetB]) * (boxes[offsetB + 3] - boxes[offsetB + 1]);
+    final float width =
+        Math.min(boxes[offsetA + 2], boxes[offsetB + 2]) - Math.max(boxes[offsetA], boxes[offsetB]);
+    final float height =
+        Math.min(boxes[offsetA + 3], boxes[offsetB + 3])
+            - Math.max(boxes[offsetA + 1], boxes[offsetB + 1]);
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    final float intersection = width * height;
+    return intersection / (areaA + areaB - intersection);
+  }
+
+  /** Bits of {@code value} as an int that sorts like the float, negative values included. */
+  private static int sortableBits(final float value) {
+    final int bits = Float.floatToIntBits(value);
+    return bits ^ ((bits >> 31) & 0x7fffffff);
+  }
+}
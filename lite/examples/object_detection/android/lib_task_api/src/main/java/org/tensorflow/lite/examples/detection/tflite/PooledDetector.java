@@ -0,0 +1,238 @@
+/* Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Detections;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+
+/**
+ * Several {@link Detector} instances, so that frames from several streams can be detected
+ * concurrently.
+ *
+ * <p>Every call leases an idle instance for its duration and blocks while all of them are busy.
+ * The asynchronous variants run on a thread pool with one thread per instance. Instances are
+ * created by {@code TFLiteObjectDetectionAPIModel.createPooled}, which maps the model only once
+ * for all of them.
+ *
+ * <p>The pool is not a {@link Detector} itself: the input buffer of an instance is only meaningful
+ * while it is leased, so callers that fill it themselves lease an instance with {@link #acquire()}
+ * or {@link #submit}. Once {@link #close() closed}, the pool throws {@link IllegalStateException}.
+ */
+public final class PooledDetector {
+  private final List<Detector> detectors;
+  private final BlockingQueue<Detector> idle;
+  private final ExecutorService executor;
+  private volatile boolean closed = false;
+
+  /** Creates a pool over {@code detectors}, which must all run the same model. */
+  public PooledDetector(final List<Detector> detectors) {
+    if (detectors.isEmpty()) {
+      throw new IllegalArgumentException("A pool needs at least one detector");
+    }
+    this.detectors = new ArrayList<>(detectors);
+    idle = new ArrayBlockingQueue<>(detectors.size(), false, detectors);
+    final AtomicInteger threadCount = new AtomicInteger();
+    final ThreadFactory threadFactory =
+        runnable -> new Thread(runnable, "detector-" + threadCount.incrementAndGet());
+    executor = Executors.newFixedThreadPool(detectors.size(), threadFactory);
+  }
+
+  /** Number of detections that can run at the same time. */
+  public int size() {
+    return detectors.size();
+  }
+
+  /** Leases an idle instance, waiting for one if needed. Give it back with {@link #release}. */
+  public Detector acquire() {
+    checkNotClosed();
+    final Detector detector;
+    try {
+      detector = idle.take();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a detector", e);
+    }
+    if (closed) {
+      // Closed while waiting, pass the instance on to wake up the next waiter.
+      idle.add(detector);
+      checkNotClosed();
+    }
+    return detector;
+  }
+
+  /** Returns an instance leased with {@link #acquire()}. */
+  public void release(final Detector detector) {
+    idle.add(detector);
+  }
+
+  /** Runs {@link #recognizeImage(Bitmap)} on the pool's threads. */
+  public Future<List<Recognition>> recognizeImageAsync(final Bitmap bitmap) {
+    checkNotClosed();
+    return executor.submit(() -> recognizeImage(bitmap));
+  }
+
+  /**
+   * Runs {@link #recognizeImage(Bitmap, Detections)} on the pool's threads. The future completes
+   * with {@code detections}, which must not be touched until then.
+   */
+  public Future<Detections> recognizeImageAsync(final Bitmap bitmap, final Detections detections) {
+    checkNotClosed();
+    return executor.submit(
+        () -> {
+          recognizeImage(bitmap, detections);
+          return detections;
+        });
+  }
+
+  /** Work done with a leased instance, see {@link #submit}. */
+  public interface Task<T> {
+    T run(Detector detector);
+  }
+
+  /**
+   * Runs {@code task} on the pool's threads with an idle instance, e.g. to fill its input buffer
+   * and call {@link Detector#recognizeInputBuffer}. The instance is released when the task returns.
+   */
+  public <T> Future<T> submit(final Task<T> task) {
+    checkNotClosed();
+    return executor.submit(
+        () -> {
+          final Detector detector = acquire();
+          try {
+            return task.run(detector);
+          } finally {
+            release(detector);
+          }
+        });
+  }
+
+  /** Runs {@link Detector#recognizeImage(Bitmap)} with an idle instance. */
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final Detector detector = acquire();
+    try {
+      return detector.recognizeImage(bitmap);
+    } finally {
+      release(detector);
+    }
+  }
+
+  /** Runs {@link Detector#recognizeImages} with an idle instance. */
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final Detector detector = acquire();
+    try {
+      return detector.recognizeImages(bitmaps);
+    } finally {
+      release(detector);
+    }
+  }
+
+  /** Runs {@link Detector#recognizeImage(Bitmap, Detections)} with an idle instance. */
+  public void recognizeImage(final Bitmap bitmap, final Detections detections) {
+    final Detector detector = acquire();
+    try {
+      detector.recognizeImage(bitmap, detections);
+    } finally {
+      release(detector);
+    }
+  }
+
+  /** See {@link Detector#isInputQuantized()}, the same for every instance. */
+  public boolean isInputQuantized() {
+    return detectors.get(0).isInputQuantized();
+  }
+
+  public void enableStatLogging(final boolean debug) {
+    for (final Detector detector : detectors) {
+      detector.enableStatLogging(debug);
+    }
+  }
+
+  public String getStatString() {
+    return detectors.get(0).getStatString();
+  }
+
+  /**
+   * Waits for running detections to finish and closes every instance. Calls waiting for an
+   * instance, and any later call, then throw {@link IllegalStateException}.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    executor.shutdownNow();
+    final List<Detector> all = acquireAll();
+    closed = true;
+    for (final Detector detector : all) {
+      detector.close();
+    }
+    // Wakes up the callers waiting in acquire(), which see the pool closed.
+    idle.addAll(all);
+  }
+
+  /** Applies the setting to every instance, once it is idle. */
+  public void setNumThreads(final int numThreads) {
+    final List<Detector> all = acquireAll();
+    try {
+      for (final Detector detector : all) {
+        detector.setNumThreads(numThreads);
+      }
+    } finally {
+      idle.addAll(all);
+    }
+  }
+
+  /** Applies the setting to every instance, once it is idle. */
+  public void setUseNNAPI(final boolean isChecked) {
+    final List<Detector> all = acquireAll();
+    try {
+      for (final Detector detector : all) {
+        detector.setUseNNAPI(isChecked);
+      }
+    } finally {
+      idle.addAll(all);
+    }
+  }
+
+  private void checkNotClosed() {
+    if (closed) {
+      throw new IllegalStateException("The detector pool is closed");
+    }
+  }
+
+  // Synchronized so that two callers cannot each hold part of the pool and wait for the rest.
+  private synchronized List<Detector> acquireAll() {
+    final List<Detector> all = new ArrayList<>(detectors.size());
+    try {
+      for (int i = 0; i < detectors.size(); ++i) {
+        all.add(acquire());
+      }
+    } catch (final RuntimeException e) {
+      idle.addAll(all);
+      throw e;
+    }
+    return all;
+  }
+}
@@ -17,11 +17,20 @@ package org.tensorflow.lite.examples.detection.tflite;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.RectF;
 import android.os.Trace;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.FileUtil;
 import org.tensorflow.lite.support.image.TensorImage;
+import org.tensorflow.lite.support.label.Category;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+import org.tensorflow.lite.task.core.BaseOptions;
 import org.tensorflow.lite.task.vision.detector.Detection;
 import org.tensorflow.lite.task.vision.detector.ObjectDetector;
 import org.tensorflow.lite.task.vision.detector.ObjectDetector.ObjectDetectorOptions;
@@ -49,8 +58,23 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   /** Only return this many results. */
   private static final int NUM_DETECTIONS = 10;
 
+  // Number of threads in the java app
+  private static final int NUM_THREADS = 4;
+
+  /** The model, kept to recreate the detector when its options change. */
+  private final MappedByteBuffer modelFile;
+
+  private int numThreads = NUM_THREADS;
+  private boolean useNnapi = false;
+
   /** An instance of the driver class to run model inference with Tensorflow Lite. */
-  private final ObjectDetector objectDetector;
+  private ObjectDetector objectDetector;
+
+  /** RGB input written by callers of {@link #getInputBuffer()}, one byte per channel. */
+  private final ByteBuffer inputBuffer;
+
+  private final TensorBuffer inputTensor;
+  private final TensorImage inputImage = new TensorImage(DataType.UINT8);
 
   /**
    * Initializes a native TensorFlow session for classifying images.
@@ -71,13 +95,45 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
-    return new TFLiteObjectDetectionAPIModel(context, modelFilename);
+    return new TFLiteObjectDetectionAPIModel(
+        FileUtil.loadMappedFile(context, modelFilename), inputSize);
   }
 
-  private TFLiteObjectDetectionAPIModel(Context context, String modelFilename) throws IOException {
-    ObjectDetectorOptions options =
-        ObjectDetectorOptions.builder().setMaxResults(NUM_DETECTIONS).build();
-    objectDetector = ObjectDetector.createFromFileAndOptions(context, modelFilename, options);
+  /**
+   * Creates {@code numInstances} detectors that can run concurrently. They are all created from the
+   * same memory-mapped model, but each has its own native detector and input buffer.
+   *
+   * @param numInstances number of detections that can run at the same time
+   */
+  public static PooledDetector createPooled(
+      final Context context,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final int numInstances)
+      throws IOException {
+    MappedByteBuffer modelFile = FileUtil.loadMappedFile(context, modelFilename);
+    List<Detector> detectors = new ArrayList<>(numInstances);
+    try {
+      for (int i = 0; i < numInstances; ++i) {
+        detectors.add(new TFLiteObjectDetectionAPIModel(modelFile, inputSize));
+      }
+    } catch (RuntimeException e) {
+      for (Detector detector : detectors) {
+        detector.close();
+      }
+      throw e;
+    }
+    return new PooledDetector(detectors);
+  }
+
+  private TFLiteObjectDetectionAPIModel(MappedByteBuffer modelFile, int inputSize) {
+    this.modelFile = modelFile;
+    objectDetector = createObjectDetector();
+    inputBuffer = ByteBuffer.allocateDirect(inputSize * inputSize * 3);
+    inputBuffer.order(ByteOrder.nativeOrder());
+    inputTensor = TensorBuffer.createFixedSize(new int[] {inputSize, inputSize, 3}, DataType.UINT8);
   }
 
   @Override
@@ -104,6 +160,65 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
     return recognitions;
   }
 
+  /** The Task library takes a single image per call, so the images are detected in turn. */
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    for (Bitmap bitmap : bitmaps) {
+      results.add(recognizeImage(bitmap));
+    }
+    return results;
+  }
+
+  @Override
+  public void recognizeImage(final Bitmap bitmap, final Detections detections) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImage");
+    // The Task library allocates its own result objects, so this only saves the Recognition list.
+    copyDetections(objectDetector.detect(TensorImage.fromBitmap(bitmap)), detections);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  @Override
+  public ByteBuffer getInputBuffer() {
+    return inputBuffer;
+  }
+
+  /** The Task library normalizes the input itself, based on the model metadata. */
+  @Override
+  public boolean isInputQuantized() {
+    return true;
+  }
+
+  @Override
+  public void recognizeInputBuffer(final Detections detections) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeInputBuffer");
+    inputBuffer.rewind();
+    inputTensor.loadBuffer(inputBuffer);
+    inputImage.load(inputTensor);
+    copyDetections(objectDetector.detect(inputImage), detections);
+    Trace.endSection(); // "recognizeInputBuffer"
+  }
+
+  private static void copyDetections(final List<Detection> results, final Detections detections) {
+    detections.clear();
+    for (Detection detection : results) {
+      final Category category = detection.getCategories().get(0);
+      final RectF box = detection.getBoundingBox();
+      if (!detections.add(
+          box.left,
+          box.top,
+          box.right,
+          box.bottom,
+          category.getIndex(),
+          category.getLabel(),
+          category.getScore())) {
+        break;
+      }
+    }
+  }
+
   @Override
   public void enableStatLogging(final boolean logStats) {}
 
@@ -121,17 +236,38 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
 
   @Override
   public void setNumThreads(int numThreads) {
-    if (numThreads != 1) {
-      throw new IllegalArgumentException(
-          "Manipulating the numbers of threads is not allowed in the Task"
-              + " library currently. The current implementation runs on single thread.");
+    if (objectDetector != null) {
+      this.numThreads = numThreads;
+      recreateObjectDetector();
     }
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    throw new UnsupportedOperationException(
-        "Manipulating the hardware accelerators is not allowed in the Task"
-            + " library currently. Only CPU is allowed.");
+    if (objectDetector != null) {
+      useNnapi = isChecked;
+      recreateObjectDetector();
+    }
+  }
+
+  /** Creates a detector with the current thread count and accelerator, through base options. */
+  private ObjectDetector createObjectDetector() {
+    BaseOptions.Builder baseOptions = BaseOptions.builder().setNumThreads(numThreads);
+    if (useNnapi) {
+      baseOptions.useNnapi();
+    }
+    ObjectDetectorOptions options =
+        ObjectDetectorOptions.builder()
+            .setBaseOptions(baseOptions.build())
+            .setMaxResults(NUM_DETECTIONS)
+            .build();
+    return ObjectDetector.createFromBufferAndOptions(modelFile, options);
+  }
+
+  /** Swaps in a new detector, keeping the current one if the new options fail to load. */
+  private void recreateObjectDetector() {
+    ObjectDetector newObjectDetector = createObjectDetector();
+    objectDetector.close();
+    objectDetector = newObjectDetector;
   }
 }
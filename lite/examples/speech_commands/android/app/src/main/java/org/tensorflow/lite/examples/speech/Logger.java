@@ -19,10 +19,28 @@ import android.util.Log;
 import java.util.HashSet;
 import java.util.Set;
 
-/** Wrapper for the platform log function, allows convenient message prefixing and log disabling. */
+/**
+ * Wrapper for the platform log function, allows convenient message prefixing and log disabling.
+ *
+ * <p>The level is checked before anything else, and the message is only formatted when it is
+ * emitted, so pass values as arguments of the format rather than concatenating them. Arguments
+ * are still boxed and collected by the caller though: code running on every frame logs with
+ * {@link #v} inside {@code if (Logger.VERBOSE_LOGGING)}, which javac drops from the build along
+ * with its arguments.
+ */
 public final class Logger {
+  /**
+   * Compile-time switch of the verbose logs. While false, {@link #v} does nothing and the code
+   * guarded by it is not compiled in.
+   */
+  public static final boolean VERBOSE_LOGGING = false;
+
   private static final String DEFAULT_TAG = "tensorflow";
   private static final int DEFAULT_MIN_LOG_LEVEL = Log.DEBUG;
+  // Values of platformLoggable.
+  private static final byte UNKNOWN = 0;
+  private static final byte NOT_LOGGABLE = 1;
+  private static final byte LOGGABLE = 2;
 
   // Classes to be ignored when examining the stack trace
   private static final Set<String> IGNORED_CLASS_NAMES;
@@ -37,6 +55,8 @@ public final class Logger {
   private final String tag;
   private final String messagePrefix;
   private int minLogLevel = DEFAULT_MIN_LOG_LEVEL;
+  // Log.isLoggable() of the tag by level, looked up once as it reads a system property.
+  private final byte[] platformLoggable = new byte[Log.ASSERT + 1];
 
   /**
    * Creates a Logger using the class name as the message prefix.
@@ -88,8 +108,24 @@ public final class Logger {
     this.minLogLevel = minLogLevel;
   }
 
+  /**
+   * Whether messages of this level are emitted: from the minimum level on, or below it if enabled
+   * for the tag with {@code adb shell setprop log.tag.<tag> <level>} before the app started.
+   */
   public boolean isLoggable(final int logLevel) {
-    return logLevel >= minLogLevel || Log.isLoggable(tag, logLevel);
+    if (logLevel >= minLogLevel) {
+      return true;
+    }
+    if (logLevel < 0 || logLevel >= platformLoggable.length) {
+      // android.util.Log accepts any level, only the levels it defines are cached.
+      return Log.isLoggable(tag, logLevel);
+    }
+    byte loggable = platformLoggable[logLevel];
+    if (loggable == UNKNOWN) {
+      loggable = Log.isLoggable(tag, logLevel) ? LOGGABLE : NOT_LOGGABLE;
+      platformLoggable[logLevel] = loggable;
+    }
+    return loggable == LOGGABLE;
   }
 
   /**
@@ -125,13 +161,13 @@ public final class Logger {
   }
 
   public void v(final String format, final Object... args) {
-    if (isLoggable(Log.VERBOSE)) {
+    if (VERBOSE_LOGGING && isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args));
     }
   }
 
   public void v(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.VERBOSE)) {
+    if (VERBOSE_LOGGING && isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args), t);
     }
   }